@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+
+/**
+ * The data of an entry of the uber JAR, compressed before the entry is written. Entries are compressed on worker
+ * threads, and the single thread writing the uber JAR only copies the compressed data with
+ * {@link ShadedJarOutputStream#putRawEntry(ZipArchiveEntry, InputStream)}.
+ */
+final class CompressedEntry {
+
+    private final int method;
+
+    private final byte[] data;
+
+    private final int length;
+
+    private final long crc;
+
+    private final long size;
+
+    private CompressedEntry(int method, byte[] data, int length, long crc, long size) {
+        this.method = method;
+        this.data = data;
+        this.length = length;
+        this.crc = crc;
+        this.size = size;
+    }
+
+    /**
+     * Deflates the given content with the default compression level, like {@link java.util.jar.JarOutputStream}, using
+     * a pooled deflater.
+     *
+     * @param content the uncompressed content of the entry
+     * @param buffers the pool of the deflater
+     * @return the deflated entry
+     */
+    static CompressedEntry deflate(byte[] content, EntryBuffers buffers) {
+        Deflater deflater = buffers.acquireDeflater();
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] data = new byte[content.length / 2 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                length += deflater.deflate(data, length, data.length - length);
+            }
+            return new CompressedEntry(ZipEntry.DEFLATED, data, length, crc(content), content.length);
+        } finally {
+            buffers.releaseDeflater(deflater);
+        }
+    }
+
+    /**
+     * @param content the content of the entry
+     * @return an entry storing the content uncompressed
+     */
+    static CompressedEntry store(byte[] content) {
+        return new CompressedEntry(ZipEntry.STORED, content, content.length, crc(content), content.length);
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+
+    /**
+     * @param name the name of the entry in the uber JAR
+     * @param time the last modification time of the entry
+     * @return an entry describing the compressed data
+     */
+    ZipArchiveEntry newEntry(String name, long time) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(method);
+        entry.setCrc(crc);
+        entry.setSize(size);
+        entry.setCompressedSize(length);
+        entry.setTime(time);
+        return entry;
+    }
+
+    InputStream open() {
+        return new ByteArrayInputStream(data, 0, length);
+    }
+}
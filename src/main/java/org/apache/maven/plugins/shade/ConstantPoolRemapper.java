@@ -0,0 +1,615 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.Remapper;
+
+/**
+ * Relocates a class by rewriting the {@code CONSTANT_Utf8} entries of its constant pool in place, and copying the rest
+ * of the class file as is. This is much cheaper than reading and writing the whole class with ASM.
+ * <p>
+ * Each use of a {@code CONSTANT_Utf8} entry in the class file is mapped with the same {@link Remapper} method the
+ * {@link org.objectweb.asm.commons.ClassRemapper} would use for it, e.g. {@link Remapper#mapType(String)} for class
+ * names or {@link Remapper#mapMethodDesc(String)} for method descriptors. An entry is rewritten when all its uses map
+ * it to the same value. The class cannot be relocated this way, and {@link UnsupportedClassException} is thrown, when
+ * uses of the same entry map it to different values, or when the class has attributes this class does not know, e.g.
+ * module descriptors.
+ */
+final class ConstantPoolRemapper {
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+
+    private final byte[] b;
+
+    private final ClassReader classReader;
+
+    private final Remapper remapper;
+
+    /** The relocators the remapper applies, to find the unused entries it relocates without decoding them. */
+    private final List<Relocator> relocators;
+
+    /** The package of the class, with a trailing slash, to relocate its source file name. */
+    private final String pkg;
+
+    /** The decoded {@code CONSTANT_Utf8} entries, by constant pool index. */
+    private final String[] utf8;
+
+    /** The mapped {@code CONSTANT_Utf8} entries, by constant pool index, {@code null} for unused entries. */
+    private final String[] mapped;
+
+    private ConstantPoolRemapper(byte[] classFile, String pkg, Remapper remapper, List<Relocator> relocators)
+            throws UnsupportedClassException {
+        this.b = classFile;
+        this.classReader = new ClassReader(classFile);
+        this.remapper = remapper;
+        this.relocators = relocators;
+        this.pkg = pkg;
+        this.utf8 = new String[classReader.getItemCount()];
+        this.mapped = new String[classReader.getItemCount()];
+        // large enough for the longest CONSTANT_Utf8 entry
+        char[] chars = new char[classReader.getMaxStringLength()];
+        for (int i = 1; i < utf8.length; i++) {
+            int offset = classReader.getItem(i);
+            if (offset > 0 && b[offset - 1] == CONSTANT_UTF8) {
+                utf8[i] = decode(offset, chars);
+            }
+        }
+    }
+
+    /**
+     * Relocates a class.
+     *
+     * @param classFile the class
+     * @param pkg the package of the class, with a trailing slash, e.g. {@code com/acme/}
+     * @param remapper the remapper
+     * @param relocators the relocators the remapper applies
+     * @return the relocated class, or {@code classFile} itself if nothing was relocated
+     * @throws UnsupportedClassException if the class must be relocated with ASM instead
+     */
+    static byte[] remap(byte[] classFile, String pkg, Remapper remapper, List<Relocator> relocators)
+            throws UnsupportedClassException {
+        ConstantPoolRemapper constantPoolRemapper = new ConstantPoolRemapper(classFile, pkg, remapper, relocators);
+        constantPoolRemapper.mapConstantPool();
+        constantPoolRemapper.mapClass();
+        constantPoolRemapper.mapUnused();
+        return constantPoolRemapper.write();
+    }
+
+    private void mapConstantPool() throws UnsupportedClassException {
+        for (int i = 1; i < utf8.length; i++) {
+            int offset = classReader.getItem(i);
+            if (offset == 0) {
+                // second slot of a long or double
+                continue;
+            }
+            switch (b[offset - 1]) {
+                case CONSTANT_UTF8:
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_METHOD_HANDLE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    // no name of their own, or only references to the entries below
+                    break;
+                case CONSTANT_CLASS:
+                    mapType(u2(offset));
+                    break;
+                case CONSTANT_STRING:
+                    mapValue(u2(offset));
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    keep(u2(offset));
+                    int descriptor = u2(offset + 2);
+                    if (utf8(descriptor).startsWith("(")) {
+                        mapMethodDesc(descriptor);
+                    } else {
+                        mapDesc(descriptor);
+                    }
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    mapMethodDesc(u2(offset));
+                    break;
+                default:
+                    // modules and packages
+                    throw new UnsupportedClassException("constant pool tag " + b[offset - 1]);
+            }
+        }
+    }
+
+    private void mapClass() throws UnsupportedClassException {
+        int offset = classReader.header + 6;
+        offset += 2 + 2 * u2(offset);
+
+        int fieldsCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < fieldsCount; i++) {
+            keep(u2(offset + 2));
+            mapDesc(u2(offset + 4));
+            offset = mapAttributes(offset + 6, Target.FIELD);
+        }
+
+        int methodsCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < methodsCount; i++) {
+            keep(u2(offset + 2));
+            mapMethodDesc(u2(offset + 4));
+            offset = mapAttributes(offset + 6, Target.METHOD);
+        }
+
+        mapAttributes(offset, Target.CLASS);
+    }
+
+    private enum Target {
+        CLASS,
+        FIELD,
+        METHOD,
+        CODE,
+        RECORD_COMPONENT
+    }
+
+    /**
+     * @return the offset following the attributes
+     */
+    private int mapAttributes(int offset, Target target) throws UnsupportedClassException {
+        int attributesCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < attributesCount; i++) {
+            int nameIndex = u2(offset);
+            keep(nameIndex);
+            String name = utf8(nameIndex);
+            int length = u4(offset + 2);
+            int start = offset + 6;
+            mapAttribute(name, start, target);
+            offset = start + length;
+        }
+        return offset;
+    }
+
+    // CHECKSTYLE_OFF: MethodLength
+    private void mapAttribute(String name, int offset, Target target) throws UnsupportedClassException {
+        switch (name) {
+            case "Synthetic":
+            case "Deprecated":
+            case "ConstantValue":
+            case "Exceptions":
+            case "LineNumberTable":
+            case "StackMapTable":
+            case "SourceDebugExtension":
+            case "BootstrapMethods":
+            case "NestHost":
+            case "NestMembers":
+            case "PermittedSubclasses":
+            case "EnclosingMethod":
+                // no names of their own, or only references to constants mapped with the constant pool
+                break;
+            case "Signature":
+                // the signature of a field or record component is a type signature, the one of a class or method is not
+                mapSignature(u2(offset), target == Target.FIELD || target == Target.RECORD_COMPONENT);
+                break;
+            case "SourceFile":
+                mapSourceFile(u2(offset));
+                break;
+            case "InnerClasses":
+                mapInnerClasses(offset);
+                break;
+            case "MethodParameters":
+                int parametersCount = b[offset] & 0xFF;
+                for (int i = 0; i < parametersCount; i++) {
+                    int parameterName = u2(offset + 1 + 4 * i);
+                    if (parameterName != 0) {
+                        keep(parameterName);
+                    }
+                }
+                break;
+            case "Code":
+                int codeLength = u4(offset + 4);
+                int exceptionTableOffset = offset + 8 + codeLength;
+                int exceptionTableLength = u2(exceptionTableOffset);
+                mapAttributes(exceptionTableOffset + 2 + 8 * exceptionTableLength, Target.CODE);
+                break;
+            case "LocalVariableTable":
+            case "LocalVariableTypeTable":
+                int localVariablesCount = u2(offset);
+                for (int i = 0; i < localVariablesCount; i++) {
+                    int localVariable = offset + 2 + 10 * i;
+                    keep(u2(localVariable + 4));
+                    if ("LocalVariableTable".equals(name)) {
+                        mapDesc(u2(localVariable + 6));
+                    } else {
+                        mapSignature(u2(localVariable + 6), true);
+                    }
+                }
+                break;
+            case "RuntimeVisibleAnnotations":
+            case "RuntimeInvisibleAnnotations":
+                mapAnnotations(offset);
+                break;
+            case "RuntimeVisibleParameterAnnotations":
+            case "RuntimeInvisibleParameterAnnotations":
+                int parameters = b[offset] & 0xFF;
+                offset++;
+                for (int i = 0; i < parameters; i++) {
+                    offset = mapAnnotations(offset);
+                }
+                break;
+            case "RuntimeVisibleTypeAnnotations":
+            case "RuntimeInvisibleTypeAnnotations":
+                int typeAnnotationsCount = u2(offset);
+                offset += 2;
+                for (int i = 0; i < typeAnnotationsCount; i++) {
+                    offset = mapAnnotation(skipTypeAnnotationTarget(offset));
+                }
+                break;
+            case "AnnotationDefault":
+                mapElementValue(offset);
+                break;
+            case "Record":
+                int componentsCount = u2(offset);
+                offset += 2;
+                for (int i = 0; i < componentsCount; i++) {
+                    keep(u2(offset));
+                    mapDesc(u2(offset + 2));
+                    offset = mapAttributes(offset + 4, Target.RECORD_COMPONENT);
+                }
+                break;
+            default:
+                // modules and unknown attributes
+                throw new UnsupportedClassException("attribute " + name);
+        }
+    }
+    // CHECKSTYLE_ON: MethodLength
+
+    private void mapInnerClasses(int offset) throws UnsupportedClassException {
+        int classesCount = u2(offset);
+        for (int i = 0; i < classesCount; i++) {
+            int innerClass = offset + 2 + 8 * i;
+            int innerNameIndex = u2(innerClass + 4);
+            if (innerNameIndex != 0) {
+                // the inner and outer classes are constants mapped with the constant pool
+                String innerClassName = className(u2(innerClass));
+                int outerClass = u2(innerClass + 2);
+                String outerName = outerClass == 0 ? null : className(outerClass);
+                String innerName = utf8(innerNameIndex);
+                map(innerNameIndex, remapper.mapInnerClassName(innerClassName, outerName, innerName));
+            }
+        }
+    }
+
+    /**
+     * @return the offset of the annotation following the target info and type path of a type annotation
+     */
+    private int skipTypeAnnotationTarget(int offset) throws UnsupportedClassException {
+        int targetType = b[offset] & 0xFF;
+        offset++;
+        switch (targetType) {
+            case 0x13:
+            case 0x14:
+            case 0x15:
+                break;
+            case 0x00:
+            case 0x01:
+            case 0x16:
+                offset += 1;
+                break;
+            case 0x10:
+            case 0x11:
+            case 0x12:
+            case 0x17:
+            case 0x42:
+            case 0x43:
+            case 0x44:
+            case 0x45:
+            case 0x46:
+                offset += 2;
+                break;
+            case 0x47:
+            case 0x48:
+            case 0x49:
+            case 0x4A:
+            case 0x4B:
+                offset += 3;
+                break;
+            case 0x40:
+            case 0x41:
+                offset += 2 + 6 * u2(offset);
+                break;
+            default:
+                throw new UnsupportedClassException("type annotation target " + targetType);
+        }
+        // type_path
+        return offset + 1 + 2 * (b[offset] & 0xFF);
+    }
+
+    private String className(int classIndex) throws UnsupportedClassException {
+        int offset = classIndex > 0 && classIndex < utf8.length ? classReader.getItem(classIndex) : 0;
+        if (offset == 0 || b[offset - 1] != CONSTANT_CLASS) {
+            throw new UnsupportedClassException("no CONSTANT_Class at index " + classIndex);
+        }
+        return utf8(u2(offset));
+    }
+
+    /**
+     * @return the offset following the annotations
+     */
+    private int mapAnnotations(int offset) throws UnsupportedClassException {
+        int annotationsCount = u2(offset);
+        offset += 2;
+        for (int i = 0; i < annotationsCount; i++) {
+            offset = mapAnnotation(offset);
+        }
+        return offset;
+    }
+
+    /**
+     * @return the offset following the annotation
+     */
+    private int mapAnnotation(int offset) throws UnsupportedClassException {
+        mapDesc(u2(offset));
+        int pairsCount = u2(offset + 2);
+        offset += 4;
+        for (int i = 0; i < pairsCount; i++) {
+            keep(u2(offset));
+            offset = mapElementValue(offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * @return the offset following the element value
+     */
+    private int mapElementValue(int offset) throws UnsupportedClassException {
+        switch (b[offset]) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+                return offset + 3;
+            case 's':
+                mapValue(u2(offset + 1));
+                return offset + 3;
+            case 'e':
+                mapDesc(u2(offset + 1));
+                keep(u2(offset + 3));
+                return offset + 5;
+            case 'c':
+                // a return descriptor, "V" is mapped to itself
+                mapDesc(u2(offset + 1));
+                return offset + 3;
+            case '@':
+                return mapAnnotation(offset + 1);
+            case '[':
+                int valuesCount = u2(offset + 1);
+                offset += 3;
+                for (int i = 0; i < valuesCount; i++) {
+                    offset = mapElementValue(offset);
+                }
+                return offset;
+            default:
+                throw new UnsupportedClassException("element value tag " + (char) b[offset]);
+        }
+    }
+
+    /**
+     * Maps the entries no part of the class refers to as internal names. ASM drops them when it writes the class, but
+     * here they stay in the constant pool, and tools scanning it for class names, e.g. the Felix maven-bundle-plugin,
+     * would otherwise still find the original names. Most of these entries are not relocated, which the relocators
+     * tell from their bytes, without a lookup in the remapper.
+     */
+    private void mapUnused() {
+        for (int i = 1; i < utf8.length; i++) {
+            if (utf8[i] != null && mapped[i] == null && isRelocated(i)) {
+                mapped[i] = remapper.map(utf8[i]);
+            }
+        }
+    }
+
+    /**
+     * @return whether a relocator matches the {@code CONSTANT_Utf8} entry at the given index as a path, or the class
+     *     name of a descriptor like {@code [Lcom/acme/Foo;}
+     */
+    private boolean isRelocated(int index) {
+        int offset = classReader.getItem(index);
+        int start = offset + 2;
+        int end = start + u2(offset);
+        int nameStart = start;
+        while (nameStart < end && b[nameStart] == '[') {
+            nameStart++;
+        }
+        if (end - nameStart >= 3 && b[nameStart] == 'L' && b[end - 1] == ';') {
+            start = nameStart + 1;
+            end--;
+        }
+        for (Relocator relocator : relocators) {
+            if (relocator.matchPath(b, start, end) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void keep(int index) throws UnsupportedClassException {
+        map(index, utf8(index));
+    }
+
+    private void mapType(int index) throws UnsupportedClassException {
+        map(index, remapper.mapType(utf8(index)));
+    }
+
+    private void mapDesc(int index) throws UnsupportedClassException {
+        map(index, remapper.mapDesc(utf8(index)));
+    }
+
+    private void mapMethodDesc(int index) throws UnsupportedClassException {
+        map(index, remapper.mapMethodDesc(utf8(index)));
+    }
+
+    private void mapSignature(int index, boolean typeSignature) throws UnsupportedClassException {
+        map(index, remapper.mapSignature(utf8(index), typeSignature));
+    }
+
+    private void mapValue(int index) throws UnsupportedClassException {
+        map(index, (String) remapper.mapValue(utf8(index)));
+    }
+
+    private void mapSourceFile(int index) throws UnsupportedClassException {
+        // same as DefaultShader.ShadeClassRemapper.visitSource
+        String mappedSource = remapper.map(pkg + utf8(index));
+        map(index, mappedSource.substring(mappedSource.lastIndexOf('/') + 1));
+    }
+
+    private void map(int index, String value) throws UnsupportedClassException {
+        if (mapped[index] == null) {
+            mapped[index] = value;
+        } else if (!Objects.equals(mapped[index], value)) {
+            throw new UnsupportedClassException("constant " + utf8[index] + " mapped to both " + mapped[index] + " and "
+                    + value);
+        }
+    }
+
+    private String utf8(int index) throws UnsupportedClassException {
+        if (index <= 0 || index >= utf8.length || utf8[index] == null) {
+            throw new UnsupportedClassException("no CONSTANT_Utf8 at index " + index);
+        }
+        return utf8[index];
+    }
+
+    private byte[] write() throws UnsupportedClassException {
+        ByteArrayOutputStream out = null;
+        int copied = 0;
+        for (int i = 1; i < utf8.length; i++) {
+            if (mapped[i] == null || mapped[i].equals(utf8[i])) {
+                continue;
+            }
+            if (out == null) {
+                out = new ByteArrayOutputStream(b.length + 256);
+            }
+            int offset = classReader.getItem(i);
+            // copy everything up to and including the tag, then write the new length and bytes
+            out.write(b, copied, offset - copied);
+            encode(mapped[i], out);
+            copied = offset + 2 + u2(offset);
+        }
+        if (out == null) {
+            return b;
+        }
+        out.write(b, copied, b.length - copied);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a {@code CONSTANT_Utf8} entry, like {@link java.io.DataInputStream#readUTF()} but without a stream.
+     */
+    private String decode(int offset, char[] chars) throws UnsupportedClassException {
+        int end = offset + 2 + u2(offset);
+        int length = 0;
+        for (int i = offset + 2; i < end; ) {
+            int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[length++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0 && i < end && (b[i] & 0xC0) == 0x80) {
+                chars[length++] = (char) ((c & 0x1F) << 6 | b[i++] & 0x3F);
+            } else if ((c & 0xF0) == 0xE0 && i + 1 < end && (b[i] & 0xC0) == 0x80 && (b[i + 1] & 0xC0) == 0x80) {
+                chars[length++] = (char) ((c & 0x0F) << 12 | (b[i] & 0x3F) << 6 | b[i + 1] & 0x3F);
+                i += 2;
+            } else {
+                throw new UnsupportedClassException("malformed CONSTANT_Utf8 at offset " + offset);
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Encodes a {@code CONSTANT_Utf8} entry, like {@link java.io.DataOutputStream#writeUTF(String)}.
+     */
+    private static void encode(String value, ByteArrayOutputStream out) throws UnsupportedClassException {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c > 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (length > 0xFFFF) {
+            throw new UnsupportedClassException("CONSTANT_Utf8 too long: " + length + " bytes");
+        }
+        out.write(length >>> 8);
+        out.write(length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c > 0 && c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | c >> 6);
+                out.write(0x80 | c & 0x3F);
+            } else {
+                out.write(0xE0 | c >> 12);
+                out.write(0x80 | c >> 6 & 0x3F);
+                out.write(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private int u2(int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private int u4(int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8)
+                | (b[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Thrown when a class cannot be relocated by rewriting its constant pool.
+     */
+    static final class UnsupportedClassException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedClassException(String message) {
+            super(message);
+        }
+    }
+}
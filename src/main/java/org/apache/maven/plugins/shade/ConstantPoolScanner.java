@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Finds out from the constant pool of a class whether it may need relocation, without visiting the class. Every name
+ * relocated in a class is, or is part of, a {@code CONSTANT_Utf8} entry of its constant pool: class, field and method
+ * names, descriptors, signatures, string constants and the name of the class itself, which is also used to relocate
+ * its source file name. A class whose {@code CONSTANT_Utf8} entries contain none of the relocation patterns is left
+ * unchanged by relocation.
+ */
+final class ConstantPoolScanner {
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private final Node root = new Node();
+
+    private ConstantPoolScanner() {}
+
+    /**
+     * @param patterns the strings contained in every relocated name
+     * @return a scanner for the given patterns, or {@code null} if classes cannot be scanned for them
+     */
+    static ConstantPoolScanner of(Collection<String> patterns) {
+        if (patterns == null) {
+            return null;
+        }
+        ConstantPoolScanner scanner = new ConstantPoolScanner();
+        for (String pattern : patterns) {
+            // the modified UTF-8 encoding of the pattern is only obvious for ASCII characters but NUL
+            if (pattern.isEmpty() || !pattern.chars().allMatch(c -> c > 0 && c < 0x80)) {
+                return null;
+            }
+            scanner.root.add(pattern);
+        }
+        return scanner;
+    }
+
+    /**
+     * @param classFile the class to scan
+     * @return {@code true} if a {@code CONSTANT_Utf8} entry of the class contains one of the patterns
+     */
+    boolean mayNeedRelocation(byte[] classFile) {
+        // only parses the offsets of the constant pool entries
+        ClassReader classReader = new ClassReader(classFile);
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            // long and double constants take two entries, the second one has no offset
+            if (offset > 0 && classReader.readByte(offset - 1) == CONSTANT_UTF8) {
+                int length = classReader.readUnsignedShort(offset);
+                if (contains(classFile, offset + 2, offset + 2 + length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            Node node = root;
+            for (int j = i; j < end && node != null; j++) {
+                node = node.child(bytes[j]);
+                if (node != null && node.terminal) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        /** Sorted bytes leading to the children. */
+        private byte[] keys = new byte[0];
+
+        private Node[] children = new Node[0];
+
+        /** Whether a pattern ends at this node. */
+        private boolean terminal;
+
+        void add(String pattern) {
+            Node node = this;
+            for (int i = 0; i < pattern.length(); i++) {
+                byte b = (byte) pattern.charAt(i);
+                int pos = Arrays.binarySearch(node.keys, b);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                    byte[] keys = new byte[node.keys.length + 1];
+                    Node[] children = new Node[node.children.length + 1];
+                    System.arraycopy(node.keys, 0, keys, 0, pos);
+                    System.arraycopy(node.children, 0, children, 0, pos);
+                    keys[pos] = b;
+                    children[pos] = new Node();
+                    System.arraycopy(node.keys, pos, keys, pos + 1, node.keys.length - pos);
+                    System.arraycopy(node.children, pos, children, pos + 1, node.children.length - pos);
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = node.children[pos];
+            }
+            node.terminal = true;
+        }
+
+        Node child(byte b) {
+            int pos = Arrays.binarySearch(keys, b);
+            return pos >= 0 ? children[pos] : null;
+        }
+    }
+}
@@ -23,10 +23,13 @@ import javax.inject.Singleton;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PushbackInputStream;
 import java.io.Writer;
@@ -34,34 +37,52 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.shade.filter.Filter;
 import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.RelocatorTrie;
+import org.apache.maven.plugins.shade.relocation.SourceContentRelocator;
 import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ParallelResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ReproducibleResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 import org.codehaus.plexus.util.IOUtil;
@@ -80,7 +101,11 @@ import org.slf4j.LoggerFactory;
 @Singleton
 @Named
 public class DefaultShader implements Shader {
-    private static final int BUFFER_SIZE = 32 * 1024;
+    /**
+     * Resources up to this size are read and compressed on a worker thread. Larger resources are streamed to the uber
+     * JAR by the writing thread, so that they are not held in memory.
+     */
+    private static final long MAX_COMPRESSED_AHEAD_SIZE = 1024 * 1024;
 
     private final Logger logger;
 
@@ -93,15 +118,14 @@ public class DefaultShader implements Shader {
     }
 
     // workaround for MSHADE-420
-    private long getTime(ZipEntry entry) {
+    private static long getTime(ZipEntry entry, TimeZone timeZone) {
         if (entry.getLastModifiedTime() == null) {
             return -1;
         }
         long mtime = entry.getLastModifiedTime().toMillis();
         if (hasX5455ExtendedTimestamp(entry)) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(mtime);
-            mtime = mtime - (cal.get(Calendar.ZONE_OFFSET) + cal.get(Calendar.DST_OFFSET));
+            // same as the ZONE_OFFSET and DST_OFFSET of a Calendar of the time zone
+            mtime = mtime - timeZone.getOffset(mtime);
         }
         return mtime;
     }
@@ -132,7 +156,7 @@ public class DefaultShader implements Shader {
     }
 
     public void shade(ShadeRequest shadeRequest) throws IOException, MojoExecutionException {
-        Set<String> resources = new HashSet<>();
+        EntryNameIndex resources = new EntryNameIndex();
 
         ManifestResourceTransformer manifestTransformer = null;
         List<ResourceTransformer> transformers = new ArrayList<>(shadeRequest.getResourceTransformers());
@@ -149,27 +173,30 @@ public class DefaultShader implements Shader {
         // noinspection ResultOfMethodCallIgnored
         shadeRequest.getUberJar().getParentFile().mkdirs();
 
-        try (JarOutputStream out =
-                new JarOutputStream(new BufferedOutputStream(new CachingOutputStream(shadeRequest.getUberJar())))) {
-            goThroughAllJarEntriesForManifestTransformer(shadeRequest, resources, manifestTransformer, out);
+        try (JarOutputStream out = newJarOutputStream(shadeRequest)) {
+            DuplicateIndex duplicates = new DuplicateIndex();
 
-            // CHECKSTYLE_OFF: MagicNumber
-            Map<String, HashSet<File>> duplicates = new HashMap<>();
-            // CHECKSTYLE_ON: MagicNumber
+            ExecutorService virtualThreads = shadeRequest.isVirtualThreads() ? newVirtualThreadExecutor() : null;
+            // the pooled buffers, inflaters and deflaters are released after the pipeline waited for its workers
+            try (EntryBuffers buffers = new EntryBuffers();
+                    ShadePipeline pipeline = new ShadePipeline(shadeRequest.getThreads(), virtualThreads)) {
+                List<PlannedJar> plan = planJars(
+                        pipeline, shadeRequest, resources, manifestTransformer, transformers, duplicates, packageMapper);
 
-            shadeJars(shadeRequest, resources, transformers, out, duplicates, packageMapper);
+                if (manifestTransformer != null && manifestTransformer.hasTransformedResource()) {
+                    manifestTransformer.modifyOutputStream(out);
+                }
 
-            // CHECKSTYLE_OFF: MagicNumber
-            Map<Collection<File>, HashSet<String>> overlapping = new HashMap<>();
-            // CHECKSTYLE_ON: MagicNumber
+                shadeJars(pipeline, buffers, shadeRequest, plan, out, packageMapper);
+            }
 
-            for (String clazz : duplicates.keySet()) {
-                Collection<File> jarz = duplicates.get(clazz);
-                if (jarz.size() > 1) {
-                    overlapping.computeIfAbsent(jarz, k -> new HashSet<>()).add(clazz);
-                }
+            if (!packageMapper.relocators.isEmpty()) {
+                logger.debug("Package mapping cache: " + packageMapper.cacheHits.sum() + " hits, "
+                        + packageMapper.cacheMisses.sum() + " misses");
             }
 
+            Map<Set<File>, List<String>> overlapping = duplicates.getOverlaps();
+
             // Log a summary of duplicates
             logSummaryOfDuplicates(overlapping);
 
@@ -182,6 +209,8 @@ public class DefaultShader implements Shader {
                     transformer.modifyOutputStream(out);
                 }
             }
+        } finally {
+            closeTransformers(shadeRequest.getResourceTransformers());
         }
 
         for (Filter filter : shadeRequest.getFilters()) {
@@ -189,6 +218,31 @@ public class DefaultShader implements Shader {
         }
     }
 
+    /**
+     * Opens the uber JAR. Copying compressed data as is needs the {@link ShadedJarOutputStream}, otherwise the uber JAR
+     * is written by the JDK.
+     */
+    private static JarOutputStream newJarOutputStream(ShadeRequest shadeRequest) throws IOException {
+        OutputStream out = new BufferedOutputStream(new CachingOutputStream(shadeRequest.getUberJar()));
+        return shadeRequest.isRawCopy() ? new ShadedJarOutputStream(out) : new JarOutputStream(out);
+    }
+
+    /**
+     * Closes the transformers which are {@link Closeable}, so that the temporary files they keep are deleted even when
+     * shading fails. A failure to close a transformer is only logged, it does not hide the failure of the shading.
+     */
+    private void closeTransformers(List<ResourceTransformer> transformers) {
+        for (ResourceTransformer transformer : transformers) {
+            if (transformer instanceof Closeable) {
+                try {
+                    ((Closeable) transformer).close();
+                } catch (IOException e) {
+                    logger.warn("Could not close " + transformer.getClass().getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
     /**
      * {@link InputStream} that can peek ahead at zip header bytes.
      */
@@ -213,272 +267,825 @@ public class DefaultShader implements Shader {
     }
 
     /**
-     * Data holder for CRC and Size.
+     * Bytecode of a class after relocation.
+     */
+    private static class RelocatedClass {
+
+        private final byte[] bytes;
+
+        private final boolean remapped;
+
+        /** The compressed bytecode, {@code null} unless {@link #compress(EntryBuffers)} was called. */
+        private final CompressedEntry compressed;
+
+        RelocatedClass(byte[] bytes, boolean remapped) {
+            this(bytes, remapped, null);
+        }
+
+        private RelocatedClass(byte[] bytes, boolean remapped, CompressedEntry compressed) {
+            this.bytes = bytes;
+            this.remapped = remapped;
+            this.compressed = compressed;
+        }
+
+        RelocatedClass compress(EntryBuffers buffers) {
+            return new RelocatedClass(bytes, remapped, CompressedEntry.deflate(bytes, buffers));
+        }
+    }
+
+    /**
+     * An entry of one of the JARs or directories to shade.
      */
-    private static class CrcAndSize {
+    private static class ShadeEntry {
+
+        /** The shaded JAR or directory containing the entry. */
+        private final File jar;
+
+        private final String name;
+
+        private final long time;
+
+        private final int method;
+
+        /** The file of an entry of a directory, {@code null} for JAR entries. */
+        private final Path file;
+
+        /** The size of the file of an entry of a directory. */
+        private final long fileSize;
+
+        private final JarFile jarFile;
 
-        private final CRC32 crc = new CRC32();
+        private final JarEntry jarEntry;
 
-        private long size;
+        /**
+         * The same JAR read by commons-compress for its compressed data, {@code null} unless compressed data is copied.
+         */
+        private final ZipFile zipFile;
+
+        /** The entry of {@link #zipFile}, {@code null} if its compressed data cannot be copied. */
+        private final ZipArchiveEntry zipEntry;
+
+        ShadeEntry(File jar, DirectoryWalker.DirectoryFile file) {
+            this.jar = jar;
+            this.name = file.name;
+            this.time = file.time;
+            this.method = -1;
+            this.file = file.path;
+            this.fileSize = file.size;
+            this.jarFile = null;
+            this.jarEntry = null;
+            this.zipFile = null;
+            this.zipEntry = null;
+        }
 
-        CrcAndSize(InputStream inputStream) throws IOException {
-            load(inputStream);
+        /**
+         * @param zipFile the JAR read by commons-compress, to copy the compressed data of the entry, or {@code null}
+         */
+        ShadeEntry(File jar, JarFile jarFile, JarEntry jarEntry, long time, ZipFile zipFile) {
+            this.jar = jar;
+            this.name = jarEntry.getName();
+            this.time = time;
+            this.method = jarEntry.getMethod();
+            this.file = null;
+            this.fileSize = -1;
+            this.jarFile = jarFile;
+            this.jarEntry = jarEntry;
+            this.zipFile = zipFile;
+            this.zipEntry = zipFile != null ? getRawEntry(zipFile, jarEntry) : null;
         }
 
-        private void load(InputStream inputStream) throws IOException {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                this.crc.update(buffer, 0, bytesRead);
-                this.size += bytesRead;
+        /**
+         * Looks up the entry of commons-compress holding the data the JDK reads for an entry. Its compressed data is
+         * only copied when both agree on it, which they may not for duplicate names or inconsistent headers.
+         */
+        private static ZipArchiveEntry getRawEntry(ZipFile zipFile, JarEntry jarEntry) {
+            ZipArchiveEntry zipEntry = zipFile.getEntry(jarEntry.getName());
+            if (zipEntry == null
+                    || zipEntry.getMethod() != jarEntry.getMethod()
+                    || zipEntry.getCrc() != jarEntry.getCrc()
+                    || zipEntry.getSize() != jarEntry.getSize()
+                    || zipEntry.getCompressedSize() != jarEntry.getCompressedSize()) {
+                return null;
             }
+            return zipEntry;
         }
 
-        public void setupStoredEntry(JarEntry entry) {
-            entry.setSize(this.size);
-            entry.setCompressedSize(this.size);
-            entry.setCrc(this.crc.getValue());
-            entry.setMethod(ZipEntry.STORED);
+        /**
+         * @return the uncompressed size of this entry, or {@code -1} if unknown
+         */
+        long size() {
+            return jarEntry != null ? jarEntry.getSize() : fileSize;
+        }
+
+        InputStream open() throws IOException {
+            return jarFile != null ? jarFile.getInputStream(jarEntry) : Files.newInputStream(file);
+        }
+
+        /**
+         * Reads the content of this entry into an array of its size. When compressed data is copied, deflated JAR
+         * entries are inflated from their raw data with a pooled inflater, without the buffered stream of
+         * {@link ZipFile#getInputStream(ZipArchiveEntry)}.
+         */
+        byte[] readAllBytes(EntryBuffers buffers) throws IOException {
+            if (zipEntry != null
+                    && method == ZipEntry.DEFLATED
+                    && !zipEntry.getGeneralPurposeBit().usesEncryption()
+                    && zipEntry.getSize() != ArchiveEntry.SIZE_UNKNOWN
+                    && zipEntry.getSize() <= MAX_COMPRESSED_AHEAD_SIZE
+                    && zipEntry.getCompressedSize() != ArchiveEntry.SIZE_UNKNOWN) {
+                try (InputStream raw = openRaw()) {
+                    return buffers.inflate(raw, zipEntry.getCompressedSize(), zipEntry.getSize());
+                }
+            }
+            try (InputStream in = open()) {
+                // the array is only allocated up front for sizes which are not suspicious
+                return buffers.readFully(in, size() <= MAX_COMPRESSED_AHEAD_SIZE ? size() : -1);
+            }
+        }
+
+        /**
+         * @return {@code true} if the compressed data of this entry can be copied as is
+         */
+        boolean isRawCopyable() {
+            return zipEntry != null
+                    && (method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+                    && !zipEntry.getGeneralPurposeBit().usesEncryption()
+                    && zipEntry.getSize() != ArchiveEntry.SIZE_UNKNOWN
+                    && zipEntry.getCompressedSize() != ArchiveEntry.SIZE_UNKNOWN
+                    && zipEntry.getCrc() != -1;
+        }
+
+        InputStream openRaw() throws IOException {
+            return zipFile.getRawInputStream(zipEntry);
+        }
+
+        /**
+         * @param outputName the name of the entry in the uber JAR
+         * @return an entry describing the compressed data of this entry
+         */
+        ZipArchiveEntry newRawEntry(String outputName) {
+            ZipArchiveEntry rawEntry = new ZipArchiveEntry(outputName);
+            rawEntry.setMethod(method);
+            rawEntry.setCrc(zipEntry.getCrc());
+            rawEntry.setSize(zipEntry.getSize());
+            rawEntry.setCompressedSize(zipEntry.getCompressedSize());
+            rawEntry.setTime(time);
+            return rawEntry;
+        }
+
+        /**
+         * @param outputName the name of the entry in the uber JAR
+         * @return an entry storing the data of this stored entry, with its CRC and size
+         */
+        JarEntry newStoredEntry(String outputName) {
+            JarEntry storedEntry = new JarEntry(outputName);
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setCrc(jarEntry.getCrc());
+            storedEntry.setSize(jarEntry.getSize());
+            storedEntry.setCompressedSize(jarEntry.getSize());
+            storedEntry.setTime(time);
+            return storedEntry;
         }
     }
 
-    private void shadeJars(
-            ShadeRequest shadeRequest,
-            Set<String> resources,
-            List<ResourceTransformer> transformers,
-            JarOutputStream jos,
-            Map<String, HashSet<File>> duplicates,
-            DefaultPackageMapper packageMapper)
-            throws IOException {
-        for (File jar : shadeRequest.getJars()) {
+    /**
+     * Work to be done on the uber JAR for a single entry.
+     */
+    @FunctionalInterface
+    private interface WriteAction {
+        void run() throws Exception;
+    }
 
-            logger.debug("Processing JAR " + jar);
+    /**
+     * Ordered read/relocate/write pipeline. Tasks handed to {@link #submit(Callable)} run on worker threads when more
+     * than one thread is configured, while every {@link WriteAction} runs on the calling thread in the order it was
+     * queued. The uber JAR is thus written by a single thread and its content does not depend on the thread count.
+     * The number of queued writes is bounded, which also bounds the number of relocated classes held in memory.
+     */
+    private static class ShadePipeline implements Closeable {
 
-            List<Filter> jarFilters = getFilters(jar, shadeRequest.getFilters());
-            if (jar.isDirectory()) {
-                shadeDir(
-                        shadeRequest,
-                        resources,
-                        transformers,
-                        packageMapper,
-                        jos,
-                        duplicates,
-                        jar,
-                        jar,
-                        "",
-                        jarFilters);
+        private static final int QUEUE_DEPTH_PER_THREAD = 16;
+
+        private static final long TERMINATION_TIMEOUT_SECONDS = 60;
+
+        private final ExecutorService executor;
+
+        private final int depth;
+
+        private final Deque<WriteAction> queue = new ArrayDeque<>();
+
+        private final List<Closeable> closeables = new ArrayList<>();
+
+        /**
+         * @param threads the number of worker threads, or lower than {@code 1} for one per available processor
+         * @param virtualThreads an executor starting a virtual thread per task, or {@code null} to use worker threads
+         */
+        ShadePipeline(int threads, ExecutorService virtualThreads) {
+            if (threads < 1) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            if (virtualThreads != null) {
+                // the queue depth bounds the number of tasks running at once
+                this.executor = virtualThreads;
+                this.depth = threads * QUEUE_DEPTH_PER_THREAD;
+            } else if (threads == 1) {
+                this.executor = null;
+                this.depth = 0;
             } else {
-                shadeJar(shadeRequest, resources, transformers, packageMapper, jos, duplicates, jar, jarFilters);
+                this.executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+                this.depth = threads * QUEUE_DEPTH_PER_THREAD;
             }
         }
-    }
 
-    @SuppressWarnings("checkstyle:ParameterNumber")
-    private void shadeDir(
-            ShadeRequest shadeRequest,
-            Set<String> resources,
-            List<ResourceTransformer> transformers,
-            DefaultPackageMapper packageMapper,
-            JarOutputStream jos,
-            Map<String, HashSet<File>> duplicates,
-            File jar,
-            File current,
-            String prefix,
-            List<Filter> jarFilters)
-            throws IOException {
-        final File[] children = current.listFiles();
-        if (children == null) {
-            return;
+        <T> Future<T> submit(Callable<T> task) {
+            if (executor != null) {
+                return executor.submit(task);
+            }
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
         }
-        for (final File file : children) {
-            final String name = prefix + file.getName();
-            if (file.isDirectory()) {
+
+        /**
+         * Queues a write, executing the oldest queued writes once the queue is full.
+         *
+         * @param jar the JAR or directory the entry comes from, used for error reporting
+         * @param name the name of the entry, used for error reporting
+         * @param action the write to perform
+         */
+        void write(File jar, String name, WriteAction action) throws IOException {
+            queue.add(() -> {
                 try {
-                    shadeDir(
-                            shadeRequest,
-                            resources,
-                            transformers,
-                            packageMapper,
-                            jos,
-                            duplicates,
-                            jar,
-                            file,
-                            prefix + file.getName() + '/',
-                            jarFilters);
-                    continue;
+                    action.run();
                 } catch (Exception e) {
-                    throw new IOException(String.format("Problem shading JAR %s entry %s: %s", current, name, e), e);
+                    throw new IOException(String.format("Problem shading JAR %s entry %s: %s", jar, name, e), e);
                 }
+            });
+            drain(depth);
+        }
+
+        /**
+         * Closes the given resource once all writes queued so far are done, or when the pipeline is closed.
+         */
+        void closeWhenWritten(Closeable closeable) {
+            track(closeable);
+            queue.add(() -> {
+                closeables.remove(closeable);
+                closeable.close();
+            });
+        }
+
+        /**
+         * Closes the given resource when the pipeline is closed, unless it was closed before.
+         */
+        void track(Closeable closeable) {
+            if (!closeables.contains(closeable)) {
+                closeables.add(closeable);
             }
-            if (isFiltered(jarFilters, name) || isExcludedEntry(name)) {
-                continue;
+        }
+
+        void flush() throws IOException {
+            drain(0);
+        }
+
+        private void drain(int remaining) throws IOException {
+            while (queue.size() > remaining) {
+                try {
+                    queue.poll().run();
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
             }
+        }
 
+        static <T> T await(Future<T> future) throws Exception {
             try {
-                shadeJarEntry(
-                        shadeRequest,
-                        resources,
-                        transformers,
-                        packageMapper,
-                        jos,
-                        duplicates,
-                        jar,
-                        new Callable<InputStream>() {
-                            @Override
-                            public InputStream call() throws Exception {
-                                return Files.newInputStream(file.toPath());
-                            }
-                        },
-                        name,
-                        file.lastModified(),
-                        -1 /*ignore*/);
-            } catch (Exception e) {
-                throw new IOException(String.format("Problem shading JAR %s entry %s: %s", current, name, e), e);
+                return future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
             }
         }
+
+        @Override
+        public void close() throws IOException {
+            queue.clear();
+            IOException failure = null;
+            if (executor != null) {
+                executor.shutdownNow();
+                // no worker may still use the JARs closed below, nor the entry buffers released after the pipeline
+                try {
+                    if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        failure = new IOException(
+                                "Workers did not stop within " + TERMINATION_TIMEOUT_SECONDS + " seconds");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = new InterruptedIOException("Interrupted while waiting for the workers to stop");
+                }
+            }
+            for (Closeable closeable : closeables) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            closeables.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or {@code null} if the JVM does not support them
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Java 21 or later
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by Java " + System.getProperty("java.version")
+                    + ", using worker threads instead");
+            return null;
+        }
     }
 
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "shade-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Plans the content of the uber JAR from the entry names of all JARs and directories to shade, before any entry is
+     * read. Filters and relocations are applied to the names and the entry written for each path of the uber JAR is
+     * chosen, so that losing duplicates are never decompressed nor relocated. The manifests are handed to the manifest
+     * transformer meanwhile, so that each JAR is opened only once.
+     */
     @SuppressWarnings("checkstyle:ParameterNumber")
-    private void shadeJar(
+    private List<PlannedJar> planJars(
+            ShadePipeline pipeline,
             ShadeRequest shadeRequest,
-            Set<String> resources,
+            EntryNameIndex resources,
+            ManifestResourceTransformer manifestTransformer,
             List<ResourceTransformer> transformers,
-            DefaultPackageMapper packageMapper,
-            JarOutputStream jos,
-            Map<String, HashSet<File>> duplicates,
-            File jar,
-            List<Filter> jarFilters)
+            DuplicateIndex duplicates,
+            DefaultPackageMapper packageMapper)
             throws IOException {
-        try (JarFile jarFile = newJarFile(jar)) {
-
-            for (Enumeration<JarEntry> j = jarFile.entries(); j.hasMoreElements(); ) {
-                final JarEntry entry = j.nextElement();
+        EntryPlanner planner = new EntryPlanner(shadeRequest, resources, transformers, duplicates, packageMapper);
+        List<PlannedJar> plan = new ArrayList<>();
+        boolean manifestTransformed = false;
+        for (File jar : shadeRequest.getJars()) {
 
-                String name = entry.getName();
+            logger.debug("Processing JAR " + jar);
 
-                if (entry.isDirectory() || isFiltered(jarFilters, name) || isExcludedEntry(name)) {
+            List<Filter> jarFilters = new ArrayList<>();
+            Filter.Verdict verdict = getEntryFilters(jar, shadeRequest.getFilters(), jarFilters);
+            boolean allFiltered = verdict == Filter.Verdict.DROP_ALL;
+            // the manifest of the first JAR with one is transformed, even if its entries are filtered
+            if (allFiltered && (jar.isDirectory() || manifestTransformer == null || manifestTransformed)) {
+                logger.debug("Skipping JAR " + jar + ", all its entries are filtered");
+                continue;
+            }
+            if (jar.isDirectory()) {
+                PlannedJar plannedJar = new PlannedJar(jar, null, null);
+                planDir(planner, plannedJar, jarFilters);
+                plan.add(plannedJar);
+            } else {
+                JarFile jarFile = newJarFile(jar);
+                // closed once the entries are written, or when shading fails
+                pipeline.track(jarFile);
+                if (manifestTransformer != null) {
+                    manifestTransformed |= transformManifest(shadeRequest, planner, manifestTransformer, jarFile);
+                }
+                if (allFiltered) {
                     continue;
                 }
-
-                try {
-                    shadeJarEntry(
-                            shadeRequest,
-                            resources,
-                            transformers,
-                            packageMapper,
-                            jos,
-                            duplicates,
-                            jar,
-                            new Callable<InputStream>() {
-                                @Override
-                                public InputStream call() throws Exception {
-                                    return jarFile.getInputStream(entry);
-                                }
-                            },
-                            name,
-                            getTime(entry),
-                            entry.getMethod());
-                } catch (Exception e) {
-                    throw new IOException(String.format("Problem shading JAR %s entry %s: %s", jar, name, e), e);
+                // the entries and their times are those of the JDK, commons-compress only gives their compressed data
+                ZipFile zipFile = null;
+                if (shadeRequest.isRawCopy()) {
+                    zipFile = newZipFile(jar);
+                    pipeline.track(zipFile);
                 }
+                PlannedJar plannedJar = new PlannedJar(jar, jarFile, zipFile);
+                planJar(planner, plannedJar, jarFilters);
+                plan.add(plannedJar);
             }
         }
+        long footprint = resources.getFootprint() + planner.classes.getFootprint() + duplicates.getFootprint();
+        logger.debug("Entry name indexes: " + resources.size() + " resources, " + planner.classes.size()
+                + " classes, " + duplicates.size() + " input entries in " + footprint / 1024 + " KiB");
+        return plan;
     }
 
-    private boolean isExcludedEntry(final String name) {
-        if ("META-INF/INDEX.LIST".equals(name)) {
-            // we cannot allow the jar indexes to be copied over or the
-            // jar is useless. Ideally, we could create a new one
-            // later
-            return true;
+    private void planDir(EntryPlanner planner, PlannedJar plannedJar, List<Filter> jarFilters) throws IOException {
+        List<DirectoryWalker.DirectoryFile> files;
+        try {
+            files = DirectoryWalker.walk(plannedJar.jar.toPath());
+        } catch (IOException e) {
+            throw new IOException(String.format("Problem shading directory %s: %s", plannedJar.jar, e), e);
         }
+        List<String> names = new ArrayList<>(files.size());
+        for (DirectoryWalker.DirectoryFile file : files) {
+            names.add(file.name);
+        }
+        BitSet kept = getKeptEntries(jarFilters, names);
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            DirectoryWalker.DirectoryFile file = files.get(i);
+            if (isExcludedEntry(file.name)) {
+                continue;
+            }
 
-        if ("module-info.class".equals(name)) {
-            logger.warn("Discovered module-info.class. " + "Shading will break its strong encapsulation.");
-            return true;
+            planner.plan(plannedJar, new ShadeEntry(plannedJar.jar, file));
         }
-        return false;
     }
 
-    @SuppressWarnings("checkstyle:ParameterNumber")
-    private void shadeJarEntry(
-            ShadeRequest shadeRequest,
-            Set<String> resources,
-            List<ResourceTransformer> transformers,
-            DefaultPackageMapper packageMapper,
-            JarOutputStream jos,
-            Map<String, HashSet<File>> duplicates,
-            File jar,
-            Callable<InputStream> inputProvider,
-            String name,
-            long time,
-            int method)
-            throws Exception {
-        try (InputStream in = inputProvider.call()) {
-            String mappedName = packageMapper.map(name, true, false);
+    private void planJar(EntryPlanner planner, PlannedJar plannedJar, List<Filter> jarFilters) {
+        List<JarEntry> entries = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Enumeration<JarEntry> j = plannedJar.jarFile.entries(); j.hasMoreElements(); ) {
+            final JarEntry entry = j.nextElement();
+            if (!entry.isDirectory()) {
+                entries.add(entry);
+                names.add(entry.getName());
+            }
+        }
+        BitSet kept = getKeptEntries(jarFilters, names);
+        for (int i = kept.nextSetBit(0); i >= 0; i = kept.nextSetBit(i + 1)) {
+            final JarEntry entry = entries.get(i);
 
-            int idx = mappedName.lastIndexOf('/');
-            if (idx != -1) {
-                // make sure dirs are created
-                String dir = mappedName.substring(0, idx);
-                if (!resources.contains(dir)) {
-                    addDirectory(resources, jos, dir, time);
-                }
+            String name = names.get(i);
+
+            if (isExcludedEntry(name)) {
+                continue;
             }
 
-            duplicates.computeIfAbsent(name, k -> new HashSet<>()).add(jar);
+            long time = getTime(entry, planner.timeZone);
+            planner.plan(
+                    plannedJar, new ShadeEntry(plannedJar.jar, plannedJar.jarFile, entry, time, plannedJar.zipFile));
+        }
+    }
+
+    private enum PlannedAction {
+        DIRECTORY,
+        CLASS,
+        JAVA_SOURCE,
+        RESOURCE,
+        TRANSFORM
+    }
+
+    /**
+     * An entry of the uber JAR, or an entry handed to a resource transformer.
+     */
+    private static class PlannedEntry {
+
+        private final PlannedAction action;
+
+        private final String outputName;
+
+        private final ShadeEntry source;
+
+        private final long time;
+
+        private final ResourceTransformer transformer;
+
+        /** Whether the resource may be processed into an accumulator of the transformer. */
+        private final boolean accumulated;
+
+        PlannedEntry(PlannedAction action, String outputName, ShadeEntry source) {
+            this(action, outputName, source, source.time, null, false);
+        }
+
+        PlannedEntry(String outputName, ShadeEntry source, ResourceTransformer transformer, boolean accumulated) {
+            this(PlannedAction.TRANSFORM, outputName, source, source.time, transformer, accumulated);
+        }
+
+        PlannedEntry(String directoryName, long time) {
+            this(PlannedAction.DIRECTORY, directoryName, null, time, null, false);
+        }
+
+        private PlannedEntry(
+                PlannedAction action,
+                String outputName,
+                ShadeEntry source,
+                long time,
+                ResourceTransformer transformer,
+                boolean accumulated) {
+            this.action = action;
+            this.outputName = outputName;
+            this.source = source;
+            this.time = time;
+            this.transformer = transformer;
+            this.accumulated = accumulated;
+        }
+    }
+
+    /**
+     * The planned entries of one JAR or directory to shade, in order.
+     */
+    private static class PlannedJar {
+
+        private final File jar;
+
+        /** The opened JAR, or {@code null} for a directory. */
+        private final JarFile jarFile;
+
+        /** The JAR opened for its compressed data, or {@code null} unless compressed data is copied. */
+        private final ZipFile zipFile;
+
+        private final List<PlannedEntry> entries = new ArrayList<>();
+
+        PlannedJar(File jar, JarFile jarFile, ZipFile zipFile) {
+            this.jar = jar;
+            this.jarFile = jarFile;
+            this.zipFile = zipFile;
+        }
+
+        void add(PlannedEntry entry) {
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * Decides what happens to each entry, in the order the entries are shaded. Only entry names are looked at.
+     */
+    private class EntryPlanner {
+
+        private final ShadeRequest shadeRequest;
+
+        /** Paths of the directories and resources of the uber JAR. */
+        private final EntryNameIndex resources;
+
+        /** Paths of the classes of the uber JAR. */
+        private final EntryNameIndex classes = new EntryNameIndex();
+
+        /** Time zone of the times of the JAR entries, looked up once. */
+        private final TimeZone timeZone = TimeZone.getDefault();
+
+        private final ResourceTransformerIndex transformerIndex;
+
+        /** Whether each transformer processes resources into accumulators. */
+        private final Map<ResourceTransformer, Boolean> accumulating = new IdentityHashMap<>();
+
+        private final DuplicateIndex duplicates;
+
+        private final DefaultPackageMapper packageMapper;
+
+        EntryPlanner(
+                ShadeRequest shadeRequest,
+                EntryNameIndex resources,
+                List<ResourceTransformer> transformers,
+                DuplicateIndex duplicates,
+                DefaultPackageMapper packageMapper) {
+            this.shadeRequest = shadeRequest;
+            this.resources = resources;
+            this.transformerIndex = new ResourceTransformerIndex(transformers);
+            this.duplicates = duplicates;
+            this.packageMapper = packageMapper;
+        }
+
+        void plan(PlannedJar plannedJar, ShadeEntry entry) {
+            final String name = entry.name;
+            final File jar = entry.jar;
+            String mappedName = packageMapper.map(name, true, false);
+
+            planParentDirectories(plannedJar, mappedName, entry.time);
+
+            duplicates.add(name, jar);
             if (name.endsWith(".class")) {
-                addRemappedClass(jos, jar, name, time, in, packageMapper);
+                String outputName;
+                String duplicateName;
+                if (packageMapper.relocators.isEmpty()) {
+                    outputName = name;
+                    duplicateName = name;
+                } else {
+                    // Need to take the .class off for remapping evaluation
+                    duplicateName = packageMapper.map(name.substring(0, name.indexOf('.')), true, false);
+                    // Now we put it back on so the class file is written out with the right extension.
+                    outputName = duplicateName + ".class";
+                }
+                if (classes.add(outputName)) {
+                    plannedJar.add(new PlannedEntry(PlannedAction.CLASS, outputName, entry));
+                } else {
+                    logger.debug("We have a duplicate " + duplicateName + " in " + jar);
+                }
             } else if (shadeRequest.isShadeSourcesContent() && name.endsWith(".java")) {
                 // Avoid duplicates
-                if (resources.contains(mappedName)) {
-                    return;
+                if (resources.add(mappedName)) {
+                    plannedJar.add(new PlannedEntry(PlannedAction.JAVA_SOURCE, mappedName, entry));
                 }
-
-                addJavaSource(resources, jos, mappedName, time, in, shadeRequest.getRelocators());
             } else {
-                if (!resourceTransformed(transformers, mappedName, in, shadeRequest.getRelocators(), time)) {
+                ResourceTransformer transformer = findTransformer(mappedName);
+                if (transformer != null) {
+                    duplicates.remove(name, jar);
+                    boolean accumulated = accumulating.computeIfAbsent(transformer, DefaultShader::isAccumulating);
+                    plannedJar.add(new PlannedEntry(mappedName, entry, transformer, accumulated));
+                } else if (resources.add(mappedName)) {
+                    plannedJar.add(new PlannedEntry(PlannedAction.RESOURCE, mappedName, entry));
+                } else {
                     // Avoid duplicates that aren't accounted for by the resource transformers
-                    if (resources.contains(mappedName)) {
-                        logger.debug("We have a duplicate " + name + " in " + jar);
-                        return;
-                    }
+                    logger.debug("We have a duplicate " + name + " in " + jar);
+                }
+            }
+        }
 
-                    addResource(resources, jos, mappedName, inputProvider, time, method);
-                } else {
-                    duplicates.computeIfAbsent(name, k -> new HashSet<>()).remove(jar);
+        private void planParentDirectories(PlannedJar plannedJar, String mappedName, long time) {
+            int idx = mappedName.lastIndexOf('/');
+            if (idx != -1) {
+                // make sure dirs are created
+                planDirectory(plannedJar, mappedName, idx, time);
+            }
+        }
+
+        /**
+         * Plans the directory named by the first characters of a path, up to a slash, and its parent directories.
+         */
+        private void planDirectory(PlannedJar plannedJar, String path, int end, long time) {
+            if (resources.indexOf(path, end) >= 0) {
+                return;
+            }
+            int parent = path.lastIndexOf('/', end - 1);
+            if (parent > 0) {
+                planDirectory(plannedJar, path, parent, time);
+            }
+
+            resources.intern(path, end);
+            // directory entries must end in "/"
+            plannedJar.add(new PlannedEntry(path.substring(0, end + 1), time));
+        }
+
+        private ResourceTransformer findTransformer(String name) {
+            return transformerIndex.find(name);
+        }
+    }
+
+    private void shadeJars(
+            ShadePipeline pipeline,
+            EntryBuffers buffers,
+            ShadeRequest shadeRequest,
+            List<PlannedJar> plan,
+            JarOutputStream jos,
+            DefaultPackageMapper packageMapper)
+            throws IOException {
+        for (PlannedJar plannedJar : plan) {
+            try {
+                for (PlannedEntry plannedEntry : plannedJar.entries) {
+                    shadePlannedEntry(
+                            pipeline, buffers, shadeRequest, jos, packageMapper, plannedJar.jar, plannedEntry);
+                }
+            } finally {
+                // entries of this JAR may still be queued, so it is closed once they are written
+                if (plannedJar.jarFile != null) {
+                    pipeline.closeWhenWritten(plannedJar.jarFile);
+                }
+                if (plannedJar.zipFile != null) {
+                    pipeline.closeWhenWritten(plannedJar.zipFile);
                 }
             }
         }
+        pipeline.flush();
     }
 
-    private void goThroughAllJarEntriesForManifestTransformer(
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void shadePlannedEntry(
+            ShadePipeline pipeline,
+            EntryBuffers buffers,
             ShadeRequest shadeRequest,
-            Set<String> resources,
-            ManifestResourceTransformer manifestTransformer,
-            JarOutputStream jos)
+            JarOutputStream jos,
+            DefaultPackageMapper packageMapper,
+            File jar,
+            PlannedEntry plannedEntry)
             throws IOException {
-        if (manifestTransformer != null) {
-            for (File jar : shadeRequest.getJars()) {
-                try (JarFile jarFile = newJarFile(jar)) {
-                    for (Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); ) {
-                        JarEntry entry = en.nextElement();
-                        String resource = entry.getName();
-                        if (manifestTransformer.canTransformResource(resource)) {
-                            resources.add(resource);
-                            try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                                manifestTransformer.processResource(
-                                        resource, inputStream, shadeRequest.getRelocators(), getTime(entry));
-                            }
-                            break;
-                        }
+        final ShadeEntry entry = plannedEntry.source;
+        final String outputName = plannedEntry.outputName;
+
+        switch (plannedEntry.action) {
+            case DIRECTORY:
+                pipeline.write(jar, outputName, () -> {
+                    JarEntry directory = new JarEntry(outputName);
+                    directory.setTime(plannedEntry.time);
+                    jos.putNextEntry(directory);
+                });
+                break;
+            case CLASS:
+                // reading and relocating the class does not depend on the output, so it may run ahead on a worker, and
+                // so may compressing it when compressed data is copied
+                final boolean rawCopy = shadeRequest.isRawCopy();
+                final Future<RelocatedClass> relocatedClass = pipeline.submit(() -> {
+                    RelocatedClass relocated =
+                            relocateClass(entry, buffers, packageMapper, shadeRequest.isConstantPoolRelocation());
+                    return rawCopy && (relocated.remapped || !entry.isRawCopyable())
+                            ? relocated.compress(buffers)
+                            : relocated;
+                });
+                pipeline.write(
+                        entry.jar,
+                        entry.name,
+                        () -> addRemappedClass(
+                                jos, entry, outputName, ShadePipeline.await(relocatedClass), packageMapper));
+                break;
+            case JAVA_SOURCE:
+                pipeline.write(entry.jar, entry.name, () -> {
+                    try (InputStream in = entry.open()) {
+                        addJavaSource(jos, outputName, entry.time, in, packageMapper.sourceContentRelocator);
                     }
+                });
+                break;
+            case RESOURCE:
+                if (entry.isRawCopyable() || entry.size() > MAX_COMPRESSED_AHEAD_SIZE) {
+                    pipeline.write(entry.jar, entry.name, () -> addResource(jos, buffers, outputName, entry));
+                } else if (shadeRequest.isRawCopy()) {
+                    final Future<CompressedEntry> compressed = pipeline.submit(() -> compressResource(entry, buffers));
+                    pipeline.write(entry.jar, entry.name, () -> {
+                        CompressedEntry resource = ShadePipeline.await(compressed);
+                        rawOutput(jos).putRawEntry(resource.newEntry(outputName, entry.time), resource.open());
+                    });
+                } else {
+                    final Future<byte[]> content = pipeline.submit(() -> entry.readAllBytes(buffers));
+                    pipeline.write(entry.jar, entry.name, () -> {
+                        InputStream in = new ByteArrayInputStream(ShadePipeline.await(content));
+                        addResource(jos, buffers, outputName, entry, in);
+                    });
                 }
-            }
-            if (manifestTransformer.hasTransformedResource()) {
-                manifestTransformer.modifyOutputStream(jos);
+                break;
+            case TRANSFORM:
+                if (plannedEntry.accumulated && entry.size() <= MAX_COMPRESSED_AHEAD_SIZE) {
+                    transformResourceAhead(
+                            pipeline,
+                            (ParallelResourceTransformer<?>) plannedEntry.transformer,
+                            outputName,
+                            entry,
+                            shadeRequest.getRelocators());
+                    break;
+                }
+                pipeline.write(entry.jar, entry.name, () -> {
+                    try (InputStream in = entry.open()) {
+                        transformResource(
+                                plannedEntry.transformer, outputName, in, shadeRequest.getRelocators(), entry.time);
+                    }
+                });
+                break;
+            default:
+                throw new IllegalStateException("Unknown action " + plannedEntry.action);
+        }
+    }
+
+    private boolean isExcludedEntry(final String name) {
+        if ("META-INF/INDEX.LIST".equals(name)) {
+            // we cannot allow the jar indexes to be copied over or the
+            // jar is useless. Ideally, we could create a new one
+            // later
+            return true;
+        }
+
+        if ("module-info.class".equals(name)) {
+            logger.warn("Discovered module-info.class. " + "Shading will break its strong encapsulation.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hands the manifest of a JAR to the manifest transformer. The manifest is then a duplicate for the entries of all
+     * JARs, so that the transformed manifest is the only one written to the uber JAR.
+     *
+     * @return whether the JAR has a manifest
+     */
+    private boolean transformManifest(
+            ShadeRequest shadeRequest,
+            EntryPlanner planner,
+            ManifestResourceTransformer manifestTransformer,
+            JarFile jarFile)
+            throws IOException {
+        for (Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); ) {
+            JarEntry entry = en.nextElement();
+            String resource = entry.getName();
+            if (manifestTransformer.canTransformResource(resource)) {
+                planner.resources.add(resource);
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    manifestTransformer.processResource(
+                            resource, inputStream, shadeRequest.getRelocators(), getTime(entry, planner.timeZone));
+                }
+                return true;
             }
         }
+        return false;
     }
 
     private void showOverlappingWarning() {
@@ -491,8 +1098,8 @@ public class DefaultShader implements Shader {
         logger.warn("See https://maven.apache.org/plugins/maven-shade-plugin/");
     }
 
-    private void logSummaryOfDuplicates(Map<Collection<File>, HashSet<String>> overlapping) {
-        for (Collection<File> jarz : overlapping.keySet()) {
+    private void logSummaryOfDuplicates(Map<Set<File>, List<String>> overlapping) {
+        for (Set<File> jarz : overlapping.keySet()) {
             List<String> jarzS = new ArrayList<>();
 
             for (File jjar : jarz) {
@@ -561,56 +1168,108 @@ public class DefaultShader implements Shader {
         }
     }
 
-    private List<Filter> getFilters(File jar, List<Filter> filters) {
-        List<Filter> list = new ArrayList<>();
+    private ZipFile newZipFile(File jar) throws IOException {
+        try {
+            return ZipFile.builder().setFile(jar).get();
+        } catch (IOException ioe) {
+            // the exception does not always tell the user which file it was
+            // so we will create a new Exception instead
+            ZipException zex = new ZipException("error in opening zip file " + jar);
+            zex.initCause(ioe);
+            throw zex;
+        }
+    }
 
+    /**
+     * Finds the filters deciding entry by entry whether the entries of a JAR are filtered, in order. Like when asking
+     * each filter about an entry in turn, a filter is only asked about the entries the previous filters keep, and no
+     * filter after one filtering all the entries is asked.
+     *
+     * @param jar a JAR or directory
+     * @param filters all the filters
+     * @param entryFilters the list to add the filters deciding entry by entry to
+     * @return the verdict of the filters about all the entries of the JAR
+     */
+    private static Filter.Verdict getEntryFilters(File jar, List<Filter> filters, List<Filter> entryFilters) {
         for (Filter filter : filters) {
-            if (filter.canFilter(jar)) {
-                list.add(filter);
+            if (!filter.canFilter(jar)) {
+                continue;
+            }
+            Filter.Verdict verdict = filter.getVerdict(jar);
+            if (verdict == Filter.Verdict.DROP_ALL && entryFilters.isEmpty()) {
+                return Filter.Verdict.DROP_ALL;
+            } else if (verdict != Filter.Verdict.KEEP_ALL) {
+                // the entries kept by the previous filters are asked about, even if this one filters them all
+                entryFilters.add(filter);
+                if (verdict == Filter.Verdict.DROP_ALL) {
+                    break;
+                }
             }
         }
-
-        return list;
+        return entryFilters.isEmpty() ? Filter.Verdict.KEEP_ALL : Filter.Verdict.MIXED;
     }
 
-    private void addDirectory(Set<String> resources, JarOutputStream jos, String name, long time) throws IOException {
-        if (name.lastIndexOf('/') > 0) {
-            String parent = name.substring(0, name.lastIndexOf('/'));
-            if (!resources.contains(parent)) {
-                addDirectory(resources, jos, parent, time);
+    /**
+     * @return the indexes of the names of the entries kept by all the filters, each asked about the entries kept by
+     *     the previous ones
+     */
+    private static BitSet getKeptEntries(List<Filter> filters, List<String> names) {
+        BitSet kept = new BitSet(names.size());
+        kept.set(0, names.size());
+        for (Filter filter : filters) {
+            if (kept.cardinality() == names.size()) {
+                kept.and(filter.getKeptEntries(names));
+                continue;
+            }
+            int[] indexes = kept.stream().toArray();
+            List<String> keptNames = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                keptNames.add(names.get(index));
+            }
+            BitSet filterKept = filter.getKeptEntries(keptNames);
+            kept.clear();
+            for (int i = filterKept.nextSetBit(0); i >= 0 && i < indexes.length; i = filterKept.nextSetBit(i + 1)) {
+                kept.set(indexes[i]);
             }
         }
-
-        // directory entries must end in "/"
-        JarEntry entry = new JarEntry(name + "/");
-        entry.setTime(time);
-        jos.putNextEntry(entry);
-
-        resources.add(name);
+        return kept;
     }
 
-    private void addRemappedClass(
-            JarOutputStream jos, File jar, String name, long time, InputStream is, DefaultPackageMapper packageMapper)
-            throws IOException, MojoExecutionException {
+    /**
+     * Reads a class and relocates its bytecode. This does not touch any shared state and may run on a worker thread.
+     */
+    private RelocatedClass relocateClass(
+            ShadeEntry entry, EntryBuffers buffers, DefaultPackageMapper packageMapper, boolean constantPoolRelocation)
+            throws Exception {
+        final String name = entry.name;
+        final byte[] originalClass = entry.readAllBytes(buffers);
+
         if (packageMapper.relocators.isEmpty()) {
-            try {
-                JarEntry entry = new JarEntry(name);
-                entry.setTime(time);
-                jos.putNextEntry(entry);
-                IOUtil.copy(is, jos);
-            } catch (ZipException e) {
-                logger.debug("We have a duplicate " + name + " in " + jar);
-            }
+            return new RelocatedClass(originalClass, false);
+        }
 
-            return;
+        // Most classes reference no relocated package at all, which is cheap to find out without visiting them
+        if (packageMapper.constantPoolScanner != null
+                && !packageMapper.constantPoolScanner.mayNeedRelocation(originalClass)) {
+            return new RelocatedClass(originalClass, false);
         }
 
-        // Keep the original class, in case nothing was relocated by ShadeClassRemapper. This avoids binary
-        // differences between classes, simply because they were rewritten and only details like constant pool or
-        // stack map frames are slightly different.
-        byte[] originalClass = IOUtil.toByteArray(is);
+        final String pkg = name.substring(0, name.lastIndexOf('/') + 1);
 
-        ClassReader cr = new ClassReader(new ByteArrayInputStream(originalClass));
+        if (constantPoolRelocation) {
+            try {
+                byte[] relocatedClass = ConstantPoolRemapper.remap(
+                        originalClass, pkg, packageMapper.remapper, packageMapper.relocators);
+                return new RelocatedClass(relocatedClass, relocatedClass != originalClass);
+            } catch (ConstantPoolRemapper.UnsupportedClassException e) {
+                logger.debug("Relocating class " + name + " with ASM, its constant pool cannot be patched: "
+                        + e.getMessage());
+            } catch (RuntimeException e) {
+                throw new MojoExecutionException("Error in relocating class " + name, e);
+            }
+        }
+
+        ClassReader cr = new ClassReader(originalClass);
 
         // We don't pass the ClassReader here. This forces the ClassWriter to rebuild the constant pool.
         // Copying the original constant pool should be avoided because it would keep references
@@ -619,85 +1278,158 @@ public class DefaultShader implements Shader {
         // that use the constant pool to determine the dependencies of a class.
         ClassWriter cw = new ClassWriter(0);
 
-        final String pkg = name.substring(0, name.lastIndexOf('/') + 1);
-        final ShadeClassRemapper cv = new ShadeClassRemapper(cw, pkg, packageMapper);
-
+        final ShadeClassRemapper cv = packageMapper.acquireClassRemapper(cw, pkg);
+        final boolean remapped;
         try {
-            cr.accept(cv, ClassReader.EXPAND_FRAMES);
+            // The types in stack map frames are remapped in their compressed form, expanding and compressing the
+            // frames of every method again is not necessary
+            cr.accept(cv, 0);
+            remapped = cv.remapped;
         } catch (Throwable ise) {
             throw new MojoExecutionException("Error in ASM processing class " + name, ise);
+        } finally {
+            packageMapper.releaseClassRemapper(cv);
+        }
+
+        // Keep the original class, in case nothing was relocated by ShadeClassRemapper. This avoids binary
+        // differences between classes, simply because they were rewritten and only details like constant pool or
+        // stack map frames are slightly different.
+        return remapped ? new RelocatedClass(cw.toByteArray(), true) : new RelocatedClass(originalClass, false);
+    }
+
+    private void addRemappedClass(
+            JarOutputStream jos,
+            ShadeEntry source,
+            String outputName,
+            RelocatedClass relocatedClass,
+            DefaultPackageMapper packageMapper)
+            throws IOException {
+        if (packageMapper.relocators.isEmpty()) {
+            writeEntry(jos, outputName, source, true, relocatedClass);
+            return;
         }
 
         // If nothing was relocated by ShadeClassRemapper, write the original class, otherwise the transformed one
-        final byte[] renamedClass;
-        if (cv.remapped) {
-            logger.debug("Rewrote class bytecode: " + name);
-            renamedClass = cw.toByteArray();
+        if (relocatedClass.remapped) {
+            logger.debug("Rewrote class bytecode: " + source.name);
         } else {
-            logger.debug("Keeping original class bytecode: " + name);
-            renamedClass = originalClass;
+            logger.debug("Keeping original class bytecode: " + source.name);
         }
 
-        // Need to take the .class off for remapping evaluation
-        String mappedName = packageMapper.map(name.substring(0, name.indexOf('.')), true, false);
+        writeEntry(jos, outputName, source, !relocatedClass.remapped, relocatedClass);
+    }
 
-        try {
-            // Now we put it back on so the class file is written out with the right extension.
-            JarEntry entry = new JarEntry(mappedName + ".class");
-            entry.setTime(time);
-            jos.putNextEntry(entry);
+    /**
+     * Writes an entry, copying the compressed data of the source entry instead when the content is unchanged and the
+     * source entry can be copied.
+     */
+    private void writeEntry(
+            JarOutputStream jos, String name, ShadeEntry source, boolean unchanged, RelocatedClass content)
+            throws IOException {
+        if (unchanged && source.isRawCopyable()) {
+            try (InputStream raw = source.openRaw()) {
+                rawOutput(jos).putRawEntry(source.newRawEntry(name), raw);
+            }
+            return;
+        }
 
-            jos.write(renamedClass);
-        } catch (ZipException e) {
-            logger.debug("We have a duplicate " + mappedName + " in " + jar);
+        if (content.compressed != null) {
+            rawOutput(jos).putRawEntry(content.compressed.newEntry(name, source.time), content.compressed.open());
+            return;
         }
+
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(source.time);
+        jos.putNextEntry(entry);
+        jos.write(content.bytes);
     }
 
-    private boolean isFiltered(List<Filter> filters, String name) {
-        for (Filter filter : filters) {
-            if (filter.isFiltered(name)) {
-                return true;
-            }
+    /**
+     * @return the uber JAR as a stream accepting compressed data, which it is when compressed data is copied
+     */
+    private static ShadedJarOutputStream rawOutput(JarOutputStream jos) {
+        return (ShadedJarOutputStream) jos;
+    }
+
+    /**
+     * Reads a resource and compresses it. This does not touch any shared state and may run on a worker thread.
+     */
+    private static CompressedEntry compressResource(ShadeEntry entry, EntryBuffers buffers) throws IOException {
+        final byte[] content = entry.readAllBytes(buffers);
+
+        // We should not change compressed level of uncompressed entries, otherwise JVM can't load these nested jars
+        if (entry.method == ZipEntry.STORED
+                && content.length >= ZipHeaderPeekInputStream.HEADER_LEN
+                && Arrays.equals(
+                        Arrays.copyOf(content, ZipHeaderPeekInputStream.HEADER_LEN),
+                        ZipHeaderPeekInputStream.ZIP_HEADER)) {
+            return CompressedEntry.store(content);
         }
+        return CompressedEntry.deflate(content, buffers);
+    }
 
-        return false;
+    /**
+     * Tells whether the resources of a transformer may be processed into accumulators. A subclass of a parallel
+     * transformer which overrides {@code processResource} without an accumulator, but not with one, expects its
+     * override to be called, so its resources are processed with the former.
+     */
+    private static boolean isAccumulating(ResourceTransformer transformer) {
+        if (!(transformer instanceof ParallelResourceTransformer)) {
+            return false;
+        }
+        try {
+            Class<?> type = transformer.getClass();
+            Class<?> direct = type.getMethod(
+                            "processResource", String.class, InputStream.class, List.class, long.class)
+                    .getDeclaringClass();
+            Class<?> accumulated = type.getMethod(
+                            "processResource", Object.class, String.class, InputStream.class, List.class, long.class)
+                    .getDeclaringClass();
+            // the accumulator method is overridden at least as deep as the other one
+            return direct.isAssignableFrom(accumulated);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
     }
 
-    private boolean resourceTransformed(
-            List<ResourceTransformer> resourceTransformers,
+    /**
+     * Transforms a resource into an accumulator of its own on a worker thread, and combines the accumulator into the
+     * transformer when the resource is written, so that the resources are combined in the order they are planned.
+     */
+    private <A> void transformResourceAhead(
+            ShadePipeline pipeline,
+            ParallelResourceTransformer<A> transformer,
             String name,
-            InputStream is,
-            List<Relocator> relocators,
-            long time)
+            ShadeEntry entry,
+            List<Relocator> relocators)
             throws IOException {
-        boolean resourceTransformed = false;
-
-        for (ResourceTransformer transformer : resourceTransformers) {
-            if (transformer.canTransformResource(name)) {
-                logger.debug("Transforming " + name + " using "
-                        + transformer.getClass().getName());
-
-                if (transformer instanceof ReproducibleResourceTransformer) {
-                    ((ReproducibleResourceTransformer) transformer).processResource(name, is, relocators, time);
-                } else {
-                    transformer.processResource(name, is, relocators);
-                }
+        final Future<A> accumulator = pipeline.submit(() -> {
+            A partial = transformer.newAccumulator();
+            try (InputStream in = entry.open()) {
+                transformer.processResource(partial, name, in, relocators, entry.time);
+            }
+            return partial;
+        });
+        pipeline.write(entry.jar, entry.name, () -> {
+            logger.debug("Transforming " + name + " using " + transformer.getClass().getName());
+            transformer.combine(ShadePipeline.await(accumulator));
+        });
+    }
 
-                resourceTransformed = true;
+    private void transformResource(
+            ResourceTransformer transformer, String name, InputStream is, List<Relocator> relocators, long time)
+            throws IOException {
+        logger.debug("Transforming " + name + " using " + transformer.getClass().getName());
 
-                break;
-            }
+        if (transformer instanceof ReproducibleResourceTransformer) {
+            ((ReproducibleResourceTransformer) transformer).processResource(name, is, relocators, time);
+        } else {
+            transformer.processResource(name, is, relocators);
         }
-        return resourceTransformed;
     }
 
     private void addJavaSource(
-            Set<String> resources,
-            JarOutputStream jos,
-            String name,
-            long time,
-            InputStream is,
-            List<Relocator> relocators)
+            JarOutputStream jos, String name, long time, InputStream is, SourceContentRelocator relocator)
             throws IOException {
         JarEntry entry = new JarEntry(name);
         entry.setTime(time);
@@ -705,40 +1437,42 @@ public class DefaultShader implements Shader {
 
         String sourceContent = IOUtil.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
 
-        for (Relocator relocator : relocators) {
-            sourceContent = relocator.applyToSourceContent(sourceContent);
-        }
-
         final Writer writer = new OutputStreamWriter(jos, StandardCharsets.UTF_8);
-        writer.write(sourceContent);
+        relocator.relocate(sourceContent, writer);
         writer.flush();
+    }
+
+    private void addResource(JarOutputStream jos, EntryBuffers buffers, String name, ShadeEntry source)
+            throws Exception {
+        if (source.isRawCopyable()) {
+            try (InputStream raw = source.openRaw()) {
+                rawOutput(jos).putRawEntry(source.newRawEntry(name), raw);
+            }
+            return;
+        }
 
-        resources.add(name);
+        addResource(jos, buffers, name, source, source.open());
     }
 
+    /**
+     * @param content the content of the source entry, closed once copied
+     */
     private void addResource(
-            Set<String> resources, JarOutputStream jos, String name, Callable<InputStream> input, long time, int method)
+            JarOutputStream jos, EntryBuffers buffers, String name, ShadeEntry source, InputStream content)
             throws Exception {
-        ZipHeaderPeekInputStream inputStream = new ZipHeaderPeekInputStream(input.call());
-        try {
-            final JarEntry entry = new JarEntry(name);
-
+        try (ZipHeaderPeekInputStream inputStream = new ZipHeaderPeekInputStream(content)) {
             // We should not change compressed level of uncompressed entries, otherwise JVM can't load these nested jars
-            if (inputStream.hasZipHeader() && method == ZipEntry.STORED) {
-                new CrcAndSize(inputStream).setupStoredEntry(entry);
-                inputStream.close();
-                inputStream = new ZipHeaderPeekInputStream(input.call());
+            if (inputStream.hasZipHeader() && source.method == ZipEntry.STORED) {
+                // only JAR entries are stored, and the central directory always has their CRC and size
+                jos.putNextEntry(source.newStoredEntry(name));
+                buffers.copy(inputStream, jos);
+                return;
             }
 
-            entry.setTime(time);
-
+            final JarEntry entry = new JarEntry(name);
+            entry.setTime(source.time);
             jos.putNextEntry(entry);
-
-            IOUtil.copy(inputStream, jos);
-
-            resources.add(name);
-        } finally {
-            inputStream.close();
+            buffers.copy(inputStream, jos);
         }
     }
 
@@ -758,38 +1492,126 @@ public class DefaultShader implements Shader {
      * A package mapper based on a list of {@link Relocator}s
      */
     private static class DefaultPackageMapper implements PackageMapper {
-        private static final Pattern CLASS_PATTERN = Pattern.compile("(\\[*)?L(.+);");
+        /**
+         * Maximum number of names memoized per cache. A full cache is cleared, so that the names seen in the classes
+         * being relocated now are memoized again.
+         */
+        private static final int MAX_CACHE_SIZE = 64 * 1024;
+
+        private static final int MAX_POOLED_REMAPPERS = 64;
 
         private final List<Relocator> relocators;
 
+        private final RelocatorTrie relocatorTrie;
+
+        /** Relocator of the content of the Java sources, for all the relocators in one scan of each source. */
+        private final SourceContentRelocator sourceContentRelocator;
+
+        /** Scanner for classes which cannot need relocation, {@code null} if they cannot be told apart. */
+        private final ConstantPoolScanner constantPoolScanner;
+
+        /** Memoized results of {@code map(name, true, false)}, shared by all threads relocating classes. */
+        private final Map<String, String> pathCache = new ConcurrentHashMap<>();
+
+        /** Memoized results of {@code map(name, true, true)}, shared by all threads relocating classes. */
+        private final Map<String, String> pathAndPackageCache = new ConcurrentHashMap<>();
+
+        private final LongAdder cacheHits = new LongAdder();
+
+        private final LongAdder cacheMisses = new LongAdder();
+
+        /** Remapper of the names of the constant pools, stateless and shared by all threads relocating classes. */
+        private final LazyInitRemapper remapper = new LazyInitRemapper();
+
+        /** Class remappers not visiting any class, reused instead of created for every class. */
+        private final BlockingQueue<ShadeClassRemapper> classRemappers = new ArrayBlockingQueue<>(MAX_POOLED_REMAPPERS);
+
         private DefaultPackageMapper(final List<Relocator> relocators) {
             this.relocators = relocators;
+            this.relocatorTrie = RelocatorTrie.compile(relocators);
+            this.sourceContentRelocator = SourceContentRelocator.compile(relocators);
+            this.constantPoolScanner = ConstantPoolScanner.of(relocatorTrie.getPatterns());
+            this.remapper.relocators = this;
+        }
+
+        /**
+         * @param classVisitor the visitor of the relocated class
+         * @param pkg the package of the class
+         * @return a class remapper to hand back with {@link #releaseClassRemapper(ShadeClassRemapper)}
+         */
+        ShadeClassRemapper acquireClassRemapper(ClassVisitor classVisitor, String pkg) {
+            ShadeClassRemapper classRemapper = classRemappers.poll();
+            if (classRemapper == null) {
+                classRemapper = new ShadeClassRemapper(this);
+            }
+            classRemapper.reset(classVisitor, pkg);
+            return classRemapper;
+        }
+
+        void releaseClassRemapper(ShadeClassRemapper classRemapper) {
+            classRemapper.reset(null, null);
+            classRemappers.offer(classRemapper);
         }
 
         @Override
         public String map(String entityName, boolean mapPaths, final boolean mapPackages) {
-            String value = entityName;
+            if (relocators.isEmpty()) {
+                return entityName;
+            }
+            if (!mapPaths) {
+                return relocate(entityName, false, mapPackages);
+            }
 
-            String prefix = "";
-            String suffix = "";
+            Map<String, String> cache = mapPackages ? pathAndPackageCache : pathCache;
+            String mapped = cache.get(entityName);
+            if (mapped != null) {
+                cacheHits.increment();
+                return mapped;
+            }
+            cacheMisses.increment();
+            mapped = relocate(entityName, true, mapPackages);
+            if (cache.size() >= MAX_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(entityName, mapped);
+            return mapped;
+        }
 
-            Matcher m = CLASS_PATTERN.matcher(entityName);
-            if (m.matches()) {
-                prefix = m.group(1) + "L";
-                suffix = ";";
-                entityName = m.group(2);
+        private String relocate(String entityName, boolean mapPaths, boolean mapPackages) {
+            // a type descriptor like "[[Lcom/acme/Foo;" is relocated without its "[[L" prefix and ";" suffix
+            int descriptorStart = descriptorStart(entityName);
+            if (descriptorStart > 0) {
+                String relocated = relocatorTrie.relocate(
+                        entityName.substring(descriptorStart, entityName.length() - 1), mapPaths, mapPackages);
+                return relocated == null ? entityName : entityName.substring(0, descriptorStart) + relocated + ";";
             }
 
-            for (Relocator r : relocators) {
-                if (mapPackages && r.canRelocateClass(entityName)) {
-                    value = prefix + r.relocateClass(entityName) + suffix;
-                    break;
-                } else if (mapPaths && r.canRelocatePath(entityName)) {
-                    value = prefix + r.relocatePath(entityName) + suffix;
-                    break;
+            String relocated = relocatorTrie.relocate(entityName, mapPaths, mapPackages);
+            return relocated == null ? entityName : relocated;
+        }
+
+        /**
+         * Same as matching {@code (\[*)?L(.+);}, without a regular expression.
+         *
+         * @return the start of the class name in the descriptor, or {@code -1} if the name is not a descriptor
+         */
+        private static int descriptorStart(String entityName) {
+            int length = entityName.length();
+            int start = 0;
+            while (start < length && entityName.charAt(start) == '[') {
+                start++;
+            }
+            if (length - start < 3 || entityName.charAt(start) != 'L' || entityName.charAt(length - 1) != ';') {
+                return -1;
+            }
+            for (int i = start + 1; i < length - 1; i++) {
+                char c = entityName.charAt(i);
+                // '.' does not match line terminators
+                if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    return -1;
                 }
             }
-            return value;
+            return start + 1;
         }
     }
 
@@ -815,31 +1637,30 @@ public class DefaultShader implements Shader {
         }
     }
 
-    // TODO: we can avoid LazyInitRemapper N instantiations (and use a singleton)
-    //       reimplementing ClassRemapper there.
-    //       It looks a bad idea but actually enables us to respect our relocation API which has no
-    //       consistency with ASM one which can lead to multiple issues for short relocation patterns
-    //       plus overcome ClassRemapper limitations we can care about (see its javadoc for details).
-    //
-    // NOTE: very short term we can just reuse the same LazyInitRemapper and let the constructor set it.
-    //       since multithreading is not faster in this processing it would be more than sufficient if
-    //       caring of this 2 objects per class allocation (but keep in mind the visitor will allocate way more ;)).
-    //       Last point which makes it done this way as of now is that perf seems not impacted at all.
+    /**
+     * Remaps a class and records whether anything was relocated. Instances are reused for several classes, one class at
+     * a time, see {@link DefaultPackageMapper#acquireClassRemapper(ClassVisitor, String)}.
+     */
     private static class ShadeClassRemapper extends ClassRemapper implements PackageMapper {
-        private final String pkg;
         private final PackageMapper packageMapper;
+        private String pkg;
         private boolean remapped;
 
-        ShadeClassRemapper(
-                final ClassVisitor classVisitor, final String pkg, final DefaultPackageMapper packageMapper) {
-            super(classVisitor, new LazyInitRemapper() /* can't be init in the constructor with "this" */);
-            this.pkg = pkg;
+        ShadeClassRemapper(final DefaultPackageMapper packageMapper) {
+            super(null, new LazyInitRemapper() /* can't be init in the constructor with "this" */);
             this.packageMapper = packageMapper;
 
             // use this to enrich relocators impl with "remapped" logic
             LazyInitRemapper.class.cast(remapper).relocators = this;
         }
 
+        void reset(final ClassVisitor classVisitor, final String pkg) {
+            this.cv = classVisitor;
+            this.pkg = pkg;
+            this.className = null;
+            this.remapped = false;
+        }
+
         @Override
         public void visitSource(final String source, final String debug) {
             if (source == null) {
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Lists the files of a directory to shade, with the attributes read while walking the directory, so that each file is
+ * looked at only once before it is read. Files are listed by entry name, whatever the order of the file system.
+ */
+final class DirectoryWalker {
+
+    private DirectoryWalker() {}
+
+    /**
+     * @param root the directory
+     * @return the files in the directory and its subdirectories, sorted by entry name
+     * @throws IOException if a directory cannot be read
+     */
+    static List<DirectoryFile> walk(Path root) throws IOException {
+        List<DirectoryFile> files = new ArrayList<>();
+        // symbolic links are followed, like with File.listFiles() and File.isDirectory()
+        Files.walkFileTree(
+                root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (!attrs.isDirectory()) {
+                            files.add(new DirectoryFile(entryName(root, file), file, attrs));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        files.sort(Comparator.comparing(file -> file.name));
+        return files;
+    }
+
+    private static String entryName(Path root, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path element : root.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(element);
+        }
+        return name.toString();
+    }
+
+    /**
+     * A file of a directory to shade.
+     */
+    static final class DirectoryFile {
+
+        /** The name of the entry, relative to the directory and with slashes. */
+        final String name;
+
+        final Path path;
+
+        final long size;
+
+        final long time;
+
+        DirectoryFile(String name, Path path, BasicFileAttributes attrs) {
+            this.name = name;
+            this.path = path;
+            this.size = attrs.size();
+            this.time = attrs.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which inputs of the uber JAR define each entry name, to report the entries defined by several inputs.
+ * <p>
+ * Inputs are numbered in the order they are first seen and each name maps to the set of the numbers of its inputs.
+ * These sets are interned: all the names defined by the same inputs share the same set, so most names, defined by a
+ * single input, cost no allocation besides their encoding in an {@link EntryNameIndex}. Names are grouped by their
+ * interned set.
+ */
+final class DuplicateIndex {
+
+    private final List<File> inputs = new ArrayList<>();
+
+    private final Map<File, Integer> inputIds = new HashMap<>();
+
+    private final Map<InputSet, InputSet> interned = new HashMap<>();
+
+    private final EntryNameIndex names = new EntryNameIndex();
+
+    /** Inputs defining each name, by number of name. */
+    private InputSet[] nameInputs = new InputSet[1024];
+
+    /**
+     * Records that an input defines an entry.
+     *
+     * @param name the name of the entry in the input
+     * @param input the JAR or directory
+     */
+    void add(String name, File input) {
+        int id = inputIds.computeIfAbsent(input, k -> {
+            inputs.add(k);
+            return inputs.size() - 1;
+        });
+        int index = names.intern(name, name.length());
+        if (index == nameInputs.length) {
+            nameInputs = Arrays.copyOf(nameInputs, index * 2);
+        }
+        InputSet current = nameInputs[index];
+        nameInputs[index] = intern(current == null ? new InputSet(new int[] {id}) : current.with(id));
+    }
+
+    /**
+     * Forgets that an input defines an entry, for entries which are merged rather than overlapping.
+     *
+     * @param name the name of the entry in the input
+     * @param input the JAR or directory
+     */
+    void remove(String name, File input) {
+        Integer id = inputIds.get(input);
+        int index = names.indexOf(name, name.length());
+        if (id != null && index >= 0) {
+            nameInputs[index] = intern(nameInputs[index].without(id));
+        }
+    }
+
+    /**
+     * @return the names defined by several inputs, grouped by the inputs defining them
+     */
+    Map<Set<File>, List<String>> getOverlaps() {
+        Map<InputSet, List<String>> groups = new IdentityHashMap<>();
+        for (int index = 0; index < names.size(); index++) {
+            if (nameInputs[index].ids.length > 1) {
+                groups.computeIfAbsent(nameInputs[index], k -> new ArrayList<>()).add(names.get(index));
+            }
+        }
+        Map<Set<File>, List<String>> overlaps = new HashMap<>();
+        for (Map.Entry<InputSet, List<String>> group : groups.entrySet()) {
+            Set<File> files = new LinkedHashSet<>();
+            for (int id : group.getKey().ids) {
+                files.add(inputs.get(id));
+            }
+            overlaps.put(files, group.getValue());
+        }
+        return overlaps;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the names
+     */
+    long getFootprint() {
+        return names.getFootprint() + 4L * nameInputs.length;
+    }
+
+    /**
+     * @return the number of names
+     */
+    int size() {
+        return names.size();
+    }
+
+    private InputSet intern(InputSet set) {
+        InputSet existing = interned.putIfAbsent(set, set);
+        return existing != null ? existing : set;
+    }
+
+    /**
+     * An immutable set of input numbers, kept as a sorted array.
+     */
+    private static final class InputSet {
+
+        private final int[] ids;
+
+        private final int hash;
+
+        InputSet(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        InputSet with(int id) {
+            int pos = Arrays.binarySearch(ids, id);
+            if (pos >= 0) {
+                return this;
+            }
+            pos = -pos - 1;
+            int[] result = new int[ids.length + 1];
+            System.arraycopy(ids, 0, result, 0, pos);
+            result[pos] = id;
+            System.arraycopy(ids, pos, result, pos + 1, ids.length - pos);
+            return new InputSet(result);
+        }
+
+        InputSet without(int id) {
+            int pos = Arrays.binarySearch(ids, id);
+            if (pos < 0) {
+                return this;
+            }
+            int[] result = new int[ids.length - 1];
+            System.arraycopy(ids, 0, result, 0, pos);
+            System.arraycopy(ids, pos + 1, result, pos, ids.length - pos - 1);
+            return new InputSet(result);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InputSet && Arrays.equals(ids, ((InputSet) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Buffers, inflaters and deflaters shared by the entries of a single shading, so that reading, copying and compressing
+ * an entry does not allocate them again. They are pooled rather than kept per thread, so that they are reused by
+ * virtual threads as well. Closing the pool ends the native resources of its inflaters and deflaters, including those
+ * handed back afterwards.
+ */
+final class EntryBuffers implements Closeable {
+
+    /** Size of the pooled buffers. */
+    static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final int POOL_SIZE = 64;
+
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private volatile boolean closed;
+
+    /**
+     * Reads a stream to its end.
+     *
+     * @param in the stream to read
+     * @param size the number of bytes expected in the stream, or {@code -1} if unknown
+     * @return the bytes of the stream, read into an array of the expected size when the size is right
+     * @throws IOException if the stream cannot be read
+     */
+    byte[] readFully(InputStream in, long size) throws IOException {
+        if (size >= 0 && size < Integer.MAX_VALUE - 8) {
+            byte[] bytes = new byte[(int) size];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+            if (length < bytes.length) {
+                return Arrays.copyOf(bytes, length);
+            }
+            int next = in.read();
+            if (next == -1) {
+                return bytes;
+            }
+            // more bytes than expected
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2 + 1);
+            out.write(bytes);
+            out.write(next);
+            copy(in, out);
+            return out.toByteArray();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        copy(in, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Inflates the raw data of a deflated entry.
+     *
+     * @param raw the compressed data of the entry
+     * @param compressedSize the size of the compressed data
+     * @param size the size of the uncompressed data
+     * @return the uncompressed data
+     * @throws IOException if the data cannot be read or is not deflated data of the given size
+     */
+    byte[] inflate(InputStream raw, long compressedSize, long size) throws IOException {
+        byte[] content = new byte[(int) size];
+        byte[] buffer = acquireBuffer();
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            long remaining = compressedSize;
+            boolean dummyByte = false;
+            int length = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (remaining > 0) {
+                        int read = raw.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read == -1) {
+                            throw new EOFException("Unexpected end of deflated data");
+                        }
+                        remaining -= read;
+                        inflater.setInput(buffer, 0, read);
+                    } else if (!dummyByte) {
+                        // zlib may need a byte past the end of the data without header, like in java.util.zip.ZipFile
+                        buffer[0] = 0;
+                        inflater.setInput(buffer, 0, 1);
+                        dummyByte = true;
+                    } else {
+                        throw new EOFException("Unexpected end of deflated data");
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Deflated data needing a dictionary");
+                }
+                if (length < content.length) {
+                    length += inflater.inflate(content, length, content.length - length);
+                } else if (inflater.inflate(new byte[1]) > 0) {
+                    throw new ZipException("Deflated data larger than " + size + " bytes");
+                }
+            }
+            if (length != content.length) {
+                throw new ZipException("Deflated data of " + length + " bytes instead of " + size);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid deflated data: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            if (closed || !inflaters.offer(inflater)) {
+                inflater.end();
+            } else if (closed) {
+                // closed meanwhile
+                endAll();
+            }
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Copies a stream to its end.
+     *
+     * @param in the stream to read
+     * @param out the stream to write to
+     * @throws IOException if a stream fails
+     */
+    void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = acquireBuffer();
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * @return a buffer of {@link #BUFFER_SIZE} bytes, to be handed back with {@link #releaseBuffer(byte[])}
+     */
+    byte[] acquireBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    void releaseBuffer(byte[] buffer) {
+        if (!closed) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * @return a deflater with the default compression level and no zlib header, to be handed back with
+     *     {@link #releaseDeflater(Deflater)}
+     */
+    Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (closed || !deflaters.offer(deflater)) {
+            deflater.end();
+        } else if (closed) {
+            // closed meanwhile
+            endAll();
+        }
+    }
+
+    /**
+     * Ends the pooled inflaters and deflaters. Those still in use are ended when they are handed back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        endAll();
+        buffers.clear();
+    }
+
+    private void endAll() {
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.util.Arrays;
+
+/**
+ * A set of entry names, numbered in the order they are added, which keeps names compact instead of as a
+ * {@link String} and a hash map node each.
+ * <p>
+ * A name is split at its last slash: the directory is kept once for all the names it contains and each name only keeps
+ * the number of its directory and its file name. Both are encoded like in modified UTF-8, one byte per ASCII character,
+ * in pages of bytes, and looked up with open addressing hash tables of their numbers.
+ * <p>
+ * Lookups accept the prefix of a name, so that the parent directories of an entry are looked up without creating their
+ * names. This class is not thread-safe.
+ */
+final class EntryNameIndex {
+
+    /** Number of the directory of the names without a slash. */
+    private static final int NO_DIRECTORY = -1;
+
+    private final Table directories = new Table();
+
+    private final Table names = new Table();
+
+    /** Encoding of the name being looked up. */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * @param name the name to add
+     * @return {@code true} if the name was not in this set
+     */
+    boolean add(CharSequence name) {
+        int size = names.size;
+        return intern(name, name.length()) == size;
+    }
+
+    /**
+     * @param name the name to add
+     * @param end the length of the prefix of the name to add
+     * @return the number of the name in this set, the size of this set before the call if the name was added
+     */
+    int intern(CharSequence name, int end) {
+        int length = encode(name, end);
+        int slash = lastSlash(length);
+        int directory = NO_DIRECTORY;
+        if (slash >= 0) {
+            directory = directories.intern(NO_DIRECTORY, scratch, 0, slash);
+        }
+        return names.intern(directory, scratch, slash + 1, length);
+    }
+
+    /**
+     * @param name the name to look up
+     * @return {@code true} if the name is in this set
+     */
+    boolean contains(CharSequence name) {
+        return indexOf(name, name.length()) >= 0;
+    }
+
+    /**
+     * @param name the name to look up
+     * @param end the length of the prefix of the name to look up
+     * @return the number of the name in this set, or -1 if it is not in this set
+     */
+    int indexOf(CharSequence name, int end) {
+        int length = encode(name, end);
+        int slash = lastSlash(length);
+        int directory = NO_DIRECTORY;
+        if (slash >= 0) {
+            directory = directories.indexOf(NO_DIRECTORY, scratch, 0, slash);
+            if (directory < 0) {
+                return -1;
+            }
+        }
+        return names.indexOf(directory, scratch, slash + 1, length);
+    }
+
+    /**
+     * @param index the number of a name of this set
+     * @return the name
+     */
+    String get(int index) {
+        StringBuilder name = new StringBuilder();
+        int directory = names.parents[index];
+        if (directory != NO_DIRECTORY) {
+            directories.decode(directory, name);
+            name.append('/');
+        }
+        names.decode(index, name);
+        return name.toString();
+    }
+
+    /**
+     * @return the number of names in this set
+     */
+    int size() {
+        return names.size;
+    }
+
+    /**
+     * @return the approximate number of bytes used by this set
+     */
+    long getFootprint() {
+        return directories.getFootprint() + names.getFootprint() + scratch.length;
+    }
+
+    /**
+     * Encodes a name into the scratch buffer.
+     *
+     * @return the length of the encoded name
+     */
+    private int encode(CharSequence name, int end) {
+        if (scratch.length < end * 3) {
+            scratch = new byte[Math.max(scratch.length * 2, end * 3)];
+        }
+        int length = 0;
+        for (int i = 0; i < end; i++) {
+            char c = name.charAt(i);
+            // NUL is encoded on two bytes, like in modified UTF-8
+            if (c > 0 && c < 0x80) {
+                scratch[length++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[length++] = (byte) (0xC0 | c >> 6);
+                scratch[length++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                scratch[length++] = (byte) (0xE0 | c >> 12);
+                scratch[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                scratch[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return length;
+    }
+
+    private int lastSlash(int length) {
+        // '/' is never part of the encoding of another character
+        for (int i = length - 1; i >= 0; i--) {
+            if (scratch[i] == '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Byte strings, each with the number of a parent, kept one after the other in pages of bytes.
+     */
+    private static final class Table {
+
+        private static final int PAGE_BITS = 16;
+
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private byte[][] pages = new byte[1][PAGE_SIZE];
+
+        /** Start of each string in the pages, a string ends at the start of the next one. */
+        private int[] starts = new int[INITIAL_CAPACITY + 1];
+
+        private int[] parents = new int[INITIAL_CAPACITY];
+
+        private int[] hashes = new int[INITIAL_CAPACITY];
+
+        private int size;
+
+        /** Number of each string plus one, at the slot of its hash, or 0 for an empty slot. */
+        private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+        int indexOf(int parent, byte[] key, int from, int to) {
+            return slots[find(parent, hash(parent, key, from, to), key, from, to)] - 1;
+        }
+
+        int intern(int parent, byte[] key, int from, int to) {
+            int hash = hash(parent, key, from, to);
+            int slot = find(parent, hash, key, from, to);
+            if (slots[slot] != 0) {
+                return slots[slot] - 1;
+            }
+
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            int end = starts[size];
+            for (int i = from; i < to; i++, end++) {
+                if (end >>> PAGE_BITS == pages.length) {
+                    pages = Arrays.copyOf(pages, pages.length * 2);
+                }
+                if (pages[end >>> PAGE_BITS] == null) {
+                    pages[end >>> PAGE_BITS] = new byte[PAGE_SIZE];
+                }
+                pages[end >>> PAGE_BITS][end & PAGE_SIZE - 1] = key[i];
+            }
+            parents[size] = parent;
+            hashes[size] = hash;
+            starts[size + 1] = end;
+            slots[slot] = ++size;
+
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        void decode(int index, StringBuilder name) {
+            for (int i = starts[index]; i < starts[index + 1]; ) {
+                int b = byteAt(i++);
+                if (b < 0x80) {
+                    name.append((char) b);
+                } else if (b < 0xE0) {
+                    name.append((char) ((b & 0x1F) << 6 | byteAt(i++) & 0x3F));
+                } else {
+                    name.append((char) ((b & 0x0F) << 12 | (byteAt(i++) & 0x3F) << 6 | byteAt(i++) & 0x3F));
+                }
+            }
+        }
+
+        long getFootprint() {
+            long footprint = 4L * (starts.length + parents.length + hashes.length + slots.length) + 8L * pages.length;
+            for (byte[] page : pages) {
+                if (page != null) {
+                    footprint += page.length;
+                }
+            }
+            return footprint;
+        }
+
+        private int byteAt(int position) {
+            return pages[position >>> PAGE_BITS][position & PAGE_SIZE - 1] & 0xFF;
+        }
+
+        /**
+         * @return the slot of the string, or the empty slot where it belongs
+         */
+        private int find(int parent, int hash, byte[] key, int from, int to) {
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = slot + 1 & mask) {
+                int index = slots[slot] - 1;
+                if (index < 0
+                        || hashes[index] == hash && parents[index] == parent && equalsKey(index, key, from, to)) {
+                    return slot;
+                }
+            }
+        }
+
+        private boolean equalsKey(int index, byte[] key, int from, int to) {
+            int start = starts[index];
+            if (starts[index + 1] - start != to - from) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (byteAt(start++) != (key[i] & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int index = 0; index < size; index++) {
+                int slot = mix(hashes[index]) & mask;
+                while (slots[slot] != 0) {
+                    slot = slot + 1 & mask;
+                }
+                slots[slot] = index + 1;
+            }
+        }
+
+        private static int hash(int parent, byte[] key, int from, int to) {
+            int hash = parent;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + key[i];
+            }
+            return hash;
+        }
+
+        private static int mix(int hash) {
+            // CHECKSTYLE_OFF: MagicNumber
+            hash *= 0x9E3779B9;
+            return hash ^ hash >>> 16;
+            // CHECKSTYLE_ON: MagicNumber
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugins.shade.resource.ResourceSelector;
+import org.apache.maven.plugins.shade.resource.ResourceTransformer;
+
+/**
+ * Finds the first of a list of resource transformers transforming a resource, like asking each transformer in turn with
+ * {@link ResourceTransformer#canTransformResource(String)} would, but only asking the transformers whose
+ * {@link ResourceTransformer#getTransformedResources()} select the resource.
+ * <p>
+ * The selected names and prefixes are kept in a trie, and the selected suffixes in a trie of their reversed characters,
+ * both ignoring case. Each node has the set of the transformers selecting the names ending, or starting, there. The
+ * transformers not declaring their resources are always asked. This class is not thread-safe.
+ */
+final class ResourceTransformerIndex {
+
+    private final List<ResourceTransformer> transformers;
+
+    /** Transformers asked about every resource. */
+    private final long[] always;
+
+    private final Node prefixes = new Node();
+
+    private final Node suffixes = new Node();
+
+    /** Transformers to ask about the resource being looked up. */
+    private final long[] candidates;
+
+    ResourceTransformerIndex(List<ResourceTransformer> transformers) {
+        this.transformers = new ArrayList<>(transformers);
+        int words = (transformers.size() + 63) / 64;
+        this.always = new long[words];
+        this.candidates = new long[words];
+        for (int i = 0; i < this.transformers.size(); i++) {
+            ResourceSelector selector = getTransformedResources(this.transformers.get(i));
+            if (selector == null) {
+                always[i >>> 6] |= 1L << i;
+                continue;
+            }
+            for (String name : selector.getNames()) {
+                Node node = prefixes.add(name, false);
+                node.names = set(node.names, i, words);
+            }
+            for (String prefix : selector.getPrefixes()) {
+                Node node = prefixes.add(prefix, false);
+                node.prefixes = set(node.prefixes, i, words);
+            }
+            for (String suffix : selector.getSuffixes()) {
+                Node node = suffixes.add(suffix, true);
+                node.prefixes = set(node.prefixes, i, words);
+            }
+        }
+    }
+
+    /**
+     * Returns the resources a transformer declares, unless {@link ResourceTransformer#canTransformResource(String)} is
+     * overridden deeper than {@link ResourceTransformer#getTransformedResources()}. A subclass overriding the former
+     * only may transform other resources than the ones its parent class declares.
+     *
+     * @param transformer a resource transformer
+     * @return the resources the transformer may transform, or {@code null} if it is asked about every resource
+     */
+    static ResourceSelector getTransformedResources(ResourceTransformer transformer) {
+        try {
+            Class<?> type = transformer.getClass();
+            Class<?> predicate = type.getMethod("canTransformResource", String.class).getDeclaringClass();
+            Class<?> selector = type.getMethod("getTransformedResources").getDeclaringClass();
+            // the selector is declared at least as deep as the predicate
+            if (!predicate.isAssignableFrom(selector)) {
+                return null;
+            }
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return transformer.getTransformedResources();
+    }
+
+    /**
+     * @param name the name of a resource
+     * @return the first transformer transforming the resource, or {@code null} if none does
+     */
+    ResourceTransformer find(String name) {
+        System.arraycopy(always, 0, candidates, 0, always.length);
+
+        Node node = prefixes;
+        for (int i = 0; node != null; i++) {
+            or(node.prefixes);
+            if (i == name.length()) {
+                or(node.names);
+                break;
+            }
+            node = node.child(fold(name.charAt(i)));
+        }
+
+        node = suffixes;
+        for (int i = name.length(); node != null; i--) {
+            or(node.prefixes);
+            if (i == 0) {
+                break;
+            }
+            node = node.child(fold(name.charAt(i - 1)));
+        }
+
+        for (int word = 0; word < candidates.length; word++) {
+            for (long bits = candidates[word]; bits != 0; bits &= bits - 1) {
+                ResourceTransformer transformer = transformers.get(word * 64 + Long.numberOfTrailingZeros(bits));
+                if (transformer.canTransformResource(name)) {
+                    return transformer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void or(long[] set) {
+        if (set != null) {
+            for (int i = 0; i < set.length; i++) {
+                candidates[i] |= set[i];
+            }
+        }
+    }
+
+    private static long[] set(long[] set, int index, int words) {
+        if (set == null) {
+            set = new long[words];
+        }
+        set[index >>> 6] |= 1L << index;
+        return set;
+    }
+
+    /**
+     * Folds the case of a character, so that characters equal ignoring case, as in
+     * {@link String#equalsIgnoreCase(String)}, are folded to the same character.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static final class Node {
+
+        /** Sorted folded characters leading to the children. */
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /** Transformers selecting the names ending at this node, or {@code null}. */
+        private long[] names;
+
+        /** Transformers selecting the names starting, or ending for suffixes, with this node, or {@code null}. */
+        private long[] prefixes;
+
+        Node add(String string, boolean reversed) {
+            Node node = this;
+            for (int i = 0; i < string.length(); i++) {
+                char c = fold(string.charAt(reversed ? string.length() - 1 - i : i));
+                int pos = Arrays.binarySearch(node.keys, c);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                    char[] keys = new char[node.keys.length + 1];
+                    Node[] children = new Node[node.children.length + 1];
+                    System.arraycopy(node.keys, 0, keys, 0, pos);
+                    System.arraycopy(node.children, 0, children, 0, pos);
+                    keys[pos] = c;
+                    children[pos] = new Node();
+                    System.arraycopy(node.keys, pos, keys, pos + 1, node.keys.length - pos);
+                    System.arraycopy(node.children, pos, children, pos + 1, node.children.length - pos);
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = node.children[pos];
+            }
+            return node;
+        }
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+    }
+}
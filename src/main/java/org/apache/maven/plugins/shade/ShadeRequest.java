@@ -44,6 +44,14 @@ public class ShadeRequest {
 
     private boolean shadeSourcesContent;
 
+    private int threads = 1;
+
+    private boolean rawCopy;
+
+    private boolean virtualThreads;
+
+    private boolean constantPoolRelocation;
+
     public Set<File> getJars() {
         return jars;
     }
@@ -123,4 +131,64 @@ public class ShadeRequest {
     public void setShadeSourcesContent(boolean shadeSourcesContent) {
         this.shadeSourcesContent = shadeSourcesContent;
     }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * The number of threads reading and relocating classes. The uber JAR is always written by a single thread, in the
+     * same order as with one thread. A value lower than {@code 1} uses one thread per available processor.
+     *
+     * @param threads The number of threads.
+     * @since 3.7.0
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * When true and the JVM supports virtual threads, entries are read and relocated on virtual threads, up to
+     * sixteen entries per configured thread at once. Otherwise, the platform worker threads are used.
+     *
+     * @param virtualThreads {@code true} or {@code false}.
+     * @since 3.7.0
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isRawCopy() {
+        return rawCopy;
+    }
+
+    /**
+     * When true, entries which are neither relocated nor transformed are copied to the uber JAR with their compressed
+     * data as is, instead of being decompressed and compressed again. Their compression method is kept.
+     *
+     * @param rawCopy {@code true} or {@code false}.
+     * @since 3.7.0
+     */
+    public void setRawCopy(boolean rawCopy) {
+        this.rawCopy = rawCopy;
+    }
+
+    public boolean isConstantPoolRelocation() {
+        return constantPoolRelocation;
+    }
+
+    /**
+     * When true, classes are relocated by rewriting the names in their constant pool and copying the rest of the class
+     * file as is. Classes which cannot be relocated this way are relocated with ASM.
+     *
+     * @param constantPoolRelocation {@code true} or {@code false}.
+     * @since 3.7.0
+     */
+    public void setConstantPoolRelocation(boolean constantPoolRelocation) {
+        this.constantPoolRelocation = constantPoolRelocation;
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * A {@link JarOutputStream} writing through a {@link ZipArchiveOutputStream}. It behaves like a regular
+ * {@link JarOutputStream} for the shader and the resource transformers, and additionally allows to copy the compressed
+ * data of an entry as is with {@link #putRawEntry(ZipArchiveEntry, InputStream)}.
+ */
+class ShadedJarOutputStream extends JarOutputStream {
+
+    private static final OutputStream NO_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+            throw new IllegalStateException("all output goes to the ZipArchiveOutputStream");
+        }
+    };
+
+    private final ZipArchiveOutputStream zip;
+
+    private final Set<String> names = new HashSet<>();
+
+    private boolean entryOpen;
+
+    private boolean closed;
+
+    ShadedJarOutputStream(OutputStream out) throws IOException {
+        super(NO_OUTPUT);
+        this.zip = new ZipArchiveOutputStream(out);
+        this.zip.setUseZip64(Zip64Mode.AsNeeded);
+    }
+
+    @Override
+    public void putNextEntry(ZipEntry ze) throws IOException {
+        closeEntry();
+        addName(ze.getName());
+
+        ZipArchiveEntry entry = new ZipArchiveEntry(ze.getName());
+        // like ZipOutputStream, use the current time when none was set
+        entry.setTime(ze.getTime() == -1 ? System.currentTimeMillis() : ze.getTime());
+        if (ze.getMethod() != -1) {
+            entry.setMethod(ze.getMethod());
+        }
+        if (ze.getSize() != -1) {
+            entry.setSize(ze.getSize());
+        }
+        if (ze.getMethod() == ZipEntry.STORED) {
+            entry.setCompressedSize(ze.getCompressedSize() != -1 ? ze.getCompressedSize() : ze.getSize());
+            entry.setCrc(ze.getCrc());
+        }
+        if (ze.getComment() != null) {
+            entry.setComment(ze.getComment());
+        }
+
+        zip.putArchiveEntry(entry);
+        entryOpen = true;
+    }
+
+    /**
+     * Adds an entry whose data is already compressed. The method, CRC, size and compressed size of the entry must
+     * describe the given data.
+     *
+     * @param entry the entry to add
+     * @param rawData the compressed data of the entry
+     * @throws ZipException if an entry with the same name was already added
+     * @throws IOException in case of an error
+     */
+    void putRawEntry(ZipArchiveEntry entry, InputStream rawData) throws IOException {
+        closeEntry();
+        addName(entry.getName());
+        zip.addRawArchiveEntry(entry, rawData);
+    }
+
+    private void addName(String name) throws ZipException {
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        if (entryOpen) {
+            entryOpen = false;
+            zip.closeArchiveEntry();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        zip.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        zip.write(b, off, len);
+    }
+
+    @Override
+    public void setComment(String comment) {
+        zip.setComment(comment);
+    }
+
+    @Override
+    public void setMethod(int method) {
+        zip.setMethod(method);
+    }
+
+    @Override
+    public void setLevel(int level) {
+        zip.setLevel(level);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        zip.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        closeEntry();
+        zip.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                closeEntry();
+                zip.close();
+            } finally {
+                // the deflater of the JarOutputStream itself is never used
+                def.end();
+            }
+        }
+    }
+}
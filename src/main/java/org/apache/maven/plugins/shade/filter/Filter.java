@@ -19,6 +19,8 @@
 package org.apache.maven.plugins.shade.filter;
 
 import java.io.File;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * @author David Blevins
@@ -36,8 +38,53 @@ public interface Filter {
      */
     boolean isFiltered(String classFile);
 
+    /**
+     * Tells whether the filter keeps all the entries of a JAR, filters them all or decides entry by entry, before the
+     * JAR is read, so that a JAR whose entries are all filtered is not read at all. The default implementation
+     * decides entry by entry.
+     *
+     * @param jar a JAR or directory the filter {@link #canFilter(File) can filter}
+     * @return the verdict of the filter about all the entries of the JAR
+     * @since 3.7.0
+     */
+    default Verdict getVerdict(File jar) {
+        return Verdict.MIXED;
+    }
+
+    /**
+     * Same as asking {@link #isFiltered(String)} about each entry of a JAR in turn, for all the entries at once. The
+     * default implementation asks {@link #isFiltered(String)}.
+     *
+     * @param classFiles the names of the entries of a JAR
+     * @return the indexes of the names of the entries kept, that is not filtered
+     * @since 3.7.0
+     */
+    default BitSet getKeptEntries(List<String> classFiles) {
+        BitSet kept = new BitSet(classFiles.size());
+        for (int i = 0; i < classFiles.size(); i++) {
+            if (!isFiltered(classFiles.get(i))) {
+                kept.set(i);
+            }
+        }
+        return kept;
+    }
+
     /**
      * If we are finished.
      */
     void finished();
+
+    /**
+     * The verdict of a filter about all the entries of a JAR.
+     *
+     * @since 3.7.0
+     */
+    enum Verdict {
+        /** No entry is filtered. */
+        KEEP_ALL,
+        /** Every entry is filtered. */
+        DROP_ALL,
+        /** Entries are filtered or not depending on their names. */
+        MIXED
+    }
 }
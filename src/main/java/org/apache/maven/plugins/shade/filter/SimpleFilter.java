@@ -24,7 +24,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.maven.plugins.shade.mojo.ArchiveFilter;
-import org.codehaus.plexus.util.SelectorUtils;
+import org.apache.maven.plugins.shade.relocation.PathPatternMatcher;
 
 /**
  * @author David Blevins
@@ -41,6 +41,12 @@ public class SimpleFilter implements Filter {
 
     private Set<String> excludes;
 
+    /** Compiled {@link #includes}, {@code null} if there is none. */
+    private final PathPatternMatcher includeMatcher;
+
+    /** Compiled {@link #excludes}, {@code null} if there is none. */
+    private final PathPatternMatcher excludeMatcher;
+
     private boolean excludeDefaults = true;
 
     /**
@@ -76,6 +82,8 @@ public class SimpleFilter implements Filter {
         this.jars = (jars != null) ? Collections.<File>unmodifiableSet(jars) : Collections.<File>emptySet();
         this.includes = normalizePatterns(includes);
         this.excludes = normalizePatterns(excludes);
+        this.includeMatcher = PathPatternMatcher.compile(this.includes);
+        this.excludeMatcher = PathPatternMatcher.compile(this.excludes);
         this.excludeDefaults = excludeDefaults;
     }
 
@@ -93,6 +101,30 @@ public class SimpleFilter implements Filter {
         return !((!excludeDefaults || isIncluded(path)) && !isExcluded(path));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entries are all kept when there is no exclude and includes are not used or match every name, and all filtered
+     * when an exclude matches every name, like {@code **}. The names of the entries of a directory never start with a
+     * separator, but the names of the entries of a JAR may, and are only matched by patterns starting with one.
+     */
+    @Override
+    public Verdict getVerdict(File jar) {
+        boolean relative = jar.isDirectory();
+        if (matchesAll(excludeMatcher, relative)) {
+            return Verdict.DROP_ALL;
+        }
+        boolean allIncluded = !excludeDefaults || includes.isEmpty() || matchesAll(includeMatcher, relative);
+        return excludes.isEmpty() && allIncluded ? Verdict.KEEP_ALL : Verdict.MIXED;
+    }
+
+    /**
+     * @return whether the patterns match every name, starting with a separator or not unless the names are relative
+     */
+    private static boolean matchesAll(PathPatternMatcher matcher, boolean relative) {
+        return matcher != null && matcher.matchesAllRelative() && (relative || matcher.matchesAllAbsolute());
+    }
+
     /**
      * @param classFile The class file.
      * @return true if included false otherwise.
@@ -108,30 +140,11 @@ public class SimpleFilter implements Filter {
     }
 
     private boolean isIncluded(String classFile) {
-        if (includes == null || includes.isEmpty()) {
-            return true;
-        }
-
-        return matchPaths(includes, classFile);
+        return includeMatcher == null || includeMatcher.matches(classFile);
     }
 
     private boolean isExcluded(String classFile) {
-        if (excludes == null || excludes.isEmpty()) {
-            return false;
-        }
-
-        return matchPaths(excludes, classFile);
-    }
-
-    private boolean matchPaths(Set<String> patterns, String classFile) {
-        for (String pattern : patterns) {
-
-            if (SelectorUtils.matchPath(pattern, classFile)) {
-                return true;
-            }
-        }
-
-        return false;
+        return excludeMatcher != null && excludeMatcher.matches(classFile);
     }
 
     private String normalizePath(String path) {
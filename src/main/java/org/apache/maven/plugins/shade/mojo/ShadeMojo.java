@@ -62,6 +62,7 @@ import org.apache.maven.plugins.shade.relocation.SerializedLambdaRelocator;
 import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
 import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
+import org.apache.maven.plugins.shade.resource.SpillingResourceTransformer;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
@@ -440,6 +441,52 @@ public class ShadeMojo extends AbstractMojo {
     @Parameter
     private List<String> extraArtifacts;
 
+    /**
+     * The number of threads used to read and relocate the classes of the shaded artifacts. Entries are still written
+     * to the shaded JAR by a single thread and in the same order, so the result does not depend on this value. A value
+     * lower than {@code 1} uses one thread per available processor.
+     * <p>
+     * Note: when using more than one thread, custom {@link Relocator} implementations must be thread-safe.
+     *
+     * @since 3.7.0
+     */
+    @Parameter(defaultValue = "1")
+    private int threads;
+
+    /**
+     * When true and Maven runs on a JVM supporting virtual threads (Java 21 or later), the entries of the shaded
+     * artifacts are read and relocated on virtual threads, with up to sixteen entries per configured thread in flight.
+     * This mostly helps when reading the entries waits on the disk, e.g. for directories with many small class files.
+     * On older JVMs, the regular worker threads are used.
+     *
+     * @since 3.7.0
+     */
+    @Parameter(defaultValue = "false")
+    private boolean virtualThreads;
+
+    /**
+     * When true, entries of the shaded artifacts which are neither relocated nor transformed are copied to the shaded
+     * JAR with their compressed data as is, instead of being decompressed and compressed again. This saves most of
+     * the time spent compressing the shaded JAR, but keeps the compression method and level of the original entries.
+     * The shaded JAR is then written with commons-compress instead of the JDK, which may add Zip64 extra fields.
+     *
+     * @since 3.7.0
+     */
+    @Parameter(defaultValue = "false")
+    private boolean rawCopy;
+
+    /**
+     * How classes are relocated. With {@code asm}, every class is read and written again by ASM. With
+     * {@code constant-pool}, only the names in the constant pool of a class are rewritten and the rest of the class
+     * file is copied as is, which is much faster. Classes this cannot be done for, e.g. module descriptors or classes
+     * with unknown attributes, are still relocated with ASM. Constant pool entries no part of the class refers to,
+     * which ASM drops, are kept and relocated as class names.
+     *
+     * @since 3.7.0
+     */
+    @Parameter(defaultValue = "asm")
+    private String relocationEngine;
+
     @Inject
     private MavenProjectHelper projectHelper;
 
@@ -474,6 +521,11 @@ public class ShadeMojo extends AbstractMojo {
 
         setupHintedShader();
 
+        if (!"asm".equals(relocationEngine) && !"constant-pool".equals(relocationEngine)) {
+            throw new MojoExecutionException(
+                    "Unknown relocationEngine '" + relocationEngine + "', use 'asm' or 'constant-pool'.");
+        }
+
         Set<File> artifacts = new LinkedHashSet<>();
         Set<String> artifactIds = new LinkedHashSet<>();
         Set<File> sourceArtifacts = new LinkedHashSet<>();
@@ -706,6 +758,10 @@ public class ShadeMojo extends AbstractMojo {
         shadeRequest.setFilters(filters);
         shadeRequest.setRelocators(relocators);
         shadeRequest.setResourceTransformers(toResourceTransformers(shade, resourceTransformers));
+        shadeRequest.setThreads(threads);
+        shadeRequest.setVirtualThreads(virtualThreads);
+        shadeRequest.setRawCopy(rawCopy);
+        shadeRequest.setConstantPoolRelocation("constant-pool".equals(relocationEngine));
         return shadeRequest;
     }
 
@@ -957,6 +1013,11 @@ public class ShadeMojo extends AbstractMojo {
                 throw new MojoExecutionException(
                         "Failed to create shaded artifact: parameter transformers contains null (double-check XML attribute)");
             }
+            // merged content larger than the memory threshold is kept under the build directory
+            if (transformer instanceof SpillingResourceTransformer
+                    && ((SpillingResourceTransformer) transformer).getSpillDirectory() == null) {
+                ((SpillingResourceTransformer) transformer).setSpillDirectory(outputDirectory);
+            }
         }
         return Arrays.asList(transformers);
     }
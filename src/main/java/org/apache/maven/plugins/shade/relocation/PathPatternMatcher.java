@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Matches paths with a set of Ant patterns, like asking {@code SelectorUtils.matchPath(pattern, path, true)} about
+ * each pattern in turn would, but walking the segments of the path once whatever the number of patterns.
+ * <p>
+ * Like with {@code SelectorUtils}, slashes and backslashes both separate segments, empty segments are ignored, and a
+ * pattern only matches the paths starting with a separator if it starts with one itself. The patterns are compiled
+ * into a trie of their segments: the children of a node are found by their literal segment in a hash table, by their
+ * segment with {@code *} and {@code ?} wildcards, or through {@code **}, which leads to a node matching any number of
+ * segments before its own children. Walking a path keeps the set of the nodes matching the segments walked so far, so
+ * that matching takes time linear in the length of the path for the usual patterns, whatever their number.
+ * {@code %regex[]} patterns are matched with their regular expression.
+ * <p>
+ * Matchers are immutable once compiled, and may match paths from several threads.
+ *
+ * @since 3.7.0
+ */
+public final class PathPatternMatcher {
+
+    private static final String REGEX_PREFIX = "%regex[";
+
+    private static final String ANT_PREFIX = "%ant[";
+
+    private static final String PATTERN_SUFFIX = "]";
+
+    private static final String ANY_SEGMENTS = "**";
+
+    /** Root of the patterns starting with a separator. */
+    private final Node absolute = new Node(0, false);
+
+    /** Root of the other patterns. */
+    private final Node relative = new Node(1, false);
+
+    private int nodeCount = 2;
+
+    private final List<String> regexes = new ArrayList<>();
+
+    /** Compiled {@link #regexes}, {@code null} for the invalid ones, which fail when matched like in SelectorUtils. */
+    private final List<Pattern> compiledRegexes = new ArrayList<>();
+
+    private PathPatternMatcher() {}
+
+    /**
+     * @param patterns Ant patterns, or {@code %regex[]} and {@code %ant[]} patterns like for {@code SelectorUtils}
+     * @return a matcher of the paths matching one of the patterns, or {@code null} if there is no pattern
+     */
+    public static PathPatternMatcher compile(Collection<String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return null;
+        }
+        PathPatternMatcher matcher = new PathPatternMatcher();
+        for (String pattern : patterns) {
+            matcher.add(pattern);
+        }
+        return matcher;
+    }
+
+    private void add(String pattern) {
+        if (isPrefixed(pattern, REGEX_PREFIX)) {
+            String regex = unprefix(pattern, REGEX_PREFIX);
+            regexes.add(regex);
+            Pattern compiled;
+            try {
+                compiled = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                compiled = null;
+            }
+            compiledRegexes.add(compiled);
+            return;
+        }
+        String antPattern = isPrefixed(pattern, ANT_PREFIX) ? unprefix(pattern, ANT_PREFIX) : pattern;
+        Node node = isSeparator(antPattern, 0, false) ? absolute : relative;
+        int end = antPattern.length();
+        for (int start = 0; start < end; ) {
+            if (isSeparator(antPattern, start, false)) {
+                start++;
+                continue;
+            }
+            int segmentEnd = start;
+            while (segmentEnd < end && !isSeparator(antPattern, segmentEnd, false)) {
+                segmentEnd++;
+            }
+            node = child(node, antPattern.substring(start, segmentEnd));
+            start = segmentEnd;
+        }
+        node.terminal = true;
+    }
+
+    private Node child(Node node, String segment) {
+        if (segment.equals(ANY_SEGMENTS)) {
+            if (node.anySegmentsChild == null) {
+                node.anySegmentsChild = new Node(nodeCount++, true);
+            }
+            return node.anySegmentsChild;
+        }
+        if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+            int index = Arrays.asList(node.wildcards).indexOf(segment);
+            if (index < 0) {
+                index = node.wildcards.length;
+                node.wildcards = Arrays.copyOf(node.wildcards, index + 1);
+                node.wildcardChildren = Arrays.copyOf(node.wildcardChildren, index + 1);
+                node.wildcards[index] = segment;
+                node.wildcardChildren[index] = new Node(nodeCount++, false);
+            }
+            return node.wildcardChildren[index];
+        }
+        Node child = node.literalChild(segment, 0, segment.length());
+        if (child == null) {
+            child = new Node(nodeCount++, false);
+            node.putLiteralChild(segment, child);
+        }
+        return child;
+    }
+
+    private static boolean isPrefixed(String pattern, String prefix) {
+        return pattern.length() > prefix.length() + PATTERN_SUFFIX.length()
+                && pattern.startsWith(prefix)
+                && pattern.endsWith(PATTERN_SUFFIX);
+    }
+
+    private static String unprefix(String pattern, String prefix) {
+        return pattern.substring(prefix.length(), pattern.length() - PATTERN_SUFFIX.length());
+    }
+
+    /**
+     * @param path a path
+     * @return whether one of the patterns matches the path
+     */
+    public boolean matches(String path) {
+        return matches(path, 0, path.length(), false);
+    }
+
+    /**
+     * @param path the characters of a path
+     * @param start the index of the first character of the path
+     * @param end the index after the last character of the path
+     * @param dotsAsSlashes whether the dots of the path are matched as slashes, to match a class name as its path
+     * @return whether one of the patterns matches the path
+     */
+    public boolean matches(CharSequence path, int start, int end, boolean dotsAsSlashes) {
+        if (!regexes.isEmpty() && matchesRegex(path, start, end, dotsAsSlashes)) {
+            return true;
+        }
+        Node[] current = new Node[nodeCount];
+        Node[] next = new Node[nodeCount];
+        int[] marks = new int[nodeCount];
+        int mark = 1;
+        int size = add(current, 0, isSeparator(path, start, end, dotsAsSlashes) ? absolute : relative, marks, mark);
+        for (int segment = start; segment < end && size > 0; ) {
+            if (isSeparator(path, segment, end, dotsAsSlashes)) {
+                segment++;
+                continue;
+            }
+            int segmentEnd = segment;
+            while (segmentEnd < end && !isSeparator(path, segmentEnd, end, dotsAsSlashes)) {
+                segmentEnd++;
+            }
+            mark++;
+            int nextSize = 0;
+            for (int i = 0; i < size; i++) {
+                Node node = current[i];
+                if (node.anySegments) {
+                    nextSize = add(next, nextSize, node, marks, mark);
+                }
+                nextSize = add(next, nextSize, node.literalChild(path, segment, segmentEnd), marks, mark);
+                for (int j = 0; j < node.wildcards.length; j++) {
+                    if (matchesSegment(node.wildcards[j], path, segment, segmentEnd)) {
+                        nextSize = add(next, nextSize, node.wildcardChildren[j], marks, mark);
+                    }
+                }
+            }
+            Node[] swap = current;
+            current = next;
+            next = swap;
+            size = nextSize;
+            segment = segmentEnd;
+        }
+        for (int i = 0; i < size; i++) {
+            if (current[i].terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the patterns match every path not starting with a separator, like {@code **} does
+     */
+    public boolean matchesAllRelative() {
+        return matchesAll(relative);
+    }
+
+    /**
+     * @return whether the patterns match every path starting with a separator, like {@code /**} does
+     */
+    public boolean matchesAllAbsolute() {
+        return matchesAll(absolute);
+    }
+
+    /**
+     * @return whether a node matching any number of segments ends a pattern right after the root, through {@code **}
+     */
+    private static boolean matchesAll(Node root) {
+        for (Node node = root.anySegmentsChild; node != null; node = node.anySegmentsChild) {
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a node to a set of nodes, with the nodes following it through {@code **}, which also matches no segment.
+     */
+    private static int add(Node[] nodes, int size, Node node, int[] marks, int mark) {
+        for (; node != null && marks[node.id] != mark; node = node.anySegmentsChild) {
+            marks[node.id] = mark;
+            nodes[size++] = node;
+        }
+        return size;
+    }
+
+    private boolean matchesRegex(CharSequence path, int start, int end, boolean dotsAsSlashes) {
+        String string = path.subSequence(start, end).toString();
+        if (dotsAsSlashes) {
+            string = string.replace('.', '/');
+        }
+        for (int i = 0; i < regexes.size(); i++) {
+            Pattern regex = compiledRegexes.get(i);
+            if (regex != null ? regex.matcher(string).matches() : string.matches(regexes.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(CharSequence path, int index, boolean dotsAsSlashes) {
+        return isSeparator(path, index, path.length(), dotsAsSlashes);
+    }
+
+    private static boolean isSeparator(CharSequence path, int index, int end, boolean dotsAsSlashes) {
+        if (index >= end) {
+            return false;
+        }
+        char c = path.charAt(index);
+        return c == '/' || c == '\\' || dotsAsSlashes && c == '.';
+    }
+
+    /**
+     * Matches a segment with a pattern of a segment, where {@code *} matches any characters and {@code ?} any single
+     * character, backtracking to the last {@code *} on a mismatch.
+     */
+    static boolean matchesSegment(String pattern, CharSequence path, int start, int end) {
+        int p = 0;
+        int i = start;
+        int star = -1;
+        int starMatch = start;
+        while (i < end) {
+            char c = p < pattern.length() ? pattern.charAt(p) : 0;
+            if (c == '*') {
+                star = p++;
+                starMatch = i;
+            } else if (p < pattern.length() && (c == '?' || c == path.charAt(i))) {
+                p++;
+                i++;
+            } else if (star >= 0) {
+                p = star + 1;
+                i = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static final class Node {
+
+        private static final String[] NO_WILDCARDS = new String[0];
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /** Index of the node, to mark it in the sets of nodes. */
+        private final int id;
+
+        /** Whether the node is reached through {@code **}, so that it matches any number of segments itself. */
+        private final boolean anySegments;
+
+        /** Whether a pattern ends at this node. */
+        private boolean terminal;
+
+        /** Hash table of the literal segments of the children, with open addressing. */
+        private String[] literals = new String[2];
+
+        private Node[] literalChildren = new Node[2];
+
+        private int literalCount;
+
+        private String[] wildcards = NO_WILDCARDS;
+
+        private Node[] wildcardChildren = NO_CHILDREN;
+
+        private Node anySegmentsChild;
+
+        Node(int id, boolean anySegments) {
+            this.id = id;
+            this.anySegments = anySegments;
+        }
+
+        Node literalChild(CharSequence path, int start, int end) {
+            int mask = literals.length - 1;
+            for (int slot = hash(path, start, end) & mask; literals[slot] != null; slot = (slot + 1) & mask) {
+                if (equals(literals[slot], path, start, end)) {
+                    return literalChildren[slot];
+                }
+            }
+            return null;
+        }
+
+        void putLiteralChild(String segment, Node child) {
+            if (2 * (literalCount + 1) > literals.length) {
+                String[] oldLiterals = literals;
+                Node[] oldChildren = literalChildren;
+                literals = new String[oldLiterals.length * 2];
+                literalChildren = new Node[oldLiterals.length * 2];
+                for (int i = 0; i < oldLiterals.length; i++) {
+                    if (oldLiterals[i] != null) {
+                        insert(oldLiterals[i], oldChildren[i]);
+                    }
+                }
+            }
+            insert(segment, child);
+            literalCount++;
+        }
+
+        private void insert(String segment, Node child) {
+            int mask = literals.length - 1;
+            int slot = hash(segment, 0, segment.length()) & mask;
+            while (literals[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            literals[slot] = segment;
+            literalChildren[slot] = child;
+        }
+
+        /** Same as {@link String#hashCode()} of the characters, spread. */
+        private static int hash(CharSequence path, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        private static boolean equals(String segment, CharSequence path, int start, int end) {
+            if (segment.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < segment.length(); i++) {
+                if (segment.charAt(i) != path.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -41,4 +41,62 @@ public interface Relocator {
      * @see #relocateClass(String)
      */
     String relocateAllClasses(String input);
+
+    /**
+     * Same as {@link #canRelocatePath(String)} for a range of characters, telling how the path is relocated when it
+     * is. Implementations avoid allocating, the default implementation asks {@link #canRelocatePath(String)}.
+     *
+     * @param name the characters of the path
+     * @param start the index of the first character of the path
+     * @param end the index after the last character of the path
+     * @return the match of the path, or {@code null} if it is not relocated
+     * @since 3.7.0
+     */
+    default RelocatorMatch matchPath(CharSequence name, int start, int end) {
+        return canRelocatePath(name.subSequence(start, end).toString()) ? RelocatorMatch.of(this) : null;
+    }
+
+    /**
+     * Same as {@link #canRelocateClass(String)} for a range of characters, telling how the class name is relocated
+     * when it is. Implementations avoid allocating, the default implementation asks {@link #canRelocateClass(String)}.
+     *
+     * @param name the characters of the class name
+     * @param start the index of the first character of the class name
+     * @param end the index after the last character of the class name
+     * @return the match of the class name, or {@code null} if it is not relocated
+     * @since 3.7.0
+     */
+    default RelocatorMatch matchClass(CharSequence name, int start, int end) {
+        return canRelocateClass(name.subSequence(start, end).toString()) ? RelocatorMatch.of(this) : null;
+    }
+
+    /**
+     * Same as {@link #matchPath(CharSequence, int, int)} for a path encoded in modified UTF-8, like the
+     * {@code CONSTANT_Utf8} entries of class files. The default implementation decodes the path.
+     *
+     * @param name the bytes of the path
+     * @param start the index of the first byte of the path
+     * @param end the index after the last byte of the path
+     * @return the match of the path, or {@code null} if it is not relocated
+     * @since 3.7.0
+     */
+    default RelocatorMatch matchPath(byte[] name, int start, int end) {
+        String path = RelocatorMatch.decode(name, start, end);
+        return matchPath(path, 0, path.length());
+    }
+
+    /**
+     * Same as {@link #matchClass(CharSequence, int, int)} for a class name encoded in modified UTF-8, like the
+     * {@code CONSTANT_Utf8} entries of class files. The default implementation decodes the class name.
+     *
+     * @param name the bytes of the class name
+     * @param start the index of the first byte of the class name
+     * @param end the index after the last byte of the class name
+     * @return the match of the class name, or {@code null} if it is not relocated
+     * @since 3.7.0
+     */
+    default RelocatorMatch matchClass(byte[] name, int start, int end) {
+        String clazz = RelocatorMatch.decode(name, start, end);
+        return matchClass(clazz, 0, clazz.length());
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+/**
+ * A name matched by a {@link Relocator}, as returned by {@link Relocator#matchPath(CharSequence, int, int)} and the
+ * other match methods. Relocators may return the same match for all the names they match alike, so that matching a
+ * name does not allocate.
+ * <p>
+ * A prefix match tells how the name is relocated: the pattern found after the first {@link #getOffset()} characters of
+ * the name, {@link #getPatternLength()} characters long, is replaced with {@link #getReplacement()}. The offset and
+ * length of a prefix match are the same in characters and in bytes of modified UTF-8, as the pattern is ASCII then.
+ * Other matches only tell which relocator relocates the name, with its {@code relocatePath} or {@code relocateClass}
+ * methods.
+ *
+ * @since 3.7.0
+ */
+public final class RelocatorMatch {
+
+    private final Relocator relocator;
+
+    private final int offset;
+
+    private final int patternLength;
+
+    private final String replacement;
+
+    private RelocatorMatch(Relocator relocator, int offset, int patternLength, String replacement) {
+        this.relocator = relocator;
+        this.offset = offset;
+        this.patternLength = patternLength;
+        this.replacement = replacement;
+    }
+
+    /**
+     * @param relocator the relocator relocating the matched names
+     * @return a match telling which relocator relocates the matched names, but not how
+     */
+    public static RelocatorMatch of(Relocator relocator) {
+        return new RelocatorMatch(relocator, -1, -1, null);
+    }
+
+    /**
+     * @param relocator the relocator relocating the matched names
+     * @param offset the number of characters of the names before the pattern
+     * @param patternLength the length of the pattern
+     * @param replacement the replacement of the pattern
+     * @return a match relocating the names by replacing the pattern
+     */
+    public static RelocatorMatch prefix(Relocator relocator, int offset, int patternLength, String replacement) {
+        return new RelocatorMatch(relocator, offset, patternLength, replacement);
+    }
+
+    public Relocator getRelocator() {
+        return relocator;
+    }
+
+    /**
+     * @return whether the offset, pattern length and replacement tell how the name is relocated
+     */
+    public boolean isPrefix() {
+        return replacement != null;
+    }
+
+    /**
+     * @return the number of characters of the name before the replaced pattern, or -1 if this is not a prefix match
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of characters of the replaced pattern, or -1 if this is not a prefix match
+     */
+    public int getPatternLength() {
+        return patternLength;
+    }
+
+    /**
+     * @return the replacement of the pattern, or {@code null} if this is not a prefix match
+     */
+    public String getReplacement() {
+        return replacement;
+    }
+
+    /**
+     * Decodes modified UTF-8, as in class files, leniently: malformed bytes are decoded as the characters of the same
+     * value.
+     *
+     * @param bytes the encoded characters
+     * @param start the index of the first byte
+     * @param end the index after the last byte
+     * @return the decoded characters
+     */
+    static String decode(byte[] bytes, int start, int end) {
+        StringBuilder chars = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b >= 0xE0 && i + 2 < end) {
+                chars.append((char) ((b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F));
+                i += 2;
+            } else if (b >= 0xC0 && b < 0xE0 && i + 1 < end) {
+                chars.append((char) ((b & 0x1F) << 6 | bytes[i + 1] & 0x3F));
+                i++;
+            } else {
+                chars.append((char) b);
+            }
+        }
+        return chars.toString();
+    }
+}
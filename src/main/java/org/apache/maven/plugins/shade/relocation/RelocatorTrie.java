@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A list of relocators compiled into a prefix trie of their path patterns. It finds the first relocator of the list
+ * relocating a name, like trying each relocator in turn with {@link Relocator#canRelocateClass(String)} and
+ * {@link Relocator#canRelocatePath(String)} would, but with a single walk over the characters of the name.
+ * <p>
+ * Only plain {@link SimpleRelocator}s are compiled into the trie. Raw string relocators, subclasses and other
+ * relocators are asked in turn, in their position of the list.
+ *
+ * @since 3.7.0
+ */
+public final class RelocatorTrie {
+
+    private final List<Relocator> relocators;
+
+    /** Indexes of the relocators which are not compiled into the trie, in ascending order. */
+    private final int[] opaque;
+
+    private final Node root = new Node();
+
+    private RelocatorTrie(List<Relocator> relocators) {
+        this.relocators = new ArrayList<>(relocators);
+        List<Integer> opaqueIndexes = new ArrayList<>();
+        for (int i = 0; i < this.relocators.size(); i++) {
+            Relocator relocator = this.relocators.get(i);
+            if (isCompilable(relocator)) {
+                root.add(((SimpleRelocator) relocator).getPathPattern(), i);
+            } else {
+                opaqueIndexes.add(i);
+            }
+        }
+        this.opaque = opaqueIndexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param relocators the relocators, in order of precedence
+     * @return the compiled relocators
+     */
+    public static RelocatorTrie compile(List<Relocator> relocators) {
+        return new RelocatorTrie(relocators);
+    }
+
+    /**
+     * Returns the strings contained in every name relocated by the relocators: the path and class name patterns of the
+     * relocators. A name containing none of them is never relocated.
+     *
+     * @return the patterns, or {@code null} if some relocators are not compiled and could relocate any name
+     */
+    public Set<String> getPatterns() {
+        if (opaque.length > 0) {
+            return null;
+        }
+        Set<String> patterns = new LinkedHashSet<>();
+        for (Relocator relocator : relocators) {
+            String pathPattern = ((SimpleRelocator) relocator).getPathPattern();
+            patterns.add(pathPattern);
+            patterns.add(pathPattern.replace('/', '.'));
+        }
+        return patterns;
+    }
+
+    private static boolean isCompilable(Relocator relocator) {
+        return relocator.getClass() == SimpleRelocator.class && !((SimpleRelocator) relocator).isRawString();
+    }
+
+    /**
+     * Relocates a name with the first relocator relocating it.
+     *
+     * @param name the class or path name to relocate
+     * @param mapPaths whether to relocate the name as a path, see {@link Relocator#relocatePath(String)}
+     * @param mapPackages whether to relocate the name as a class name, see {@link Relocator#relocateClass(String)}
+     * @return the relocated name, or {@code null} if no relocator relocates the name
+     */
+    public String relocate(String name, boolean mapPaths, boolean mapPackages) {
+        int best = Integer.MAX_VALUE;
+        boolean bestIsClass = false;
+
+        if (mapPaths && root.size > 0) {
+            String path = normalizePath(name);
+            Node node = root;
+            for (int i = 0; node != null; i++) {
+                for (int index : node.relocators) {
+                    if (index < best && isIncluded(index, path)) {
+                        best = index;
+                        bestIsClass = false;
+                    }
+                }
+                node = i < path.length() ? node.child(path.charAt(i)) : null;
+            }
+        }
+
+        if (mapPackages && root.size > 0 && name.indexOf('/') < 0) {
+            String path = normalizePath(name.replace('.', '/'));
+            Node node = root;
+            for (int i = 0; node != null; i++) {
+                for (int index : node.relocators) {
+                    // the class is relocated before the path by the same relocator
+                    if (index <= best && isIncluded(index, path)) {
+                        best = index;
+                        bestIsClass = true;
+                    }
+                }
+                node = i < path.length() ? node.child(path.charAt(i)) : null;
+            }
+        }
+
+        for (int index : opaque) {
+            if (index > best) {
+                break;
+            }
+            Relocator relocator = relocators.get(index);
+            if (mapPackages && relocator.canRelocateClass(name)) {
+                return relocator.relocateClass(name);
+            } else if (mapPaths && relocator.canRelocatePath(name)) {
+                return relocator.relocatePath(name);
+            }
+        }
+
+        if (best == Integer.MAX_VALUE) {
+            return null;
+        }
+        SimpleRelocator relocator = (SimpleRelocator) relocators.get(best);
+        return bestIsClass ? relocator.relocateMatchedClass(name) : relocator.relocateMatchedPath(name);
+    }
+
+    /**
+     * Relocates the class names of a line of text, like applying {@link Relocator#applyToSourceContent(String)} of each
+     * relocator in turn which {@link Relocator#canRelocateClass(String) relocates} the line as a class name, but only
+     * asking the relocators whose pattern starts the line.
+     *
+     * @param line a line of text, usually a fully qualified class name
+     * @return the relocated line, or the same line if no relocator relocates it
+     */
+    public String relocateClassLine(String line) {
+        for (int index = nextClassCandidate(line, 0); index >= 0; index = nextClassCandidate(line, index + 1)) {
+            Relocator relocator = relocators.get(index);
+            if (relocator.canRelocateClass(line)) {
+                line = isCompilable(relocator)
+                        ? ((SimpleRelocator) relocator).applyToSourceClass(line)
+                        : relocator.applyToSourceContent(line);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return the index of the first relocator from the given index which may relocate the name as a class name, or -1
+     */
+    private int nextClassCandidate(String name, int from) {
+        int best = -1;
+        for (int index : opaque) {
+            if (index >= from) {
+                best = index;
+                break;
+            }
+        }
+        if (root.size > 0 && name.indexOf('/') < 0) {
+            // class names are relocated as paths, so the dots of the name are walked as slashes, and a leading dot is
+            // ignored like a leading slash
+            Node node = root;
+            for (int i = name.startsWith(".") ? 1 : 0; node != null; i++) {
+                for (int index : node.relocators) {
+                    if (index >= from) {
+                        if (best < 0 || index < best) {
+                            best = index;
+                        }
+                        break;
+                    }
+                }
+                if (i == name.length()) {
+                    break;
+                }
+                char c = name.charAt(i);
+                node = node.child(c == '.' ? '/' : c);
+            }
+        }
+        return best;
+    }
+
+    private boolean isIncluded(int index, String path) {
+        SimpleRelocator relocator = (SimpleRelocator) relocators.get(index);
+        return relocator.isIncluded(path) && !relocator.isExcluded(path);
+    }
+
+    /**
+     * Same normalization as {@link SimpleRelocator#canRelocatePath(String)}.
+     */
+    private static String normalizePath(String path) {
+        if (path.endsWith(".class")) {
+            path = path.substring(0, path.length() - 6);
+        }
+        if (!path.isEmpty() && path.charAt(0) == '/') {
+            path = path.substring(1);
+        }
+        return path;
+    }
+
+    private static final class Node {
+
+        private static final int[] NONE = new int[0];
+
+        /** Sorted characters leading to the children. */
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /** Indexes of the relocators whose pattern ends at this node, in ascending order. */
+        private int[] relocators = NONE;
+
+        /** Number of relocators in this node and its descendants. */
+        private int size;
+
+        void add(String pattern, int index) {
+            Node node = this;
+            node.size++;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int pos = Arrays.binarySearch(node.keys, c);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                    node.keys = insert(node.keys, pos, c);
+                    node.children = insert(node.children, pos, new Node());
+                }
+                node = node.children[pos];
+                node.size++;
+            }
+            node.relocators = Arrays.copyOf(node.relocators, node.relocators.length + 1);
+            node.relocators[node.relocators.length - 1] = index;
+        }
+
+        Node child(char c) {
+            int pos = Arrays.binarySearch(keys, c);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        private static char[] insert(char[] array, int pos, char value) {
+            char[] result = new char[array.length + 1];
+            System.arraycopy(array, 0, result, 0, pos);
+            result[pos] = value;
+            System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+            return result;
+        }
+
+        private static Node[] insert(Node[] array, int pos, Node value) {
+            Node[] result = new Node[array.length + 1];
+            System.arraycopy(array, 0, result, 0, pos);
+            result[pos] = value;
+            System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+            return result;
+        }
+    }
+}
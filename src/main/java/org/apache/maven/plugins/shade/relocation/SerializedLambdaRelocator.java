@@ -28,6 +28,7 @@ public class SerializedLambdaRelocator extends SimpleRelocator {
     private final Pattern clazzInsideFunctionDefintionPattern;
     private final String shadedPathPattern;
     private boolean shouldRelocate = true;
+    private final RelocatorMatch match = RelocatorMatch.of(this);
 
     public SerializedLambdaRelocator(
             String pattern, String shadedPattern, List<String> includes, List<String> excludes, boolean rawString) {
@@ -53,6 +54,74 @@ public class SerializedLambdaRelocator extends SimpleRelocator {
         return false;
     }
 
+    @Override
+    public RelocatorMatch matchPath(CharSequence name, int start, int end) {
+        return shouldRelocate && isMethodDescriptor(null, name, start, end) ? match : null;
+    }
+
+    @Override
+    public RelocatorMatch matchPath(byte[] name, int start, int end) {
+        return shouldRelocate && isMethodDescriptor(name, null, start, end) ? match : null;
+    }
+
+    @Override
+    public RelocatorMatch matchClass(CharSequence name, int start, int end) {
+        return null;
+    }
+
+    @Override
+    public RelocatorMatch matchClass(byte[] name, int start, int end) {
+        return null;
+    }
+
+    /**
+     * Same as matching {@link #serializedLambdaDefinitionPattern} with a range of characters or of bytes of modified
+     * UTF-8, whose multibyte characters are never the ASCII characters of the pattern.
+     */
+    private static boolean isMethodDescriptor(byte[] bytes, CharSequence chars, int start, int end) {
+        if (start == end || charAt(bytes, chars, start) != '(') {
+            return false;
+        }
+        int index = start + 1;
+        while (index < end && charAt(bytes, chars, index) != ')') {
+            index = skipType(bytes, chars, index, end, false);
+            if (index < 0) {
+                return false;
+            }
+        }
+        return index < end && skipType(bytes, chars, index + 1, end, true) == end;
+    }
+
+    /**
+     * @return the index after the parameter type, or return type, at the given index, or -1 if there is none
+     */
+    private static int skipType(byte[] bytes, CharSequence chars, int index, int end, boolean returnType) {
+        if (returnType && index < end && charAt(bytes, chars, index) == 'V') {
+            return index + 1;
+        }
+        while (index < end && charAt(bytes, chars, index) == '[') {
+            index++;
+        }
+        if (index == end) {
+            return -1;
+        }
+        char c = charAt(bytes, chars, index);
+        if ("BCDFIJSZ".indexOf(c) >= 0) {
+            return index + 1;
+        } else if (c != 'L') {
+            return -1;
+        }
+        int semicolon = index + 1;
+        while (semicolon < end && charAt(bytes, chars, semicolon) != ';') {
+            semicolon++;
+        }
+        return semicolon > index + 1 && semicolon < end ? semicolon + 1 : -1;
+    }
+
+    private static char charAt(byte[] bytes, CharSequence chars, int index) {
+        return bytes != null ? (char) (bytes[index] & 0xFF) : chars.charAt(index);
+    }
+
     @Override
     public String relocatePath(String path) {
         return !shouldRelocate
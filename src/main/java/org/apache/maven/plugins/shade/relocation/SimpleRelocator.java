@@ -25,7 +25,6 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.codehaus.plexus.util.SelectorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +34,8 @@ import org.slf4j.LoggerFactory;
  */
 public class SimpleRelocator implements Relocator {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleRelocator.class);
+
+    private static final String CLASS_SUFFIX = ".class";
     /**
      * Match dot, slash or space at end of string
      */
@@ -91,6 +92,12 @@ public class SimpleRelocator implements Relocator {
      */
     private final Set<String> excludes;
 
+    /** Compiled {@link #includes}, {@code null} if every path is included. */
+    private final PathPatternMatcher includeMatcher;
+
+    /** Compiled {@link #excludes}, {@code null} if no path is excluded. */
+    private final PathPatternMatcher excludeMatcher;
+
     // prefix (no wildcards), derived from excludes
     private final Set<String> sourcePackageExcludes = new LinkedHashSet<>();
 
@@ -99,6 +106,24 @@ public class SimpleRelocator implements Relocator {
 
     private final boolean rawString;
 
+    /** Whether the class name pattern only has ASCII letters, digits, underscores and dots. */
+    private final boolean plainPattern;
+
+    /** Whether the patterns are ASCII without NUL, so that they are encoded as is in modified UTF-8. */
+    private final boolean asciiPattern;
+
+    /** Match of the paths starting with the path pattern, {@code null} for a raw string relocator. */
+    private final RelocatorMatch pathMatch;
+
+    /** Match of the paths starting with a slash before the path pattern, {@code null} for a raw string relocator. */
+    private final RelocatorMatch slashPathMatch;
+
+    /** Match of the class names starting with the pattern, {@code null} for a raw string relocator. */
+    private final RelocatorMatch classMatch;
+
+    /** Match of the class names starting with a dot before the pattern, {@code null} for a raw string relocator. */
+    private final RelocatorMatch dotClassMatch;
+
     /**
      * Same as {@link #SimpleRelocator(String, String, List, List, boolean)} with {@code rawString} set to {@code false}.
      * @param patt
@@ -189,6 +214,39 @@ public class SimpleRelocator implements Relocator {
             this.regExPattern = originalPattern != null ? Pattern.compile(Pattern.quote(originalPattern)) : null;
             this.regExPathPattern = Pattern.compile(Pattern.quote(originalPathPattern));
         }
+        this.includeMatcher = PathPatternMatcher.compile(this.includes);
+        this.excludeMatcher = PathPatternMatcher.compile(this.excludes);
+        this.plainPattern = originalPattern != null
+                && !originalPattern.isEmpty()
+                && originalPattern.chars().allMatch(c -> c == '.' || isAsciiWordChar((char) c));
+        this.asciiPattern = originalPathPattern.chars().allMatch(c -> c > 0 && c < 0x80);
+        if (rawString) {
+            this.pathMatch = null;
+            this.slashPathMatch = null;
+            this.classMatch = null;
+            this.dotClassMatch = null;
+        } else {
+            this.pathMatch = prefixMatch(0, regExPathPattern, originalPathPattern, this.shadedPathPattern);
+            this.slashPathMatch = prefixMatch(1, regExPathPattern, originalPathPattern, this.shadedPathPattern);
+            this.classMatch = prefixMatch(0, regExPattern, originalPattern, this.shadedPattern);
+            this.dotClassMatch = prefixMatch(1, regExPattern, originalPattern, this.shadedPattern);
+        }
+    }
+
+    /**
+     * @return the match replacing the pattern with what replacing it with the regular expression gives, which differs
+     *     from the replacement when it has {@code $} or {@code \}
+     */
+    private RelocatorMatch prefixMatch(int offset, Pattern regEx, String pattern, String replacement) {
+        if (hasReplacementSyntax(replacement)) {
+            try {
+                replacement = regEx.matcher(pattern).replaceFirst(replacement);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // relocating with the regular expression fails the same way
+                return RelocatorMatch.of(this);
+            }
+        }
+        return RelocatorMatch.prefix(this, offset, pattern.length(), replacement);
     }
 
     /**
@@ -218,26 +276,11 @@ public class SimpleRelocator implements Relocator {
     }
 
     protected boolean isIncluded(String path) {
-        if (includes != null && !includes.isEmpty()) {
-            for (String include : includes) {
-                if (SelectorUtils.matchPath(include, path, true)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        return true;
+        return includeMatcher == null || includeMatcher.matches(path);
     }
 
     protected boolean isExcluded(String path) {
-        if (excludes != null && !excludes.isEmpty()) {
-            for (String exclude : excludes) {
-                if (SelectorUtils.matchPath(exclude, path, true)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return excludeMatcher != null && excludeMatcher.matches(path);
     }
 
     @Override
@@ -289,6 +332,206 @@ public class SimpleRelocator implements Relocator {
         return regExPattern == null ? input : regExPattern.matcher(input).replaceAll(shadedPattern);
     }
 
+    @Override
+    public RelocatorMatch matchPath(CharSequence name, int start, int end) {
+        return isMatchable() ? match(null, name, start, end, false) : Relocator.super.matchPath(name, start, end);
+    }
+
+    @Override
+    public RelocatorMatch matchClass(CharSequence name, int start, int end) {
+        return isMatchable() ? match(null, name, start, end, true) : Relocator.super.matchClass(name, start, end);
+    }
+
+    @Override
+    public RelocatorMatch matchPath(byte[] name, int start, int end) {
+        return isMatchable() && asciiPattern
+                ? match(name, null, start, end, false)
+                : Relocator.super.matchPath(name, start, end);
+    }
+
+    @Override
+    public RelocatorMatch matchClass(byte[] name, int start, int end) {
+        return isMatchable() && asciiPattern
+                ? match(name, null, start, end, true)
+                : Relocator.super.matchClass(name, start, end);
+    }
+
+    /**
+     * @return whether names are matched without the methods taking strings, which subclasses may override
+     */
+    private boolean isMatchable() {
+        return !rawString && getClass() == SimpleRelocator.class;
+    }
+
+    /**
+     * Same as {@link #canRelocatePath(String)}, or {@link #canRelocateClass(String)}, for a range of characters or of
+     * bytes of modified UTF-8, which are only decoded to match includes and excludes.
+     */
+    private RelocatorMatch match(byte[] bytes, CharSequence chars, int start, int end, boolean clazz) {
+        int from = start;
+        int to = end;
+        if (clazz) {
+            for (int i = start; i < end; i++) {
+                if (charAt(bytes, chars, i) == '/') {
+                    return null;
+                }
+            }
+        } else if (end - start >= CLASS_SUFFIX.length()
+                && regionMatches(bytes, chars, end - CLASS_SUFFIX.length(), end, CLASS_SUFFIX)) {
+            to -= CLASS_SUFFIX.length();
+        }
+        // a leading slash of a path is ignored, and so is a leading dot of a class name, which is matched as a path
+        if (from < to && charAt(bytes, chars, from) == (clazz ? '.' : '/')) {
+            from++;
+        }
+        // the dots of a class name are matched as the slashes of the path pattern, like the dots of the pattern
+        String pattern = clazz ? originalPattern : originalPathPattern;
+        if (!regionMatches(bytes, chars, from, to, pattern)) {
+            return null;
+        }
+        if (includeMatcher != null || excludeMatcher != null) {
+            CharSequence path = bytes != null ? RelocatorMatch.decode(bytes, from, to) : chars;
+            int pathStart = bytes != null ? 0 : from;
+            int pathEnd = bytes != null ? path.length() : to;
+            if (includeMatcher != null && !includeMatcher.matches(path, pathStart, pathEnd, clazz)
+                    || excludeMatcher != null && excludeMatcher.matches(path, pathStart, pathEnd, clazz)) {
+                return null;
+            }
+        }
+        // the first occurrence of the pattern in the name is relocated
+        if (from == start || regionMatches(bytes, chars, start, end, pattern)) {
+            return clazz ? classMatch : pathMatch;
+        }
+        return clazz ? dotClassMatch : slashPathMatch;
+    }
+
+    private static char charAt(byte[] bytes, CharSequence chars, int index) {
+        return bytes != null ? (char) (bytes[index] & 0xFF) : chars.charAt(index);
+    }
+
+    /**
+     * @return whether the range from the given index to the given end starts with the given string, whose characters
+     *     are compared with the bytes as ASCII
+     */
+    private static boolean regionMatches(byte[] bytes, CharSequence chars, int index, int end, String string) {
+        if (end - index < string.length()) {
+            return false;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            if (charAt(bytes, chars, index + i) != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isRawString() {
+        return rawString;
+    }
+
+    /**
+     * @return the path pattern every relocated path starts with, unless this is a raw string relocator
+     */
+    String getPathPattern() {
+        return originalPathPattern;
+    }
+
+    /**
+     * @return the class name pattern, or {@code null} for a raw string relocator
+     */
+    String getPattern() {
+        return originalPattern;
+    }
+
+    String getShadedPattern() {
+        return shadedPattern;
+    }
+
+    String getShadedPathPattern() {
+        return shadedPathPattern;
+    }
+
+    /**
+     * @return the rests of the excluded class names after the pattern, which are not relocated in sources
+     */
+    Set<String> getSourcePackageExcludes() {
+        return sourcePackageExcludes;
+    }
+
+    /**
+     * @return the rests of the excluded paths after the path pattern, which are not relocated in sources
+     */
+    Set<String> getSourcePathExcludes() {
+        return sourcePathExcludes;
+    }
+
+    /**
+     * Same as {@link #relocatePath(String)} for a path known to be relocated by this relocator, avoiding the regular
+     * expression when the path starts with the pattern.
+     */
+    String relocateMatchedPath(String path) {
+        if (path.startsWith("/") || hasReplacementSyntax(shadedPathPattern)) {
+            return relocatePath(path);
+        }
+        return shadedPathPattern + path.substring(originalPathPattern.length());
+    }
+
+    /**
+     * Same as {@link #relocateClass(String)} for a class known to be relocated by this relocator, avoiding the regular
+     * expression when the class name starts with the pattern.
+     */
+    String relocateMatchedClass(String clazz) {
+        if (clazz.startsWith(".") || hasReplacementSyntax(shadedPattern)) {
+            return relocateClass(clazz);
+        }
+        return shadedPattern + clazz.substring(originalPattern.length());
+    }
+
+    private static boolean hasReplacementSyntax(String replacement) {
+        return replacement.indexOf('$') >= 0 || replacement.indexOf('\\') >= 0;
+    }
+
+    /**
+     * Same as {@link #applyToSourceContent(String)} for a class name relocated by this relocator, avoiding the regular
+     * expressions when the name starts with the pattern and does not contain it anywhere else.
+     */
+    String applyToSourceClass(String clazz) {
+        int length = plainPattern ? originalPattern.length() : 0;
+        if (!plainPattern
+                || clazz.length() <= length
+                || !clazz.startsWith(originalPattern)
+                || clazz.indexOf(originalPattern, 1) >= 0
+                || clazz.charAt(length) >= 0x80) {
+            return applyToSourceContent(clazz);
+        }
+        String relocated = clazz;
+        String rest = clazz.substring(length);
+        // the pattern is replaced where it starts and ends at a word boundary, unless the rest of the name is excluded
+        boolean boundary = isAsciiWordChar(clazz.charAt(0))
+                && isAsciiWordChar(clazz.charAt(length - 1)) != isAsciiWordChar(clazz.charAt(length));
+        if (boundary && !isSourceExcluded(rest)) {
+            relocated = shadedPattern + rest;
+        }
+        // the path pattern may be replaced in the relocated name as well
+        return relocated.contains(originalPathPattern) ? applyToSourceContent(clazz) : relocated;
+    }
+
+    private boolean isSourceExcluded(String rest) {
+        for (String exclude : sourcePackageExcludes) {
+            if (rest.startsWith(exclude)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a character is a word character for {@code \b} in regular expressions, for ASCII characters.
+     */
+    private static boolean isAsciiWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
     @Override
     public String applyToSourceContent(String sourceContent) {
         if (rawString) {
@@ -320,13 +563,7 @@ public class SimpleRelocator implements Relocator {
                 isFirstSnippet = false;
             } else {
                 String previousSnippetOneLine = previousSnippet.replaceAll("\\s+", " ");
-                boolean afterDotSlashSpace = RX_ENDS_WITH_DOT_SLASH_SPACE
-                        .matcher(previousSnippetOneLine)
-                        .find();
-                boolean afterJavaKeyWord = RX_ENDS_WITH_JAVA_KEYWORD
-                        .matcher(previousSnippetOneLine)
-                        .find();
-                boolean shouldExclude = doExclude || afterDotSlashSpace && !afterJavaKeyWord;
+                boolean shouldExclude = doExclude || isAfterQualifier(previousSnippetOneLine);
                 shadedSourceContent
                         .append(shouldExclude ? patternFrom : patternTo)
                         .append(snippet);
@@ -334,4 +571,15 @@ public class SimpleRelocator implements Relocator {
         }
         return shadedSourceContent.toString();
     }
+
+    /**
+     * @param previousSnippetOneLine the text before an occurrence of a pattern, with its whitespace collapsed
+     * @return whether the occurrence follows a dot, slash or space which does not follow a Java keyword, so that it is
+     *     part of another name and is not relocated
+     */
+    static boolean isAfterQualifier(String previousSnippetOneLine) {
+        boolean afterDotSlashSpace = RX_ENDS_WITH_DOT_SLASH_SPACE.matcher(previousSnippetOneLine).find();
+        boolean afterJavaKeyWord = RX_ENDS_WITH_JAVA_KEYWORD.matcher(previousSnippetOneLine).find();
+        return afterDotSlashSpace && !afterJavaKeyWord;
+    }
 }
@@ -0,0 +1,697 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A list of relocators compiled to relocate the content of Java sources, like applying
+ * {@link Relocator#applyToSourceContent(String)} of each relocator in turn would, in time linear in the size of the
+ * sources.
+ * <p>
+ * A {@link SimpleRelocator} replaces its class name pattern, then its path pattern, where they are whole words, except
+ * after a dot, slash or space not following a Java keyword, or before an excluded package. The patterns of all the
+ * relocators are compiled into an Aho-Corasick automaton finding all their occurrences in a single scan of a source.
+ * Whether an occurrence is replaced only depends on the text around it, so as long as the replacements of a relocator
+ * leave the text around the occurrences of the next ones as it is, all of them are decided on the source and the
+ * relocated source is written in one go. Otherwise, the next relocators are applied in turn, each in a single scan of
+ * the text relocated by the previous ones.
+ * <p>
+ * Raw string relocators leave sources as they are. Subclasses, other relocators and patterns with characters special
+ * in regular expressions are applied with {@link Relocator#applyToSourceContent(String)}, in their position of the
+ * list.
+ *
+ * @since 3.7.0
+ */
+public final class SourceContentRelocator {
+
+    /** Longest Java keyword of {@link SimpleRelocator#isAfterQualifier(String)}, and the character before it. */
+    private static final int MAX_KEYWORD_CONTEXT_LENGTH = "synchronized".length() + 1;
+
+    private static final int LINK_LENGTH = "{@link".length();
+
+    private static final Pattern RX_WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Pattern RX_BOUNDARY = Pattern.compile("\\b");
+
+    /** The steps relocating the sources: {@link PassGroup}s and {@link Relocator}s applied as is. */
+    private final List<Object> steps;
+
+    private SourceContentRelocator(List<Object> steps) {
+        this.steps = steps;
+    }
+
+    /**
+     * @param relocators the relocators, in order
+     * @return the compiled relocators
+     */
+    public static SourceContentRelocator compile(List<Relocator> relocators) {
+        List<Object> steps = new ArrayList<>();
+        List<Pass> passes = new ArrayList<>();
+        for (Relocator relocator : relocators) {
+            if (relocator.getClass() == SimpleRelocator.class && ((SimpleRelocator) relocator).isRawString()) {
+                continue;
+            }
+            if (isCompilable(relocator)) {
+                SimpleRelocator simpleRelocator = (SimpleRelocator) relocator;
+                passes.add(new Pass(
+                        simpleRelocator.getPattern(),
+                        simpleRelocator.getShadedPattern(),
+                        simpleRelocator.getSourcePackageExcludes().toArray(new String[0])));
+                passes.add(new Pass(
+                        simpleRelocator.getPathPattern(),
+                        simpleRelocator.getShadedPathPattern(),
+                        simpleRelocator.getSourcePathExcludes().toArray(new String[0])));
+            } else {
+                if (!passes.isEmpty()) {
+                    steps.add(new PassGroup(passes));
+                    passes = new ArrayList<>();
+                }
+                steps.add(relocator);
+            }
+        }
+        if (!passes.isEmpty()) {
+            steps.add(new PassGroup(passes));
+        }
+        return new SourceContentRelocator(steps);
+    }
+
+    private static boolean isCompilable(Relocator relocator) {
+        if (relocator.getClass() != SimpleRelocator.class) {
+            return false;
+        }
+        SimpleRelocator simpleRelocator = (SimpleRelocator) relocator;
+        return isLiteral(simpleRelocator.getPattern()) && isLiteral(simpleRelocator.getPathPattern());
+    }
+
+    /**
+     * @return whether the pattern matches itself in the regular expression of {@link SimpleRelocator}, where only its
+     *     dots are escaped
+     */
+    private static boolean isLiteral(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("\\^$|?*+()[]{}".indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param source the content of a source
+     * @return the relocated content
+     */
+    public String relocate(String source) {
+        for (Object step : steps) {
+            source = step instanceof PassGroup
+                    ? ((PassGroup) step).relocate(source)
+                    : ((Relocator) step).applyToSourceContent(source);
+        }
+        return source;
+    }
+
+    /**
+     * Relocates the content of a source and writes it, without building the relocated content when all the relocators
+     * are compiled.
+     *
+     * @param source the content of a source
+     * @param out the writer to write the relocated content to
+     * @throws IOException if the writer fails
+     */
+    public void relocate(String source, Writer out) throws IOException {
+        for (int i = 0; i < steps.size() - 1; i++) {
+            Object step = steps.get(i);
+            source = step instanceof PassGroup
+                    ? ((PassGroup) step).relocate(source)
+                    : ((Relocator) step).applyToSourceContent(source);
+        }
+        Object last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+        if (last instanceof PassGroup) {
+            ((PassGroup) last).relocate(source, out);
+        } else {
+            out.write(last != null ? ((Relocator) last).applyToSourceContent(source) : source);
+        }
+    }
+
+    /**
+     * Consecutive passes, whose patterns are compiled into an automaton.
+     */
+    private static final class PassGroup {
+
+        private final Pass[] passes;
+
+        private final Automaton automaton;
+
+        /** Whether the replacements of a pass may create occurrences of the pattern of a later pass. */
+        private final boolean[][] mayCreate;
+
+        PassGroup(List<Pass> passes) {
+            this.passes = passes.toArray(new Pass[0]);
+            Map<String, Integer> patterns = new LinkedHashMap<>();
+            for (Pass pass : this.passes) {
+                pass.pattern = patterns.computeIfAbsent(pass.from, k -> patterns.size());
+            }
+            this.automaton = new Automaton(new ArrayList<>(patterns.keySet()));
+            this.mayCreate = new boolean[this.passes.length][this.passes.length];
+            for (int i = 0; i < this.passes.length; i++) {
+                for (int j = i + 1; j < this.passes.length; j++) {
+                    mayCreate[i][j] = mayOverlap(this.passes[i].to, this.passes[j].from);
+                }
+            }
+        }
+
+        String relocate(String source) {
+            Edits edits = edits(source);
+            if (edits == null) {
+                return relocateInTurn(source);
+            }
+            StringBuilder relocated = new StringBuilder(source.length() + source.length() / 10);
+            int position = 0;
+            for (int i = 0; i < edits.size; i++) {
+                relocated.append(source, position, edits.starts[i]).append(edits.replacements[i]);
+                position = edits.ends[i];
+            }
+            return relocated.append(source, position, source.length()).toString();
+        }
+
+        void relocate(String source, Writer out) throws IOException {
+            Edits edits = edits(source);
+            if (edits == null) {
+                out.write(relocateInTurn(source));
+                return;
+            }
+            int position = 0;
+            for (int i = 0; i < edits.size; i++) {
+                out.write(source, position, edits.starts[i] - position);
+                out.write(edits.replacements[i]);
+                position = edits.ends[i];
+            }
+            out.write(source, position, source.length() - position);
+        }
+
+        /**
+         * Decides all the passes on the source.
+         *
+         * @return the edits of all the passes, or {@code null} if a pass depends on the edits of a previous one
+         */
+        private Edits edits(String source) {
+            IntList[] occurrences = automaton.find(source);
+            Edits edits = Edits.NONE;
+            boolean[] edited = new boolean[passes.length];
+            for (int i = 0; i < passes.length; i++) {
+                for (int j = 0; j < i; j++) {
+                    if (edited[j] && mayCreate[j][i]) {
+                        return null;
+                    }
+                }
+                Edits passEdits = passes[i].edits(source, occurrences[passes[i].pattern], edits);
+                if (passEdits == null) {
+                    return null;
+                }
+                edited[i] = passEdits.size > 0;
+                edits = edits.merge(passEdits);
+            }
+            return edits;
+        }
+
+        /**
+         * Applies the passes one after the other, when they cannot all be decided on the source.
+         */
+        private String relocateInTurn(String source) {
+            for (Pass pass : passes) {
+                IntList occurrences = new IntList();
+                for (int i = source.indexOf(pass.from); i >= 0; i = source.indexOf(pass.from, i + 1)) {
+                    occurrences.add(i);
+                }
+                Edits edits = pass.edits(source, occurrences, Edits.NONE);
+                if (edits.size > 0) {
+                    StringBuilder relocated = new StringBuilder(source.length() + source.length() / 10);
+                    int position = 0;
+                    for (int i = 0; i < edits.size; i++) {
+                        relocated.append(source, position, edits.starts[i]).append(edits.replacements[i]);
+                        position = edits.ends[i];
+                    }
+                    source = relocated.append(source, position, source.length()).toString();
+                }
+            }
+            return source;
+        }
+
+        /**
+         * @return whether inserting a replacement into a text may make a pattern occur as a whole word where it did not
+         */
+        private static boolean mayOverlap(String replacement, String pattern) {
+            if (replacement.isEmpty() || pattern.contains(replacement)) {
+                return true;
+            }
+            int last = pattern.length() - 1;
+            for (int i = replacement.indexOf(pattern); i >= 0; i = replacement.indexOf(pattern, i + 1)) {
+                int end = i + pattern.length();
+                boolean startBoundary = i == 0 || mayBeBoundary(replacement.charAt(i - 1), pattern.charAt(0));
+                boolean endBoundary =
+                        end == replacement.length() || mayBeBoundary(pattern.charAt(last), replacement.charAt(end));
+                if (startBoundary && endBoundary) {
+                    return true;
+                }
+            }
+            for (int length = 1; length < Math.min(replacement.length(), pattern.length()); length++) {
+                // the pattern starting at the end of the replacement, or ending at its start
+                int start = replacement.length() - length;
+                if (replacement.startsWith(pattern.substring(0, length), start)
+                                && mayBeBoundary(replacement.charAt(start - 1), pattern.charAt(0))
+                        || replacement.startsWith(pattern.substring(pattern.length() - length))
+                                && mayBeBoundary(pattern.charAt(last), replacement.charAt(length))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return whether there may be a word boundary between the given characters
+         */
+        private static boolean mayBeBoundary(char before, char after) {
+            return before >= 0x80 || after >= 0x80 || isWordChar(before) != isWordChar(after);
+        }
+    }
+
+    /**
+     * Replacement of the occurrences of a pattern, like {@code SimpleRelocator.shadeSourceWithExcludes()}.
+     */
+    private static final class Pass {
+
+        private final String from;
+
+        private final String to;
+
+        /** Rests of the names after the pattern which are not relocated. */
+        private final String[] excludes;
+
+        private final int maxExcludeLength;
+
+        /** Number of the pattern in the automaton. */
+        private int pattern;
+
+        Pass(String from, String to, String[] excludes) {
+            this.from = from;
+            this.to = to;
+            this.excludes = excludes;
+            this.maxExcludeLength = Arrays.stream(excludes).mapToInt(String::length).max().orElse(0);
+        }
+
+        /**
+         * Decides which occurrences of the pattern are replaced, the same way splitting the text around the whole
+         * words matching the pattern and looking at the snippets before and after each one does.
+         *
+         * @param text the text
+         * @param occurrences the start of every occurrence of the pattern in the text, in ascending order
+         * @param previous the edits of the previous passes, which the decisions must not depend on
+         * @return the edits of this pass, or {@code null} if a decision depends on the previous edits
+         */
+        Edits edits(String text, IntList occurrences, Edits previous) {
+            int length = from.length();
+
+            // like Matcher.find(), looks for the next whole word from the end of the last one
+            IntList starts = new IntList();
+            int next = 0;
+            for (int i = 0; i < occurrences.size; i++) {
+                int start = occurrences.values[i];
+                if (previous.intersects(start - 1, start + length + 1)) {
+                    return null;
+                }
+                if (start >= next && isBoundary(text, start) && isBoundary(text, start + length)) {
+                    starts.add(start);
+                    next = start + length;
+                }
+            }
+            if (starts.size == 0) {
+                return Edits.NONE;
+            }
+
+            // String.split() drops the trailing empty snippets, and the matches before them
+            int kept = starts.size;
+            int end = text.length();
+            while (kept > 0 && starts.values[kept - 1] + length == end) {
+                end = starts.values[--kept];
+            }
+            if (previous.hasDeletions()) {
+                // the snippets before the deleted matches of a previous pass may have become empty
+                return null;
+            }
+
+            Edits edits = new Edits();
+            for (int i = 0; i < starts.size; i++) {
+                int start = starts.values[i];
+                int stop = start + length;
+                if (i >= kept) {
+                    edits.add(start, stop, "");
+                    continue;
+                }
+                int snippetStart = i == 0 ? 0 : starts.values[i - 1] + length;
+                int snippetEnd = i + 1 < starts.size ? starts.values[i + 1] : text.length();
+
+                boolean excluded = false;
+                if (excludes.length > 0) {
+                    if (previous.intersects(stop, Math.min(snippetEnd, stop + maxExcludeLength))) {
+                        return null;
+                    }
+                    for (String exclude : excludes) {
+                        if (stop + exclude.length() <= snippetEnd && text.startsWith(exclude, stop)) {
+                            excluded = true;
+                            break;
+                        }
+                    }
+                }
+                if (!excluded) {
+                    int contextStart = contextStart(text, snippetStart, start);
+                    if (previous.intersects(contextStart, start)) {
+                        return null;
+                    }
+                    excluded = isAfterQualifier(text, contextStart, start);
+                }
+                if (!excluded && !to.equals(from)) {
+                    edits.add(start, stop, to);
+                }
+            }
+            return edits;
+        }
+    }
+
+    /**
+     * @return whether there is a word boundary at the given position of the text, like {@code \b} in a regular
+     *     expression
+     */
+    private static boolean isBoundary(String text, int position) {
+        char before = position > 0 ? text.charAt(position - 1) : ' ';
+        char after = position < text.length() ? text.charAt(position) : ' ';
+        if (before >= 0x80 || after >= 0x80) {
+            // the word characters outside ASCII depend on the Java version
+            Matcher matcher = RX_BOUNDARY.matcher(text);
+            return matcher.useTransparentBounds(true).region(position, text.length()).lookingAt();
+        }
+        return isWordChar(before) != isWordChar(after);
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    /**
+     * Returns where the text looked at to decide whether an occurrence follows a qualifier starts: the last character
+     * of the snippet before the occurrence, or when the snippet ends with spaces, which may follow a Java keyword or a
+     * Javadoc link continued with stars, the spaces and stars ending the snippet and the word or link before them.
+     *
+     * @param text the text
+     * @param snippetStart the start of the snippet before the occurrence
+     * @param snippetEnd the start of the occurrence
+     * @return the start of the text looked at
+     */
+    private static int contextStart(String text, int snippetStart, int snippetEnd) {
+        if (snippetEnd == snippetStart || !isSpaceOrLineTerminator(text.charAt(snippetEnd - 1))) {
+            return Math.max(snippetStart, snippetEnd - 1);
+        }
+        int position = snippetEnd;
+        while (position > snippetStart
+                && (text.charAt(position - 1) == '*' || isSpaceOrLineTerminator(text.charAt(position - 1)))) {
+            position--;
+        }
+        int word = 0;
+        while (word < MAX_KEYWORD_CONTEXT_LENGTH
+                && position - word > snippetStart
+                && isWordChar(text.charAt(position - word - 1))) {
+            word++;
+        }
+        int length = Math.max(Math.min(word + 1, MAX_KEYWORD_CONTEXT_LENGTH), LINK_LENGTH);
+        return Math.max(snippetStart, position - length);
+    }
+
+    /**
+     * Same as {@link SimpleRelocator#isAfterQualifier(String)} for the given part of the text.
+     */
+    private static boolean isAfterQualifier(String text, int start, int end) {
+        if (start == end) {
+            return false;
+        }
+        char last = text.charAt(end - 1);
+        if (last == '.' || last == '/') {
+            return true;
+        }
+        if (!isSpaceOrLineTerminator(last)) {
+            return false;
+        }
+        String context = text.substring(start, end);
+        return SimpleRelocator.isAfterQualifier(RX_WHITESPACE.matcher(context).replaceAll(" "));
+    }
+
+    /**
+     * @return whether a character is whitespace or a line terminator, which may follow a Java keyword at the end of a
+     *     snippet
+     */
+    private static boolean isSpaceOrLineTerminator(char c) {
+        return isWhitespace(c) || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * @return whether a character matches {@code \s} in a regular expression
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Replacements of parts of a text, in ascending order and not overlapping.
+     */
+    private static final class Edits {
+
+        static final Edits NONE = new Edits();
+
+        private int[] starts = new int[8];
+
+        private int[] ends = new int[8];
+
+        private String[] replacements = new String[8];
+
+        private int size;
+
+        private boolean deletions;
+
+        void add(int start, int end, String replacement) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                replacements = Arrays.copyOf(replacements, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            replacements[size] = replacement;
+            size++;
+            deletions |= replacement.isEmpty();
+        }
+
+        boolean hasDeletions() {
+            return deletions;
+        }
+
+        /**
+         * @return whether an edit replaces a part of the given range of the text
+         */
+        boolean intersects(int start, int end) {
+            // the last edit starting before the end of the range
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (starts[middle] < end) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high >= 0 && ends[high] > start;
+        }
+
+        Edits merge(Edits other) {
+            if (other.size == 0) {
+                return this;
+            }
+            if (size == 0) {
+                return other;
+            }
+            Edits merged = new Edits();
+            int i = 0;
+            int j = 0;
+            while (i < size || j < other.size) {
+                if (j == other.size || i < size && starts[i] < other.starts[j]) {
+                    merged.add(starts[i], ends[i], replacements[i]);
+                    i++;
+                } else {
+                    merged.add(other.starts[j], other.ends[j], other.replacements[j]);
+                    j++;
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton finding the occurrences of several patterns in a single scan of a text.
+     */
+    private static final class Automaton {
+
+        private static final int[] NONE = new int[0];
+
+        private final int[] lengths;
+
+        /** Sorted characters of the patterns, the columns of the transitions. */
+        private final char[] alphabet;
+
+        /** Column of each ASCII character, or -1 if it is not in the alphabet. */
+        private final int[] asciiColumns = new int[0x80];
+
+        /** Next state of each state for each character of the alphabet, following the failure links. */
+        private final int[][] transitions;
+
+        /** Numbers of the patterns ending at each state. */
+        private final int[][] outputs;
+
+        Automaton(List<String> patterns) {
+            this.lengths = patterns.stream().mapToInt(String::length).toArray();
+            this.alphabet = String.join("", patterns)
+                    .chars()
+                    .distinct()
+                    .sorted()
+                    .collect(StringBuilder::new, (chars, c) -> chars.append((char) c), StringBuilder::append)
+                    .toString()
+                    .toCharArray();
+            for (char c = 0; c < asciiColumns.length; c++) {
+                asciiColumns[c] = Arrays.binarySearch(alphabet, c);
+            }
+
+            // the trie of the patterns
+            List<int[]> trie = new ArrayList<>();
+            List<int[]> out = new ArrayList<>();
+            trie.add(newState());
+            out.add(NONE);
+            for (int pattern = 0; pattern < patterns.size(); pattern++) {
+                int state = 0;
+                for (char c : patterns.get(pattern).toCharArray()) {
+                    int column = Arrays.binarySearch(alphabet, c);
+                    if (trie.get(state)[column] < 0) {
+                        trie.get(state)[column] = trie.size();
+                        trie.add(newState());
+                        out.add(NONE);
+                    }
+                    state = trie.get(state)[column];
+                }
+                out.set(state, append(out.get(state), pattern));
+            }
+
+            // the failure links, breadth first, turning the trie into transitions
+            int[] failures = new int[trie.size()];
+            int[] queue = new int[trie.size()];
+            int head = 0;
+            int tail = 0;
+            int[] root = trie.get(0);
+            for (int column = 0; column < alphabet.length; column++) {
+                if (root[column] < 0) {
+                    root[column] = 0;
+                } else {
+                    queue[tail++] = root[column];
+                }
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                int[] next = trie.get(state);
+                for (int column = 0; column < alphabet.length; column++) {
+                    int failure = trie.get(failures[state])[column];
+                    if (next[column] < 0) {
+                        next[column] = failure;
+                    } else {
+                        failures[next[column]] = failure;
+                        int[] outputs = out.get(next[column]);
+                        for (int pattern : out.get(failure)) {
+                            outputs = append(outputs, pattern);
+                        }
+                        out.set(next[column], outputs);
+                        queue[tail++] = next[column];
+                    }
+                }
+            }
+            this.transitions = trie.toArray(new int[0][]);
+            this.outputs = out.toArray(new int[0][]);
+        }
+
+        private int[] newState() {
+            int[] state = new int[alphabet.length];
+            Arrays.fill(state, -1);
+            return state;
+        }
+
+        private static int[] append(int[] array, int value) {
+            int[] result = Arrays.copyOf(array, array.length + 1);
+            result[array.length] = value;
+            return result;
+        }
+
+        /**
+         * @return the start of every occurrence of each pattern in the text, in ascending order
+         */
+        IntList[] find(String text) {
+            IntList[] occurrences = new IntList[lengths.length];
+            for (int i = 0; i < occurrences.length; i++) {
+                occurrences[i] = new IntList();
+            }
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int column = c < asciiColumns.length ? asciiColumns[c] : Arrays.binarySearch(alphabet, c);
+                state = column < 0 ? 0 : transitions[state][column];
+                for (int pattern : outputs[state]) {
+                    occurrences[pattern].add(i + 1 - lengths[pattern]);
+                }
+            }
+            return occurrences;
+        }
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[8];
+
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
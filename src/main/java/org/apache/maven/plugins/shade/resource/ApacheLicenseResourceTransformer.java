@@ -42,6 +42,11 @@ public class ApacheLicenseResourceTransformer extends AbstractCompatibilityTrans
                 || LICENSE_MD_PATH.regionMatches(true, 0, resource, 0, LICENSE_MD_PATH.length());
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(LICENSE_PATH).or(ResourceSelector.prefixes(LICENSE_TXT_PATH, LICENSE_MD_PATH));
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
@@ -86,6 +86,11 @@ public class ApacheNoticeResourceTransformer extends AbstractCompatibilityTransf
                 || NOTICE_MD_PATH.equalsIgnoreCase(resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(NOTICE_PATH, NOTICE_TXT_PATH, NOTICE_MD_PATH);
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
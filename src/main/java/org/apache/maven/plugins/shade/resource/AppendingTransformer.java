@@ -19,6 +19,7 @@
 package org.apache.maven.plugins.shade.resource;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -31,10 +32,21 @@ import org.codehaus.plexus.util.IOUtil;
 /**
  * A resource processor that appends content for a resource, separated by a newline.
  */
-public class AppendingTransformer extends AbstractCompatibilityTransformer {
+public class AppendingTransformer extends AbstractCompatibilityTransformer
+        implements ParallelResourceTransformer<AppendingTransformer.Accumulator>, SpillingResourceTransformer {
     String resource;
 
-    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    /**
+     * The number of bytes of appended content kept in memory, past which the content is kept in a temporary file.
+     */
+    long memoryThreshold = SpillingBuffer.DEFAULT_MEMORY_THRESHOLD;
+
+    /**
+     * The directory of the temporary file, the system temporary directory if not set.
+     */
+    File spillDirectory;
+
+    SpillingBuffer data;
 
     private long time = Long.MIN_VALUE;
 
@@ -43,19 +55,69 @@ public class AppendingTransformer extends AbstractCompatibilityTransformer {
         return resource != null && resource.equalsIgnoreCase(r);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(resource);
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    /**
+     * @return the directory of the temporary file keeping the appended content past the memory threshold, or
+     *     {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory of the temporary file keeping the appended content past the memory
+     *     threshold, or {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
-        IOUtil.copy(is, data);
+        // appended directly, so that a large resource is not held in memory by an accumulator
+        IOUtil.copy(is, buffer());
         data.write('\n');
         if (time > this.time) {
             this.time = time;
         }
     }
 
+    @Override
+    public void processResource(
+            Accumulator accumulator, String resource, InputStream is, List<Relocator> relocators, long time)
+            throws IOException {
+        IOUtil.copy(is, accumulator.data);
+        accumulator.data.write('\n');
+        if (time > accumulator.time) {
+            accumulator.time = time;
+        }
+    }
+
+    @Override
+    public void combine(Accumulator accumulator) throws IOException {
+        accumulator.data.writeTo(buffer());
+        if (accumulator.time > this.time) {
+            this.time = accumulator.time;
+        }
+    }
+
     @Override
     public boolean hasTransformedResource() {
-        return data.size() > 0;
+        return data != null && data.size() > 0;
     }
 
     @Override
@@ -64,7 +126,40 @@ public class AppendingTransformer extends AbstractCompatibilityTransformer {
         jarEntry.setTime(time);
         jos.putNextEntry(jarEntry);
 
-        jos.write(data.toByteArray());
+        data.writeTo(jos);
         data.reset();
     }
+
+    /**
+     * Discards the appended content which was not written, deleting its temporary file. The shader calls this once the
+     * uber JAR is written, or when shading fails.
+     *
+     * @since 3.7.0
+     */
+    @Override
+    public void close() throws IOException {
+        if (data != null) {
+            data.close();
+        }
+    }
+
+    private SpillingBuffer buffer() {
+        if (data == null) {
+            data = new SpillingBuffer(memoryThreshold, spillDirectory);
+        }
+        return data;
+    }
+
+    /**
+     * The content of some resources.
+     *
+     * @since 3.7.0
+     */
+    public static final class Accumulator {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private long time = Long.MIN_VALUE;
+
+        private Accumulator() {}
+    }
 }
@@ -18,30 +18,30 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.Writer;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.codehaus.plexus.util.ReaderFactory;
-import org.codehaus.plexus.util.WriterFactory;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
-import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
-import org.codehaus.plexus.util.xml.Xpp3DomWriter;
 
 /**
  * A resource processor that aggregates plexus <code>components.xml</code> files.
  */
 public class ComponentsXmlResourceTransformer extends AbstractCompatibilityTransformer {
-    private Map<String, Xpp3Dom> components = new LinkedHashMap<>();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final String INDENT = "  ";
+
+    private Map<String, Component> components = new LinkedHashMap<>();
 
     private long time = Long.MIN_VALUE;
 
@@ -52,72 +52,116 @@ public class ComponentsXmlResourceTransformer extends AbstractCompatibilityTrans
         return COMPONENTS_XML_PATH.equals(resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(COMPONENTS_XML_PATH);
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
-        Xpp3Dom newDom;
+        boolean hasComponents = false;
 
         try {
-            BufferedInputStream bis = new BufferedInputStream(is) {
-                @Override
-                public void close() throws IOException {
-                    // leave ZIP open
+            XMLStreamReader reader = XmlMergeWriter.newReader(is, true, true);
+            try {
+                XmlMergeWriter.moveToRootElement(reader);
+                while (XmlMergeWriter.nextChildElement(reader)) {
+                    if (!"components".equals(reader.getLocalName())) {
+                        XmlMergeWriter.skipElement(reader);
+                        continue;
+                    }
+                    hasComponents = true;
+                    while (XmlMergeWriter.nextChildElement(reader)) {
+                        if ("component".equals(reader.getLocalName())) {
+                            addComponent(reader, relocators);
+                        } else {
+                            XmlMergeWriter.skipElement(reader);
+                        }
+                    }
                 }
-            };
-
-            Reader reader = ReaderFactory.newXmlReader(bis);
-
-            newDom = Xpp3DomBuilder.build(reader);
+            } finally {
+                reader.close();
+            }
         } catch (Exception e) {
             throw new IOException("Error parsing components.xml in " + is, e);
         }
 
         // Only try to merge in components if there are some elements in the component-set
-        if (newDom.getChild("components") == null) {
+        if (!hasComponents) {
             return;
         }
 
-        Xpp3Dom[] children = newDom.getChild("components").getChildren("component");
-
-        for (Xpp3Dom component : children) {
-            String role = getValue(component, "role");
-            role = getRelocatedClass(role, relocators);
-            setValue(component, "role", role);
-
-            String roleHint = getValue(component, "role-hint");
-
-            String impl = getValue(component, "implementation");
-            impl = getRelocatedClass(impl, relocators);
-            setValue(component, "implementation", impl);
+        if (time > this.time) {
+            this.time = time;
+        }
+    }
 
-            String key = role + ':' + roleHint;
-            if (components.containsKey(key)) {
-                // TODO: use the tools in Plexus to merge these properly. For now, I just need an all-or-nothing
-                // configuration carry over
+    /**
+     * Copies a component, relocating its role, its implementation and the roles of its requirements.
+     */
+    private void addComponent(XMLStreamReader reader, List<Relocator> relocators)
+            throws XMLStreamException, IOException {
+        Component component = new Component();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            component.attributes.add(new String[] {
+                XmlMergeWriter.qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                reader.getAttributeValue(i)
+            });
+        }
 
-                Xpp3Dom dom = components.get(key);
-                if (dom.getChild("configuration") != null) {
-                    component.addChild(dom.getChild("configuration"));
-                }
+        String[] roleAndHint = {null, null};
+        XmlMergeWriter.ValueMapper mapper = (path, attribute, value) -> {
+            if (attribute != null) {
+                return value;
             }
-
-            Xpp3Dom requirements = component.getChild("requirements");
-            if (requirements != null && requirements.getChildCount() > 0) {
-                for (int r = requirements.getChildCount() - 1; r >= 0; r--) {
-                    Xpp3Dom requirement = requirements.getChild(r);
-
-                    String requiredRole = getValue(requirement, "role");
-                    requiredRole = getRelocatedClass(requiredRole, relocators);
-                    setValue(requirement, "role", requiredRole);
+            if ("role".equals(path) || "implementation".equals(path)) {
+                value = getRelocatedClass(value, relocators);
+                if ("role".equals(path) && roleAndHint[0] == null) {
+                    roleAndHint[0] = value;
                 }
+            } else if ("role-hint".equals(path) && roleAndHint[1] == null) {
+                roleAndHint[1] = value;
+            } else if (XmlMergeWriter.matches(path, "requirements/*/role")) {
+                value = getRelocatedClass(value, relocators);
+            }
+            return value;
+        };
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        XmlMergeWriter writer = new XmlMergeWriter(content, LINE_SEPARATOR, INDENT, 3);
+        while (XmlMergeWriter.nextChildElement(reader)) {
+            String child = reader.getLocalName();
+            boolean configuration = component.configuration == null && "configuration".equals(child);
+            writer.flush();
+            int start = content.size();
+            // the paths are relative to the component rather than to its copied child
+            writer.copyElement(
+                    reader,
+                    (path, attribute, value) ->
+                            mapper.map(path.isEmpty() ? child : child + '/' + path, attribute, value));
+            writer.flush();
+            if (configuration) {
+                byte[] bytes = content.toByteArray();
+                component.configuration = new byte[content.size() - start];
+                System.arraycopy(bytes, start, component.configuration, 0, component.configuration.length);
             }
-
-            components.put(key, component);
         }
 
-        if (time > this.time) {
-            this.time = time;
+        String key = (roleAndHint[0] != null ? roleAndHint[0] : "") + ':'
+                + (roleAndHint[1] != null ? roleAndHint[1] : "");
+        Component previous = components.get(key);
+        if (previous != null && previous.configuration != null) {
+            // TODO: use the tools in Plexus to merge these properly. For now, I just need an all-or-nothing
+            // configuration carry over
+            content.write(previous.configuration);
+            if (component.configuration == null) {
+                component.configuration = previous.configuration;
+            }
         }
+        component.content = content.toByteArray();
+
+        components.put(key, component);
     }
 
     @Override
@@ -142,19 +186,22 @@ public class ComponentsXmlResourceTransformer extends AbstractCompatibilityTrans
     byte[] getTransformedResource() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(1024 * 4);
 
-        try (Writer writer = WriterFactory.newXmlWriter(baos)) {
-            Xpp3Dom dom = new Xpp3Dom("component-set");
-
-            Xpp3Dom componentDom = new Xpp3Dom("components");
-
-            dom.addChild(componentDom);
-
-            for (Xpp3Dom component : components.values()) {
-                componentDom.addChild(component);
+        XmlMergeWriter writer = new XmlMergeWriter(baos, LINE_SEPARATOR, INDENT, 0);
+        writer.startElement("component-set");
+        writer.startElement("components");
+        for (Component component : components.values()) {
+            writer.startElement("component");
+            for (String[] attribute : component.attributes) {
+                writer.attribute(attribute[0], attribute[1]);
             }
-
-            Xpp3DomWriter.write(writer, dom);
+            if (component.content.length > 0) {
+                writer.append(component.content);
+            }
+            writer.endElement();
         }
+        writer.endElement();
+        writer.endElement();
+        writer.flush();
 
         return baos.toByteArray();
     }
@@ -171,19 +218,15 @@ public class ComponentsXmlResourceTransformer extends AbstractCompatibilityTrans
         return className;
     }
 
-    private static String getValue(Xpp3Dom dom, String element) {
-        Xpp3Dom child = dom.getChild(element);
+    /**
+     * A component, kept as the XML of its content rather than as a tree.
+     */
+    private static final class Component {
+        private final List<String[]> attributes = new ArrayList<>();
 
-        return (child != null && child.getValue() != null) ? child.getValue() : "";
-    }
-
-    private static void setValue(Xpp3Dom dom, String element, String value) {
-        Xpp3Dom child = dom.getChild(element);
-
-        if (child == null || value == null || value.length() <= 0) {
-            return;
-        }
+        private byte[] content;
 
-        child.setValue(value);
+        /** The XML of the first configuration of the component, or {@code null}. */
+        private byte[] configuration;
     }
 }
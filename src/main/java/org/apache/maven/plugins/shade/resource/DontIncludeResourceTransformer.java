@@ -51,6 +51,12 @@ public class DontIncludeResourceTransformer extends AbstractCompatibilityTransfo
         return false;
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.suffixes(resource != null && !resource.isEmpty() ? resource : null)
+                .or(ResourceSelector.suffixes(resources != null ? resources.toArray(new String[0]) : new String[0]));
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
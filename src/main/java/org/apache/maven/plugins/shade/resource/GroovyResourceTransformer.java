@@ -56,6 +56,11 @@ public class GroovyResourceTransformer extends AbstractCompatibilityTransformer
         return EXT_MODULE_NAME.equals(resource) || EXT_MODULE_NAME_LEGACY.equals(resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(EXT_MODULE_NAME, EXT_MODULE_NAME_LEGACY);
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
@@ -45,6 +45,11 @@ public class IncludeResourceTransformer extends AbstractCompatibilityTransformer
         return false;
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.none();
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
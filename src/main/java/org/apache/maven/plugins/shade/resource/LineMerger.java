@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.relocation.RelocatorTrie;
+
+/**
+ * Merges resources listing a class name per line, like service files and the Sisu index: reads the lines of each
+ * resource with a {@link LineReader}, relocates them with the relocators compiled into a {@link RelocatorTrie}, and
+ * adds them to a {@link LineSet}.
+ * <p>
+ * A line is relocated by each relocator relocating it as a class name, with
+ * {@link Relocator#applyToSourceContent(String)}. The relocators are compiled once for the list they are given in, so
+ * this class may be used by several threads at once.
+ */
+final class LineMerger {
+
+    private volatile CompiledRelocators compiled;
+
+    /**
+     * @param in the resource
+     * @param relocators the relocators
+     * @param lines the lines to add the lines of the resource to
+     * @throws IOException if the resource cannot be read
+     */
+    void merge(InputStream in, List<Relocator> relocators, LineSet lines) throws IOException {
+        RelocatorTrie trie = relocators.isEmpty() ? null : compile(relocators);
+        LineReader reader = new LineReader(in);
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            lines.add(trie != null ? trie.relocateClassLine(line) : line);
+        }
+    }
+
+    private RelocatorTrie compile(List<Relocator> relocators) {
+        CompiledRelocators compiled = this.compiled;
+        if (compiled == null || compiled.relocators != relocators) {
+            compiled = new CompiledRelocators(relocators);
+            this.compiled = compiled;
+        }
+        return compiled.trie;
+    }
+
+    private static final class CompiledRelocators {
+
+        private final List<Relocator> relocators;
+
+        private final RelocatorTrie trie;
+
+        CompiledRelocators(List<Relocator> relocators) {
+            this.relocators = relocators;
+            this.trie = RelocatorTrie.compile(relocators);
+        }
+    }
+}
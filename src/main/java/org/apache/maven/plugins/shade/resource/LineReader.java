@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Reads the lines of a UTF-8 stream, like {@link java.util.Scanner#nextLine()} does, but looking for the line
+ * terminators in the bytes of the stream rather than with regular expressions.
+ * <p>
+ * Lines are terminated by a line feed, a carriage return or both, and by the Unicode line terminators U+0085, U+2028
+ * and U+2029. Malformed input is replaced, and the stream is not closed.
+ */
+final class LineReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    /** Whether the last line ended with a carriage return, so that a line feed right after it ends no line. */
+    private boolean afterCarriageReturn;
+
+    /** Lines split at Unicode line terminators, not yet read. */
+    private final Deque<String> pending = new ArrayDeque<>();
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the next line, without its terminator, or {@code null} at the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    String readLine() throws IOException {
+        if (!pending.isEmpty()) {
+            return pending.poll();
+        }
+        if (afterCarriageReturn) {
+            afterCarriageReturn = false;
+            if (fill(position + 1) && buffer[position] == '\n') {
+                position++;
+            }
+        }
+
+        int length = 0;
+        boolean ascii = true;
+        while (true) {
+            if (position + length == limit && !fill(position + length + 1)) {
+                return length == 0 ? null : line(length, ascii, true);
+            }
+            byte b = buffer[position + length];
+            if (b == '\n' || b == '\r') {
+                afterCarriageReturn = b == '\r';
+                String line = line(length, ascii, false);
+                position++;
+                return line;
+            }
+            ascii &= b >= 0;
+            length++;
+        }
+    }
+
+    private String line(int length, boolean ascii, boolean last) {
+        int start = position;
+        position += length;
+        if (ascii) {
+            return new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        }
+        return split(new String(buffer, start, length, StandardCharsets.UTF_8), last);
+    }
+
+    /**
+     * Splits a line at the Unicode line terminators.
+     *
+     * @param last whether the line ends the stream without a terminator
+     */
+    private String split(String line, boolean last) {
+        int from = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                pending.add(line.substring(from, i));
+                from = i + 1;
+            }
+        }
+        if (from == 0) {
+            return line;
+        }
+        // like a line terminator at the end of the stream, a Unicode one ends no empty line there
+        if (!last || from < line.length()) {
+            pending.add(line.substring(from));
+        }
+        return pending.poll();
+    }
+
+    /**
+     * Reads the stream until the buffer holds the given number of bytes, keeping the bytes from the current position.
+     *
+     * @return {@code false} if the stream ends before
+     */
+    private boolean fill(int required) throws IOException {
+        while (limit < required) {
+            if (eof) {
+                return false;
+            }
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                required -= position;
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lines of text merged from resources, in the order they are added, kept as their UTF-8 bytes one after the other, each
+ * followed by a line feed, instead of as a {@link String} each. A set drops the lines it already has, looking them up
+ * in an open addressing hash table of their numbers. This class is not thread-safe.
+ */
+final class LineSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Whether lines already added are dropped. */
+    private final boolean distinct;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY * 32];
+
+    /** Start of each line in the bytes, a line and its line feed end at the start of the next one. */
+    private int[] starts = new int[INITIAL_CAPACITY + 1];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /** Number of each line plus one, at the slot of its hash, or 0 for an empty slot. */
+    private int[] slots;
+
+    /**
+     * @param distinct whether lines already added are dropped, like in a {@link java.util.LinkedHashSet}, or kept, like
+     *     in a {@link java.util.List}
+     */
+    LineSet(boolean distinct) {
+        this.distinct = distinct;
+        this.slots = distinct ? new int[INITIAL_CAPACITY * 2] : null;
+    }
+
+    /**
+     * @param line the line to add
+     */
+    void add(String line) {
+        int end = starts[size];
+        ensureCapacity(end + line.length() * 3 + 1);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = line.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(end + encoded.length + 1);
+                System.arraycopy(encoded, 0, bytes, end, encoded.length);
+                end += encoded.length;
+                break;
+            }
+            bytes[end++] = (byte) c;
+        }
+        bytes[end++] = '\n';
+        commit(end);
+    }
+
+    /**
+     * @param lines the lines to add, in their order
+     */
+    void addAll(LineSet lines) {
+        for (int index = 0; index < lines.size; index++) {
+            int from = lines.starts[index];
+            int length = lines.starts[index + 1] - from;
+            int end = starts[size];
+            ensureCapacity(end + length);
+            System.arraycopy(lines.bytes, from, bytes, end, length);
+            commit(end + length);
+        }
+    }
+
+    /**
+     * @return {@code true} if there is no line
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Writes the lines, each followed by a line feed, or a single line feed if there is no line, like writing
+     * {@code String.join("\n", lines) + "\n"} would.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream fails
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (size == 0) {
+            out.write('\n');
+        } else {
+            out.write(bytes, 0, starts[size]);
+        }
+    }
+
+    /**
+     * Removes all the lines.
+     */
+    void clear() {
+        bytes = new byte[INITIAL_CAPACITY * 32];
+        starts = new int[INITIAL_CAPACITY + 1];
+        hashes = new int[INITIAL_CAPACITY];
+        size = 0;
+        slots = distinct ? new int[INITIAL_CAPACITY * 2] : null;
+    }
+
+    /**
+     * Keeps the line written with its line feed after the last line, up to the given end, unless it is already there.
+     */
+    private void commit(int end) {
+        int start = starts[size];
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = -1;
+        if (distinct) {
+            slot = find(hash, start, end);
+            if (slots[slot] != 0) {
+                return;
+            }
+        }
+
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            starts = Arrays.copyOf(starts, size * 2 + 1);
+        }
+        hashes[size] = hash;
+        starts[++size] = end;
+
+        if (distinct) {
+            slots[slot] = size;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+        }
+    }
+
+    /**
+     * @return the slot of the line, or the empty slot where it belongs
+     */
+    private int find(int hash, int start, int end) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = slot + 1 & mask) {
+            int index = slots[slot] - 1;
+            if (index < 0 || hashes[index] == hash && equalsLine(index, start, end)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean equalsLine(int index, int start, int end) {
+        int from = starts[index];
+        int to = starts[index + 1];
+        if (to - from != end - start) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != bytes[start++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = mix(hashes[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = slot + 1 & mask;
+            }
+            slots[slot] = index + 1;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, capacity));
+        }
+    }
+
+    private static int mix(int hash) {
+        // CHECKSTYLE_OFF: MagicNumber
+        hash *= 0x9E3779B9;
+        return hash ^ hash >>> 16;
+        // CHECKSTYLE_ON: MagicNumber
+    }
+}
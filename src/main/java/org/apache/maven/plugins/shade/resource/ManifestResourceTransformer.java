@@ -76,6 +76,11 @@ public class ManifestResourceTransformer extends AbstractCompatibilityTransforme
         return JarFile.MANIFEST_NAME.equalsIgnoreCase(resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(JarFile.MANIFEST_NAME);
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
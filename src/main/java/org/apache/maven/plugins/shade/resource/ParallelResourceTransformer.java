@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+
+/**
+ * Transform resources in parallel: each resource is processed into an accumulator of its own, which may happen on any
+ * thread, then the accumulators are combined into the transformer one after the other, in the order of the resources
+ * in the shaded JARs. The transformed resources thus do not depend on the number of threads.
+ *
+ * @param <A> the type of the accumulators
+ * @since 3.7.0
+ */
+public interface ParallelResourceTransformer<A> extends ReproducibleResourceTransformer {
+    /**
+     * @return a new empty accumulator
+     */
+    A newAccumulator();
+
+    /**
+     * Transform an individual resource into an accumulator. This may be called by several threads at once, each with
+     * an accumulator of its own, so it must not change the state of the transformer.
+     * @param accumulator the accumulator of the resource
+     * @param resource The resource name
+     * @param is An input stream for the resource, the implementation should *not* close this stream
+     * @param relocators  A list of relocators
+     * @param time the time of the resource to process
+     * @throws IOException When the IO blows up
+     */
+    void processResource(A accumulator, String resource, InputStream is, List<Relocator> relocators, long time)
+            throws IOException;
+
+    /**
+     * Adds the resources of an accumulator to the transformer. This is called by a single thread, in the order of the
+     * resources, before {@link #modifyOutputStream(java.util.jar.JarOutputStream)}.
+     * @param accumulator an accumulator which the resources were processed into
+     * @throws IOException When the IO blows up
+     */
+    void combine(A accumulator) throws IOException;
+
+    @Override
+    default void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
+            throws IOException {
+        A accumulator = newAccumulator();
+        processResource(accumulator, resource, is, relocators, time);
+        combine(accumulator);
+    }
+}
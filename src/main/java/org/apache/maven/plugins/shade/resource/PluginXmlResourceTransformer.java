@@ -18,23 +18,18 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.Writer;
-import java.util.ArrayList;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.codehaus.plexus.util.ReaderFactory;
-import org.codehaus.plexus.util.WriterFactory;
-import org.codehaus.plexus.util.xml.Xpp3Dom;
-import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
-import org.codehaus.plexus.util.xml.Xpp3DomWriter;
 
 /**
  * A resource processor that aggregates Maven <code>plugin.xml</code> files.
@@ -42,8 +37,22 @@ import org.codehaus.plexus.util.xml.Xpp3DomWriter;
  * @author Robert Scholte
  * @since 3.0
  */
-public class PluginXmlResourceTransformer extends AbstractCompatibilityTransformer {
-    private List<Xpp3Dom> mojos = new ArrayList<>();
+public class PluginXmlResourceTransformer extends AbstractCompatibilityTransformer
+        implements SpillingResourceTransformer {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final String INDENT = "  ";
+
+    /**
+     * The directory of the temporary file keeping the mojos past the memory threshold, the system temporary directory
+     * if not set.
+     */
+    private File spillDirectory;
+
+    /** The XML of the mojos, copied as the plugin descriptors are parsed, {@code null} until a descriptor is. */
+    private SpillingBuffer mojos;
+
+    private XmlMergeWriter mojosWriter;
 
     private long time = Long.MIN_VALUE;
 
@@ -54,107 +63,132 @@ public class PluginXmlResourceTransformer extends AbstractCompatibilityTransform
         return PLUGIN_XML_PATH.equals(resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(PLUGIN_XML_PATH);
+    }
+
+    /**
+     * @return the directory of the temporary file keeping the mojos past the memory threshold, or {@code null} for the
+     *     system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory of the temporary file keeping the mojos past the memory threshold, or
+     *     {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
-        Xpp3Dom newDom;
+        XmlMergeWriter.ValueMapper mapper = (path, attribute, value) -> {
+            if (attribute == null
+                            && (path.equals("implementation")
+                                    || XmlMergeWriter.matches(path, "parameters/*/type")
+                                    || XmlMergeWriter.matches(path, "requirements/*/role"))
+                    || "implementation".equals(attribute) && XmlMergeWriter.matches(path, "configuration/*")) {
+                return getRelocatedClass(value, relocators);
+            }
+            return value;
+        };
 
+        if (mojos == null) {
+            mojos = new SpillingBuffer(SpillingBuffer.DEFAULT_MEMORY_THRESHOLD, spillDirectory);
+            mojosWriter = new XmlMergeWriter(mojos, LINE_SEPARATOR, INDENT, 2);
+        }
+
+        boolean hasMojos = false;
         try {
-            BufferedInputStream bis = new BufferedInputStream(is) {
-                @Override
-                public void close() throws IOException {
-                    // leave ZIP open
+            XMLStreamReader reader = XmlMergeWriter.newReader(is, true, true);
+            try {
+                XmlMergeWriter.moveToRootElement(reader);
+                while (XmlMergeWriter.nextChildElement(reader)) {
+                    if (!"mojos".equals(reader.getLocalName())) {
+                        XmlMergeWriter.skipElement(reader);
+                        continue;
+                    }
+                    hasMojos = true;
+                    while (XmlMergeWriter.nextChildElement(reader)) {
+                        if ("mojo".equals(reader.getLocalName())) {
+                            mojosWriter.copyElement(reader, mapper);
+                        } else {
+                            XmlMergeWriter.skipElement(reader);
+                        }
+                    }
                 }
-            };
-
-            Reader reader = ReaderFactory.newXmlReader(bis);
-
-            newDom = Xpp3DomBuilder.build(reader);
+            } finally {
+                reader.close();
+            }
+            mojosWriter.flush();
         } catch (Exception e) {
             throw new IOException("Error parsing plugin.xml in " + is, e);
         }
 
         // Only try to merge in mojos if there are some elements in the plugin
-        if (newDom.getChild("mojos") == null) {
-            return;
-        }
-
-        if (time > this.time) {
+        if (hasMojos && time > this.time) {
             this.time = time;
         }
-
-        for (Xpp3Dom mojo : newDom.getChild("mojos").getChildren("mojo")) {
-
-            String impl = getValue(mojo, "implementation");
-            impl = getRelocatedClass(impl, relocators);
-            setValue(mojo, "implementation", impl);
-
-            Xpp3Dom parameters = mojo.getChild("parameters");
-            if (parameters != null) {
-                for (Xpp3Dom parameter : parameters.getChildren()) {
-                    String type = getValue(parameter, "type");
-                    type = getRelocatedClass(type, relocators);
-                    setValue(parameter, "type", type);
-                }
-            }
-
-            Xpp3Dom configuration = mojo.getChild("configuration");
-            if (configuration != null) {
-                for (Xpp3Dom configurationEntry : configuration.getChildren()) {
-                    String implementation = getAttribute(configurationEntry, "implementation");
-                    implementation = getRelocatedClass(implementation, relocators);
-                    setAttribute(configurationEntry, "implementation", implementation);
-                }
-            }
-
-            Xpp3Dom requirements = mojo.getChild("requirements");
-            if (requirements != null && requirements.getChildCount() > 0) {
-                for (Xpp3Dom requirement : requirements.getChildren()) {
-                    String requiredRole = getValue(requirement, "role");
-                    requiredRole = getRelocatedClass(requiredRole, relocators);
-                    setValue(requirement, "role", requiredRole);
-                }
-            }
-            mojos.add(mojo);
-        }
     }
 
     @Override
     public void modifyOutputStream(JarOutputStream jos) throws IOException {
-        byte[] data = getTransformedResource();
-
         JarEntry jarEntry = new JarEntry(PLUGIN_XML_PATH);
         jarEntry.setTime(time);
         jos.putNextEntry(jarEntry);
 
-        jos.write(data);
+        writeTransformedResource(jos);
 
-        mojos.clear();
+        if (mojos != null) {
+            mojos.reset();
+        }
     }
 
     @Override
     public boolean hasTransformedResource() {
-        return !mojos.isEmpty();
+        return mojos != null && mojos.size() > 0;
+    }
+
+    /**
+     * Discards the mojos which were not written, deleting their temporary file. The shader calls this once the uber JAR
+     * is written, or when shading fails.
+     *
+     * @since 3.7.0
+     */
+    @Override
+    public void close() throws IOException {
+        if (mojos != null) {
+            mojos.close();
+        }
     }
 
     byte[] getTransformedResource() throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream(1024 * 4);
 
-        try (Writer writer = WriterFactory.newXmlWriter(baos)) {
-            Xpp3Dom dom = new Xpp3Dom("plugin");
-
-            Xpp3Dom componentDom = new Xpp3Dom("mojos");
+        writeTransformedResource(baos);
 
-            dom.addChild(componentDom);
-
-            for (Xpp3Dom mojo : mojos) {
-                componentDom.addChild(mojo);
-            }
+        return baos.toByteArray();
+    }
 
-            Xpp3DomWriter.write(writer, dom);
+    private void writeTransformedResource(OutputStream out) throws IOException {
+        XmlMergeWriter writer = new XmlMergeWriter(out, LINE_SEPARATOR, INDENT, 0);
+        writer.startElement("plugin");
+        writer.startElement("mojos");
+        if (hasTransformedResource()) {
+            writer.append(mojos);
         }
-
-        return baos.toByteArray();
+        writer.endElement();
+        writer.endElement();
+        writer.flush();
     }
 
     private String getRelocatedClass(String className, List<Relocator> relocators) {
@@ -168,34 +202,4 @@ public class PluginXmlResourceTransformer extends AbstractCompatibilityTransform
 
         return className;
     }
-
-    private static String getValue(Xpp3Dom dom, String element) {
-        Xpp3Dom child = dom.getChild(element);
-
-        return (child != null && child.getValue() != null) ? child.getValue() : "";
-    }
-
-    private static void setValue(Xpp3Dom dom, String element, String value) {
-        Xpp3Dom child = dom.getChild(element);
-
-        if (child == null || value == null || value.length() <= 0) {
-            return;
-        }
-
-        child.setValue(value);
-    }
-
-    private static String getAttribute(Xpp3Dom dom, String attribute) {
-        return (dom.getAttribute(attribute) != null) ? dom.getAttribute(attribute) : "";
-    }
-
-    private static void setAttribute(Xpp3Dom dom, String attribute, String value) {
-        String attr = dom.getAttribute(attribute);
-
-        if (attr == null || value == null || value.length() <= 0) {
-            return;
-        }
-
-        dom.setAttribute(attribute, value);
-    }
 }
@@ -18,7 +18,7 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
@@ -37,11 +37,16 @@ import org.codehaus.plexus.util.IOUtil;
  * @author Robert Scholte
  * @since 3.0.0
  */
-public class ResourceBundleAppendingTransformer extends AbstractCompatibilityTransformer {
-    private Map<String, ByteArrayOutputStream> dataMap = new HashMap<>();
+public class ResourceBundleAppendingTransformer extends AbstractCompatibilityTransformer
+        implements SpillingResourceTransformer {
+    private Map<String, SpillingBuffer> dataMap = new HashMap<>();
 
     private Pattern resourceBundlePattern;
 
+    private long memoryThreshold = SpillingBuffer.DEFAULT_MEMORY_THRESHOLD;
+
+    private File spillDirectory;
+
     private long time = Long.MIN_VALUE;
 
     /**
@@ -52,17 +57,53 @@ public class ResourceBundleAppendingTransformer extends AbstractCompatibilityTra
         resourceBundlePattern = Pattern.compile(basename + "(_[a-zA-Z]+){0,3}\\.properties");
     }
 
+    /**
+     * @param memoryThreshold the number of bytes of each merged bundle kept in memory, past which the bundle is kept
+     *     in a temporary file
+     * @since 3.7.0
+     */
+    public void setMemoryThreshold(long memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * @return the directory of the temporary files keeping the merged bundles past the memory threshold, or
+     *     {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory of the temporary files keeping the merged bundles past the memory
+     *     threshold, or {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
     @Override
     public boolean canTransformResource(String r) {
         return resourceBundlePattern != null && resourceBundlePattern.matcher(r).matches();
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return resourceBundlePattern != null
+                ? ResourceSelector.prefixes(ResourceSelector.literalPrefix(resourceBundlePattern.pattern()))
+                : ResourceSelector.none();
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
-        ByteArrayOutputStream data = dataMap.get(resource);
+        SpillingBuffer data = dataMap.get(resource);
         if (data == null) {
-            data = new ByteArrayOutputStream();
+            data = new SpillingBuffer(memoryThreshold, spillDirectory);
             dataMap.put(resource, data);
         }
 
@@ -81,13 +122,34 @@ public class ResourceBundleAppendingTransformer extends AbstractCompatibilityTra
 
     @Override
     public void modifyOutputStream(JarOutputStream jos) throws IOException {
-        for (Map.Entry<String, ByteArrayOutputStream> dataEntry : dataMap.entrySet()) {
+        for (Map.Entry<String, SpillingBuffer> dataEntry : dataMap.entrySet()) {
             JarEntry jarEntry = new JarEntry(dataEntry.getKey());
             jarEntry.setTime(time);
             jos.putNextEntry(jarEntry);
 
-            jos.write(dataEntry.getValue().toByteArray());
+            dataEntry.getValue().writeTo(jos);
             dataEntry.getValue().reset();
         }
     }
+
+    /**
+     * Discards the merged bundles which were not written, deleting their temporary files. The shader calls this once
+     * the uber JAR is written, or when shading fails.
+     *
+     * @since 3.7.0
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (SpillingBuffer data : dataMap.values()) {
+            try {
+                data.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The resources a {@link ResourceTransformer} may transform, declared with
+ * {@link ResourceTransformer#getTransformedResources()} so that the transformer is only asked about these resources.
+ * <p>
+ * Resources are selected by their exact name, a prefix or a suffix of their name. Names are compared ignoring case,
+ * and {@link ResourceTransformer#canTransformResource(String)} is still asked about every selected resource, so a
+ * selector only has to select at least all the resources the transformer transforms.
+ *
+ * @since 3.7.0
+ */
+public final class ResourceSelector {
+
+    private static final ResourceSelector NONE =
+            new ResourceSelector(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+    private final List<String> names;
+
+    private final List<String> prefixes;
+
+    private final List<String> suffixes;
+
+    private ResourceSelector(List<String> names, List<String> prefixes, List<String> suffixes) {
+        this.names = names;
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+    }
+
+    /**
+     * @return a selector selecting no resource, for transformers which transform no resource
+     */
+    public static ResourceSelector none() {
+        return NONE;
+    }
+
+    /**
+     * @param names the names of the resources, {@code null} names are ignored
+     * @return a selector selecting the resources with one of the given names
+     */
+    public static ResourceSelector names(String... names) {
+        return new ResourceSelector(of(names), Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * @param prefixes the prefixes of the names of the resources, {@code null} prefixes are ignored
+     * @return a selector selecting the resources whose name starts with one of the given prefixes
+     */
+    public static ResourceSelector prefixes(String... prefixes) {
+        return new ResourceSelector(Collections.emptyList(), of(prefixes), Collections.emptyList());
+    }
+
+    /**
+     * @param suffixes the suffixes of the names of the resources, {@code null} suffixes are ignored
+     * @return a selector selecting the resources whose name ends with one of the given suffixes
+     */
+    public static ResourceSelector suffixes(String... suffixes) {
+        return new ResourceSelector(Collections.emptyList(), Collections.emptyList(), of(suffixes));
+    }
+
+    /**
+     * @param other another selector
+     * @return a selector selecting the resources selected by this selector or the other one
+     */
+    public ResourceSelector or(ResourceSelector other) {
+        return new ResourceSelector(
+                concat(names, other.names), concat(prefixes, other.prefixes), concat(suffixes, other.suffixes));
+    }
+
+    /**
+     * @return the exact names of the selected resources
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the prefixes of the names of the selected resources
+     */
+    public List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * @return the suffixes of the names of the selected resources
+     */
+    public List<String> getSuffixes() {
+        return suffixes;
+    }
+
+    /**
+     * Returns the longest prefix of the strings matching a regular expression which is plain text, e.g. {@code com}
+     * for {@code com.acme.Messages}.
+     *
+     * @param regex a regular expression
+     * @return the prefix, or the empty string
+     */
+    static String literalPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return "";
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if ("\\.[]{}()*+?^$".indexOf(regex.charAt(i)) >= 0) {
+                // the previous character may be optional or repeated
+                boolean quantified = "{*+?".indexOf(regex.charAt(i)) >= 0;
+                return regex.substring(0, quantified ? Math.max(0, i - 1) : i);
+            }
+        }
+        return regex;
+    }
+
+    private static List<String> of(String... strings) {
+        List<String> list = new ArrayList<>(Arrays.asList(strings));
+        list.removeIf(Objects::isNull);
+        return Collections.unmodifiableList(list);
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> list = new ArrayList<>(first);
+        list.addAll(second);
+        return Collections.unmodifiableList(list);
+    }
+}
@@ -42,4 +42,20 @@ public interface ResourceTransformer {
     boolean hasTransformedResource();
 
     void modifyOutputStream(JarOutputStream os) throws IOException;
+
+    /**
+     * Declares the resources this transformer may transform. The shader then only asks this transformer about the
+     * selected resources with {@link #canTransformResource(String)}, instead of about every resource. Transformers are
+     * still asked in their configured order, the first one able to transform a resource gets it.
+     * <p>
+     * A subclass overriding {@link #canTransformResource(String)} may transform other resources than its parent class,
+     * so the shader ignores the declared resources unless this method is overridden at least as deep as
+     * {@link #canTransformResource(String)}.
+     *
+     * @return the resources this transformer may transform, or {@code null} if it may transform any resource
+     * @since 3.7.0
+     */
+    default ResourceSelector getTransformedResources() {
+        return null;
+    }
 }
@@ -20,18 +20,14 @@ package org.apache.maven.plugins.shade.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.codehaus.plexus.util.IOUtil;
 
 /**
  * Resources transformer that relocates classes in META-INF/services and appends entries in META-INF/services resources
@@ -40,10 +36,13 @@ import org.codehaus.plexus.util.IOUtil;
  * META-INF/services/org.apache.maven.project.ProjectBuilder resource packaged into the resultant JAR produced by the
  * shading process.
  */
-public class ServicesResourceTransformer extends AbstractCompatibilityTransformer {
+public class ServicesResourceTransformer extends AbstractCompatibilityTransformer
+        implements ParallelResourceTransformer<ServicesResourceTransformer.Accumulator> {
     private static final String SERVICES_PATH = "META-INF/services";
 
-    private final Map<String, Set<String>> serviceEntries = new HashMap<>();
+    private final Map<String, LineSet> serviceEntries = new HashMap<>();
+
+    private final LineMerger lineMerger = new LineMerger();
 
     private long time = Long.MIN_VALUE;
 
@@ -53,7 +52,18 @@ public class ServicesResourceTransformer extends AbstractCompatibilityTransforme
     }
 
     @Override
-    public void processResource(String resource, InputStream is, final List<Relocator> relocators, long time)
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.prefixes(SERVICES_PATH);
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    @Override
+    public void processResource(
+            Accumulator accumulator, String resource, InputStream is, final List<Relocator> relocators, long time)
             throws IOException {
         resource = resource.substring(SERVICES_PATH.length() + 1);
         for (Relocator relocator : relocators) {
@@ -64,21 +74,21 @@ public class ServicesResourceTransformer extends AbstractCompatibilityTransforme
         }
         resource = SERVICES_PATH + '/' + resource;
 
-        Set<String> out = serviceEntries.computeIfAbsent(resource, k -> new LinkedHashSet<>());
+        LineSet out = accumulator.serviceEntries.computeIfAbsent(resource, k -> new LineSet(true));
+        lineMerger.merge(is, relocators, out);
 
-        Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name());
-        while (scanner.hasNextLine()) {
-            String relContent = scanner.nextLine();
-            for (Relocator relocator : relocators) {
-                if (relocator.canRelocateClass(relContent)) {
-                    relContent = relocator.applyToSourceContent(relContent);
-                }
-            }
-            out.add(relContent);
+        if (time > accumulator.time) {
+            accumulator.time = time;
         }
+    }
 
-        if (time > this.time) {
-            this.time = time;
+    @Override
+    public void combine(Accumulator accumulator) {
+        for (Map.Entry<String, LineSet> entry : accumulator.serviceEntries.entrySet()) {
+            serviceEntries.computeIfAbsent(entry.getKey(), k -> new LineSet(true)).addAll(entry.getValue());
+        }
+        if (accumulator.time > this.time) {
+            this.time = accumulator.time;
         }
     }
 
@@ -89,17 +99,30 @@ public class ServicesResourceTransformer extends AbstractCompatibilityTransforme
 
     @Override
     public void modifyOutputStream(JarOutputStream jos) throws IOException {
-        for (Map.Entry<String, Set<String>> entry : serviceEntries.entrySet()) {
+        for (Map.Entry<String, LineSet> entry : serviceEntries.entrySet()) {
             String key = entry.getKey();
-            Set<String> data = entry.getValue();
+            LineSet data = entry.getValue();
 
             JarEntry jarEntry = new JarEntry(key);
             jarEntry.setTime(time);
             jos.putNextEntry(jarEntry);
 
-            IOUtil.copy((String.join("\n", data) + "\n").getBytes(StandardCharsets.UTF_8), jos);
+            data.writeTo(jos);
             jos.flush();
             data.clear();
         }
     }
+
+    /**
+     * The service entries of some resources.
+     *
+     * @since 3.7.0
+     */
+    public static final class Accumulator {
+        private final Map<String, LineSet> serviceEntries = new LinkedHashMap<>();
+
+        private long time = Long.MIN_VALUE;
+
+        private Accumulator() {}
+    }
 }
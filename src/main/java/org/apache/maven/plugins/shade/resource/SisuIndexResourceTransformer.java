@@ -20,15 +20,11 @@ package org.apache.maven.plugins.shade.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.codehaus.plexus.util.IOUtil;
 
 /**
  * Resource transformer that relocates classes in {@code META-INF/sisu/javax.inject.Named} and appends resources
@@ -36,10 +32,13 @@ import org.codehaus.plexus.util.IOUtil;
  *
  * @since 3.3.0
  */
-public class SisuIndexResourceTransformer extends AbstractCompatibilityTransformer {
+public class SisuIndexResourceTransformer extends AbstractCompatibilityTransformer
+        implements ParallelResourceTransformer<SisuIndexResourceTransformer.Accumulator> {
     private static final String SISU_INDEX_PATH = "META-INF/sisu/javax.inject.Named";
 
-    private final ArrayList<String> indexEntries = new ArrayList<>();
+    private final LineSet indexEntries = new LineSet(false);
+
+    private final LineMerger lineMerger = new LineMerger();
 
     private long time = Long.MIN_VALUE;
 
@@ -48,23 +47,36 @@ public class SisuIndexResourceTransformer extends AbstractCompatibilityTransform
         return resource.equals(SISU_INDEX_PATH);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(SISU_INDEX_PATH);
+    }
+
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
     @Override
     public void processResource(
-            final String resource, final InputStream is, final List<Relocator> relocators, long time)
+            final Accumulator accumulator,
+            final String resource,
+            final InputStream is,
+            final List<Relocator> relocators,
+            long time)
             throws IOException {
-        Scanner scanner = new Scanner(is, StandardCharsets.UTF_8.name());
-        while (scanner.hasNextLine()) {
-            String relContent = scanner.nextLine();
-            for (Relocator relocator : relocators) {
-                if (relocator.canRelocateClass(relContent)) {
-                    relContent = relocator.applyToSourceContent(relContent);
-                }
-            }
-            indexEntries.add(relContent);
+        lineMerger.merge(is, relocators, accumulator.indexEntries);
+
+        if (time > accumulator.time) {
+            accumulator.time = time;
         }
+    }
 
-        if (time > this.time) {
-            this.time = time;
+    @Override
+    public void combine(final Accumulator accumulator) {
+        indexEntries.addAll(accumulator.indexEntries);
+        if (accumulator.time > this.time) {
+            this.time = accumulator.time;
         }
     }
 
@@ -78,8 +90,21 @@ public class SisuIndexResourceTransformer extends AbstractCompatibilityTransform
         JarEntry jarEntry = new JarEntry(SISU_INDEX_PATH);
         jarEntry.setTime(time);
         jos.putNextEntry(jarEntry);
-        IOUtil.copy((String.join("\n", indexEntries) + "\n").getBytes(StandardCharsets.UTF_8), jos);
+        indexEntries.writeTo(jos);
         jos.flush();
         indexEntries.clear();
     }
+
+    /**
+     * The index entries of some resources.
+     *
+     * @since 3.7.0
+     */
+    public static final class Accumulator {
+        private final LineSet indexEntries = new LineSet(false);
+
+        private long time = Long.MIN_VALUE;
+
+        private Accumulator() {}
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A buffer for the content of appended resources, kept in memory up to a threshold and in a temporary file past it,
+ * so that large resources are not held in memory. The content is streamed out of the buffer without being copied.
+ * The temporary file is deleted when the buffer is reset or closed, which the transformers using a buffer do when they
+ * are closed by the shader.
+ */
+final class SpillingBuffer extends OutputStream {
+
+    /** Default number of bytes kept in memory by a buffer. */
+    static final long DEFAULT_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+    private final long memoryThreshold;
+
+    private final File directory;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private Path file;
+
+    private OutputStream fileOut;
+
+    private long size;
+
+    /**
+     * @param memoryThreshold the number of bytes to keep in memory before spilling to a file
+     * @param directory the directory of the temporary file, or {@code null} for the default temporary directory
+     */
+    SpillingBuffer(long memoryThreshold, File directory) {
+        this.memoryThreshold = memoryThreshold;
+        this.directory = directory;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        spillIfNeeded(1);
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            memory.write(b);
+        }
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        spillIfNeeded(len);
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            memory.write(b, off, len);
+        }
+        size += len;
+    }
+
+    /**
+     * @return the number of bytes written since the last reset
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the content is in a temporary file
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Writes the content of this buffer to another stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the content cannot be read or written
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+            Files.copy(file, out);
+        } else {
+            memory.writeTo(out);
+        }
+    }
+
+    /**
+     * Discards the content of this buffer, deleting its temporary file.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    void reset() throws IOException {
+        memory.reset();
+        size = 0;
+        if (file != null) {
+            try {
+                if (fileOut != null) {
+                    fileOut.close();
+                }
+            } finally {
+                fileOut = null;
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reset();
+    }
+
+    private void spillIfNeeded(int len) throws IOException {
+        if (fileOut == null && size + len > memoryThreshold) {
+            file = directory != null
+                    ? Files.createTempFile(Files.createDirectories(directory.toPath()), "shade-", ".tmp")
+                    : Files.createTempFile("shade-", ".tmp");
+            fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+            memory.writeTo(fileOut);
+            // let the memory buffer be collected
+            memory = new ByteArrayOutputStream();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * A resource transformer keeping its merged content in temporary files past a memory threshold. The shader closes it
+ * once the uber JAR is written, or when shading fails, so that the temporary files are deleted.
+ *
+ * @since 3.7.0
+ */
+public interface SpillingResourceTransformer extends ResourceTransformer, Closeable {
+
+    /**
+     * @return the directory of the temporary files, or {@code null} for the system temporary directory
+     */
+    File getSpillDirectory();
+
+    /**
+     * @param spillDirectory the directory of the temporary files, or {@code null} for the system temporary directory
+     */
+    void setSpillDirectory(File spillDirectory);
+}
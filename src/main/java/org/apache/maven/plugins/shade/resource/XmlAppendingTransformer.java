@@ -18,38 +18,76 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.jdom2.Attribute;
-import org.jdom2.Content;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 /**
  * Appends multiple occurrences of some XML file.
+ * <p>
+ * The first occurrence is kept as is. The attributes of the root element of the other occurrences are added to the
+ * root element when it does not have them yet, and their child elements are appended to it. The child elements are
+ * copied while the occurrences are parsed, so that the occurrences are never held as trees.
  */
-public class XmlAppendingTransformer extends AbstractCompatibilityTransformer {
+public class XmlAppendingTransformer extends AbstractCompatibilityTransformer
+        implements SpillingResourceTransformer {
     public static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
 
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private static final String INDENT = "  ";
+
     boolean ignoreDtd = true;
 
     String resource;
 
-    Document doc;
+    /**
+     * The directory of the temporary file keeping the merged content past the memory threshold, the system temporary
+     * directory if not set.
+     */
+    File spillDirectory;
+
+    /** Qualified name of the root element, {@code null} until a resource is transformed. */
+    private String rootName;
+
+    /** Prefix and namespace URI of the root element, the empty string for none. */
+    private String rootPrefix;
+
+    private String rootNamespace;
+
+    /**
+     * Other namespaces declared by the root element, by prefix, the empty string for the default namespace: those of
+     * the first occurrence and those of the root attributes of the other occurrences.
+     */
+    private final SortedMap<String, String> rootNamespaces = new TreeMap<>();
+
+    /** Qualified name and value of the attributes of the root element, by namespace and local name. */
+    private final Map<String, String[]> rootAttributes = new LinkedHashMap<>();
+
+    /** DTD, comments and processing instructions before and after the root element of the first occurrence. */
+    private final List<String[]> prolog = new ArrayList<>();
+
+    private final List<String[]> epilog = new ArrayList<>();
+
+    /** Content of the root element. */
+    private SpillingBuffer content;
+
+    private XmlMergeWriter contentWriter;
 
     private long time = Long.MIN_VALUE;
 
@@ -58,59 +96,173 @@ public class XmlAppendingTransformer extends AbstractCompatibilityTransformer {
         return resource != null && resource.equalsIgnoreCase(r);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(resource);
+    }
+
+    /**
+     * @return the directory of the temporary file keeping the merged content past the memory threshold, or
+     *     {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory of the temporary file keeping the merged content past the memory threshold,
+     *     or {@code null} for the system temporary directory
+     * @since 3.7.0
+     */
+    @Override
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
     @Override
     public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
             throws IOException {
-        Document r;
         try {
-            SAXBuilder builder = new SAXBuilder(false);
-            builder.setExpandEntities(false);
-            if (ignoreDtd) {
-                builder.setEntityResolver(new EntityResolver() {
-                    @Override
-                    public InputSource resolveEntity(String publicId, String systemId)
-                            throws SAXException, IOException {
-                        return new InputSource(new StringReader(""));
-                    }
-                });
+            XMLStreamReader reader = XmlMergeWriter.newReader(is, ignoreDtd, false);
+            try {
+                append(reader);
+            } finally {
+                reader.close();
             }
-            r = builder.build(is);
-        } catch (JDOMException e) {
+        } catch (XMLStreamException e) {
             throw new RuntimeException("Error processing resource " + resource + ": " + e.getMessage(), e);
         }
 
-        if (doc == null) {
-            doc = r;
-        } else {
-            Element root = r.getRootElement();
+        if (time > this.time) {
+            this.time = time;
+        }
+    }
 
-            for (Iterator<Attribute> itr = root.getAttributes().iterator(); itr.hasNext(); ) {
-                Attribute a = itr.next();
-                itr.remove();
+    private void append(XMLStreamReader reader) throws XMLStreamException, IOException {
+        boolean first = rootName == null;
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            if (first) {
+                addMisc(reader, prolog);
+            }
+            reader.next();
+        }
 
-                Element mergedEl = doc.getRootElement();
-                Attribute mergedAtt = mergedEl.getAttribute(a.getName(), a.getNamespace());
-                if (mergedAtt == null) {
-                    mergedEl.setAttribute(a);
+        if (first) {
+            rootName = XmlMergeWriter.qualifiedName(reader.getPrefix(), reader.getLocalName());
+            rootPrefix = prefix(reader.getPrefix());
+            rootNamespace = reader.getNamespaceURI() != null ? reader.getNamespaceURI() : "";
+            content = new SpillingBuffer(SpillingBuffer.DEFAULT_MEMORY_THRESHOLD, spillDirectory);
+            contentWriter = new XmlMergeWriter(content, LINE_SEPARATOR, INDENT, 1, XmlMergeWriter.Style.JDOM);
+            contentWriter.namespaceInScope(rootPrefix, rootNamespace);
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                String prefix = prefix(reader.getNamespacePrefix(i));
+                rootNamespaces.put(prefix, reader.getNamespaceURI(i));
+                contentWriter.namespaceInScope(prefix, reader.getNamespaceURI(i));
+            }
+            if ("preserve".equals(reader.getAttributeValue(XMLConstants.XML_NS_URI, "space"))) {
+                contentWriter.preserveSpace();
+            }
+        }
+        // the namespaces of the other occurrences are declared by their child elements where they are used
+        mergeRootAttributes(reader);
+
+        // only the child elements of the other occurrences are appended
+        for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                contentWriter.copyElement(reader, null, true);
+            } else if (first) {
+                switch (event) {
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        contentWriter.text(reader.getText());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        contentWriter.cdata(reader.getText());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        contentWriter.comment(reader.getText());
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        contentWriter.processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        contentWriter.entityReference(reader.getLocalName());
+                        break;
+                    default:
+                        break;
                 }
             }
+        }
+        contentWriter.flush();
 
-            for (Iterator<Element> itr = root.getChildren().iterator(); itr.hasNext(); ) {
-                Content n = itr.next();
-                itr.remove();
+        if (first) {
+            while (reader.hasNext()) {
+                reader.next();
+                addMisc(reader, epilog);
+            }
+        }
+    }
 
-                doc.getRootElement().addContent(n);
+    private void mergeRootAttributes(XMLStreamReader reader) throws IOException {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String uri = reader.getAttributeNamespace(i);
+            String prefix = prefix(reader.getAttributePrefix(i));
+            String key = '{' + (uri != null ? uri : "") + '}' + reader.getAttributeLocalName(i);
+            if (rootAttributes.containsKey(key)) {
+                continue;
+            }
+            if (!prefix.isEmpty() && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                String bound = prefix.equals(rootPrefix) ? rootNamespace : rootNamespaces.putIfAbsent(prefix, uri);
+                if (bound == null) {
+                    contentWriter.namespaceInScope(prefix, uri);
+                } else if (!bound.equals(uri)) {
+                    throw new IOException("The prefix " + prefix + " of the attribute " + reader.getAttributeName(i)
+                            + " is bound to " + bound + " by the root element");
+                }
             }
+            rootAttributes.put(key, new String[] {
+                XmlMergeWriter.qualifiedName(prefix, reader.getAttributeLocalName(i)), reader.getAttributeValue(i)
+            });
         }
+    }
 
-        if (time > this.time) {
-            this.time = time;
+    private static void addMisc(XMLStreamReader reader, List<String[]> misc) {
+        switch (reader.getEventType()) {
+            case XMLStreamConstants.DTD:
+                misc.add(new String[] {"DTD", reader.getText()});
+                break;
+            case XMLStreamConstants.COMMENT:
+                misc.add(new String[] {"COMMENT", reader.getText()});
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                misc.add(new String[] {"PI", reader.getPITarget(), reader.getPIData()});
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeMisc(XmlMergeWriter writer, List<String[]> misc) throws IOException {
+        for (String[] node : misc) {
+            if ("DTD".equals(node[0])) {
+                writer.dtd(node[1]);
+            } else if ("COMMENT".equals(node[0])) {
+                writer.comment(node[1]);
+            } else {
+                writer.processingInstruction(node[1], node[2]);
+            }
         }
     }
 
+    private static String prefix(String prefix) {
+        return prefix != null ? prefix : "";
+    }
+
     @Override
     public boolean hasTransformedResource() {
-        return doc != null;
+        return rootName != null;
     }
 
     @Override
@@ -119,8 +271,37 @@ public class XmlAppendingTransformer extends AbstractCompatibilityTransformer {
         jarEntry.setTime(time);
         jos.putNextEntry(jarEntry);
 
-        new XMLOutputter(Format.getPrettyFormat()).output(doc, jos);
+        XmlMergeWriter writer = new XmlMergeWriter(jos, LINE_SEPARATOR, INDENT, 0, XmlMergeWriter.Style.JDOM);
+        writer.declaration();
+        writeMisc(writer, prolog);
+        writer.startElement(rootName);
+        writer.namespaces(rootPrefix, rootNamespace, rootNamespaces);
+        for (String[] attribute : rootAttributes.values()) {
+            writer.attribute(attribute[0], attribute[1]);
+        }
+        writer.append(contentWriter, content);
+        writer.endElement();
+        writeMisc(writer, epilog);
+        writer.endDocument();
+
+        content.reset();
+        rootName = null;
+        rootNamespaces.clear();
+        rootAttributes.clear();
+        prolog.clear();
+        epilog.clear();
+    }
 
-        doc = null;
+    /**
+     * Discards the merged content which was not written, deleting its temporary file. The shader calls this once the
+     * uber JAR is written, or when shading fails.
+     *
+     * @since 3.7.0
+     */
+    @Override
+    public void close() throws IOException {
+        if (content != null) {
+            content.close();
+        }
     }
 }
@@ -0,0 +1,866 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Writes merged XML documents, copying elements from {@link XMLStreamReader}s as they are parsed so that the merged
+ * documents are never held as trees. The output is indented like the output of the XML library the documents used to
+ * be merged with, see {@link Style}.
+ */
+final class XmlMergeWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Property of the JDK factory to report CDATA sections instead of text. */
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    /** Factories of readers, by whether they ignore external DTDs and whether they coalesce text and CDATA sections. */
+    private static final XMLInputFactory[] INPUT_FACTORIES = {
+        newInputFactory(false, false),
+        newInputFactory(false, true),
+        newInputFactory(true, false),
+        newInputFactory(true, true)
+    };
+
+    private final OutputStream stream;
+
+    private final Writer encoder;
+
+    /** Characters written but not encoded yet, so that characters are written without a lock each. */
+    private final StringBuilder out = new StringBuilder(BUFFER_SIZE);
+
+    private char[] chars = new char[BUFFER_SIZE];
+
+    private final String lineSeparator;
+
+    private final String indent;
+
+    private final Style style;
+
+    private int depth;
+
+    /** The open elements. */
+    private final List<OpenElement> elements = new ArrayList<>();
+
+    /** Prefixes and URIs of the namespaces declared by the open elements, and by the element enclosing the part. */
+    private final List<String[]> namespaces = new ArrayList<>();
+
+    /** Text, CDATA sections and entity references of the current element not written yet, with the JDOM style. */
+    private final List<String[]> text = new ArrayList<>();
+
+    /** Whether the whitespace of the content of the element enclosing the written part of a document is kept. */
+    private boolean preserveSpace;
+
+    private boolean startTagOpen;
+
+    /** Whether nothing was written yet, so that the first line is not preceded by a line separator. */
+    private boolean empty;
+
+    /**
+     * @param stream the stream to write to, which is not closed
+     * @param lineSeparator the line separator
+     * @param indent the indentation of each level of elements
+     * @param depth the depth of the elements written first, to write parts of a document
+     */
+    XmlMergeWriter(OutputStream stream, String lineSeparator, String indent, int depth) {
+        this(stream, lineSeparator, indent, depth, Style.XPP3_DOM);
+    }
+
+    /**
+     * @param stream the stream to write to, which is not closed
+     * @param lineSeparator the line separator
+     * @param indent the indentation of each level of elements
+     * @param depth the depth of the elements written first, to write parts of a document
+     * @param style how the content is indented
+     */
+    XmlMergeWriter(OutputStream stream, String lineSeparator, String indent, int depth, Style style) {
+        this.stream = stream;
+        this.encoder = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        this.lineSeparator = lineSeparator;
+        this.indent = indent;
+        this.depth = depth;
+        this.style = style;
+        this.empty = depth == 0;
+    }
+
+    /**
+     * Opens a document, without resolving entities nor loading external DTDs when asked to.
+     *
+     * @param is the document, which is not closed
+     * @param ignoreDtd whether to ignore external DTDs
+     * @param coalescing whether to report CDATA sections and adjacent text as a single text
+     * @return a reader of the document, positioned at its start
+     * @throws XMLStreamException if the document cannot be read
+     */
+    static XMLStreamReader newReader(InputStream is, boolean ignoreDtd, boolean coalescing) throws XMLStreamException {
+        return INPUT_FACTORIES[(ignoreDtd ? 2 : 0) + (coalescing ? 1 : 0)].createXMLStreamReader(is);
+    }
+
+    private static XMLInputFactory newInputFactory(boolean ignoreDtd, boolean coalescing) {
+        XMLInputFactory factory = newDefaultInputFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, coalescing);
+        if (!coalescing && factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        if (ignoreDtd) {
+            factory.setXMLResolver(
+                    (publicId, systemId, baseUri, namespace) -> new ByteArrayInputStream(new byte[0]));
+        }
+        return factory;
+    }
+
+    /**
+     * @return the factory of the JDK, rather than a factory of the plugin class path which may not support the
+     *     properties set
+     */
+    private static XMLInputFactory newDefaultInputFactory() {
+        try {
+            // Java 9 or later
+            return (XMLInputFactory) XMLInputFactory.class.getMethod("newDefaultFactory").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            try {
+                return (XMLInputFactory) Class.forName("com.sun.xml.internal.stream.XMLInputFactoryImpl")
+                        .getConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e2) {
+                return XMLInputFactory.newInstance();
+            }
+        }
+    }
+
+    void declaration() throws IOException {
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        empty = false;
+    }
+
+    void dtd(String dtd) throws IOException {
+        newLine(0);
+        out.append(dtd);
+    }
+
+    void startElement(String name) throws IOException {
+        content();
+        out.append('<');
+        out.append(name);
+        elements.add(new OpenElement(name, namespaces.size(), preservesSpace()));
+        startTagOpen = true;
+        depth++;
+    }
+
+    void namespace(String prefix, String uri) throws IOException {
+        attribute(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, uri);
+    }
+
+    /**
+     * Declares the namespaces of the current element which are not bound by the enclosing elements yet, like JDOM
+     * does: the namespace of the element first, then the other namespaces by prefix.
+     *
+     * @param prefix the prefix of the element, the empty string for none
+     * @param uri the namespace URI of the element, the empty string for none
+     * @param others the other namespaces of the element by prefix, e.g. those of its attributes
+     * @throws IOException if the namespaces cannot be written
+     */
+    void namespaces(String prefix, String uri, SortedMap<String, String> others) throws IOException {
+        declare(prefix, uri);
+        for (Map.Entry<String, String> namespace : others.entrySet()) {
+            if (!namespace.getKey().equals(prefix)) {
+                declare(namespace.getKey(), namespace.getValue());
+            }
+        }
+    }
+
+    /**
+     * Binds a namespace in the element enclosing the written part of a document, so that it is not declared again.
+     */
+    void namespaceInScope(String prefix, String uri) {
+        namespaces.add(new String[] {prefix, uri});
+    }
+
+    /**
+     * Keeps the whitespace of the written part of a document, for an enclosing element with
+     * {@code xml:space="preserve"}.
+     */
+    void preserveSpace() {
+        preserveSpace = true;
+    }
+
+    void attribute(String name, String value) throws IOException {
+        out.append(' ');
+        out.append(name);
+        out.append("=\"");
+        escape(value, true);
+        out.append('"');
+        if (style == Style.JDOM && "xml:space".equals(name)) {
+            elements.get(elements.size() - 1).preserveSpace = "preserve".equals(value);
+        }
+    }
+
+    void text(String text) throws IOException {
+        if (style == Style.JDOM) {
+            inlineContent("", text);
+            return;
+        }
+        text = text.trim();
+        if (!text.isEmpty()) {
+            inlineContent();
+            escape(text, false);
+        }
+    }
+
+    /**
+     * Writes a CDATA section, as text with the Xpp3Dom style.
+     */
+    void cdata(String text) throws IOException {
+        if (style == Style.JDOM) {
+            inlineContent("CDATA", text);
+        } else {
+            text(text);
+        }
+    }
+
+    void comment(String comment) throws IOException {
+        content();
+        out.append("<!--");
+        out.append(comment);
+        out.append("-->");
+    }
+
+    void processingInstruction(String target, String data) throws IOException {
+        content();
+        out.append("<?");
+        out.append(target);
+        if (data != null && !data.isEmpty()) {
+            out.append(' ');
+            out.append(data);
+        }
+        out.append("?>");
+    }
+
+    void entityReference(String name) throws IOException {
+        if (style == Style.JDOM) {
+            inlineContent("ENTITY", name);
+            return;
+        }
+        inlineContent();
+        out.append('&');
+        out.append(name);
+        out.append(';');
+    }
+
+    void endElement() throws IOException {
+        OpenElement element = elements.get(elements.size() - 1);
+        if (startTagOpen && style == Style.JDOM && !element.preserveSpace && !isBlank(text)) {
+            // elements with text only have their text on the same line
+            closeStartTag();
+            writeText();
+        } else if (element.indentedContent) {
+            indentText();
+        }
+        elements.remove(elements.size() - 1);
+        depth--;
+        if (startTagOpen) {
+            out.append(style == Style.JDOM ? " />" : "/>");
+            startTagOpen = false;
+        } else {
+            if (element.indentedContent) {
+                newLine(depth);
+            }
+            out.append("</");
+            out.append(element.name);
+            out.append('>');
+        }
+        text.clear();
+        while (namespaces.size() > element.namespaces) {
+            namespaces.remove(namespaces.size() - 1);
+        }
+        if (out.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    /**
+     * Appends content written by another writer, at the depth of the content of the current element.
+     *
+     * @param content the content, encoded in UTF-8
+     * @throws IOException if the content cannot be written
+     */
+    void append(SpillingBuffer content) throws IOException {
+        closeStartTag();
+        markIndentedContent();
+        drain();
+        content.writeTo(stream);
+    }
+
+    /**
+     * @see #append(SpillingBuffer)
+     */
+    void append(byte[] content) throws IOException {
+        closeStartTag();
+        markIndentedContent();
+        drain();
+        stream.write(content);
+    }
+
+    /**
+     * Appends a part of a document written by another writer with the JDOM style, at the depth of the content of the
+     * current element. The current element stays on a single line when the part only has text.
+     *
+     * @param part the writer of the part, flushed
+     * @param content the content written by the writer, encoded in UTF-8
+     * @throws IOException if the content cannot be written
+     */
+    void append(XmlMergeWriter part, SpillingBuffer content) throws IOException {
+        if (content.size() > 0) {
+            closeStartTag();
+            if (!part.preserveSpace) {
+                markIndentedContent();
+            }
+            drain();
+            content.writeTo(stream);
+        }
+        text.addAll(part.text);
+    }
+
+    /**
+     * Moves to the root element of a document, skipping its prolog.
+     *
+     * @param reader the reader, positioned before the root element
+     * @throws XMLStreamException if the document cannot be read or has no root element
+     */
+    static void moveToRootElement(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.next();
+        }
+    }
+
+    /**
+     * Moves to the next child element of an element, skipping any other content.
+     *
+     * @param reader the reader, positioned at the start of the element or at the end of one of its children
+     * @return {@code true} at the start of the next child element, {@code false} at the end of the element
+     * @throws XMLStreamException if the document cannot be read
+     */
+    static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skips an element and its content.
+     *
+     * @param reader the reader, positioned at the start of the element and left at its end
+     * @throws XMLStreamException if the document cannot be read
+     */
+    static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        for (int level = 1; level > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
+    }
+
+    /**
+     * Ends the document with a line separator and flushes the written content.
+     */
+    void endDocument() throws IOException {
+        out.append(lineSeparator);
+        flush();
+    }
+
+    void flush() throws IOException {
+        closeStartTag();
+        drain();
+    }
+
+    /**
+     * Copies an element and its content.
+     *
+     * @param reader the reader, positioned at the start of the element and left at its end
+     * @param mapper the mapper of the text and attributes of the element and its descendants, or {@code null}
+     * @param comments whether to copy comments
+     * @throws XMLStreamException if the element cannot be read
+     * @throws IOException if the element cannot be written
+     */
+    void copyElement(XMLStreamReader reader, ValueMapper mapper, boolean comments)
+            throws XMLStreamException, IOException {
+        StringBuilder path = new StringBuilder();
+        List<Integer> pathLengths = new ArrayList<>();
+        int level = 0;
+        while (true) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    pathLengths.add(path.length());
+                    if (level > 0) {
+                        if (level > 1) {
+                            path.append('/');
+                        }
+                        path.append(reader.getLocalName());
+                    }
+                    startElement(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                    if (style == Style.JDOM) {
+                        namespaces(prefix(reader.getPrefix()), uri(reader.getNamespaceURI()), namespaces(reader));
+                    } else {
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            namespace(reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+                        }
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String value = reader.getAttributeValue(i);
+                        if (mapper != null) {
+                            value = mapper.map(path.toString(), reader.getAttributeLocalName(i), value);
+                        }
+                        attribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), value);
+                    }
+                    level++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    path.setLength(pathLengths.remove(pathLengths.size() - 1));
+                    level--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    String text = reader.getText();
+                    if (mapper != null && !text.trim().isEmpty()) {
+                        text = mapper.map(path.toString(), null, text.trim());
+                    }
+                    text(text);
+                    break;
+                case XMLStreamConstants.CDATA:
+                    cdata(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    if (comments) {
+                        comment(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    processingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    entityReference(reader.getLocalName());
+                    break;
+                default:
+                    break;
+            }
+            if (level == 0) {
+                return;
+            }
+            reader.next();
+        }
+    }
+
+    /**
+     * @see #copyElement(XMLStreamReader, ValueMapper, boolean)
+     */
+    void copyElement(XMLStreamReader reader, ValueMapper mapper) throws XMLStreamException, IOException {
+        copyElement(reader, mapper, false);
+    }
+
+    /**
+     * @param path a path given to a {@link ValueMapper}
+     * @param pattern element names joined with slashes, where {@code *} matches any name
+     * @return whether the path matches the pattern
+     */
+    static boolean matches(String path, String pattern) {
+        int p = 0;
+        int q = 0;
+        while (p <= path.length() && q <= pattern.length()) {
+            int pathEnd = path.indexOf('/', p);
+            pathEnd = pathEnd < 0 ? path.length() : pathEnd;
+            int patternEnd = pattern.indexOf('/', q);
+            patternEnd = patternEnd < 0 ? pattern.length() : patternEnd;
+            boolean any = patternEnd - q == 1 && pattern.charAt(q) == '*';
+            if (!any && (pathEnd - p != patternEnd - q || !path.regionMatches(p, pattern, q, pathEnd - p))) {
+                return false;
+            }
+            if (pathEnd == path.length() || patternEnd == pattern.length()) {
+                return pathEnd == path.length() && patternEnd == pattern.length();
+            }
+            p = pathEnd + 1;
+            q = patternEnd + 1;
+        }
+        return false;
+    }
+
+    static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    private static String prefix(String prefix) {
+        return prefix != null ? prefix : "";
+    }
+
+    private static String uri(String uri) {
+        return uri != null ? uri : "";
+    }
+
+    /**
+     * @return the namespaces declared by the current element of a reader and those of its attributes, by prefix
+     */
+    private static SortedMap<String, String> namespaces(XMLStreamReader reader) {
+        SortedMap<String, String> namespaces = new TreeMap<>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            namespaces.put(prefix(reader.getNamespacePrefix(i)), uri(reader.getNamespaceURI(i)));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String prefix = prefix(reader.getAttributePrefix(i));
+            if (!prefix.isEmpty()) {
+                namespaces.put(prefix, uri(reader.getAttributeNamespace(i)));
+            }
+        }
+        return namespaces;
+    }
+
+    /**
+     * Declares a namespace on the current element unless it is bound already.
+     */
+    private void declare(String prefix, String uri) throws IOException {
+        if ("xml".equals(prefix)) {
+            return;
+        }
+        String bound = prefix.isEmpty() ? "" : null;
+        for (int i = namespaces.size() - 1; i >= 0; i--) {
+            if (namespaces.get(i)[0].equals(prefix)) {
+                bound = namespaces.get(i)[1];
+                break;
+            }
+        }
+        if (!uri.equals(bound)) {
+            namespace(prefix, uri);
+            namespaces.add(new String[] {prefix, uri});
+        }
+    }
+
+    /**
+     * Writes the start of content of the current element on a line of its own.
+     */
+    private void content() throws IOException {
+        closeStartTag();
+        if (preservesSpace()) {
+            empty = false;
+            return;
+        }
+        markIndentedContent();
+        indentText();
+        if (!empty) {
+            newLine(depth);
+        }
+        empty = false;
+    }
+
+    /**
+     * Writes the start of text of the current element, on a line of its own if it follows indented content.
+     */
+    private void inlineContent() throws IOException {
+        closeStartTag();
+        // the content of the element enclosing the written part of a document is always indented
+        if (elements.isEmpty() || elements.get(elements.size() - 1).indentedContent) {
+            newLine(depth);
+        }
+        empty = false;
+    }
+
+    /**
+     * Adds text to the current element with the JDOM style. The text is written once the element ends when it only
+     * has text, else on a line of its own once other content follows, so that it is trimmed as a whole.
+     *
+     * @param type the empty string for text, {@code CDATA} for a CDATA section or {@code ENTITY} for an entity
+     *     reference
+     * @param value the text, or the name of the entity
+     */
+    private void inlineContent(String type, String value) throws IOException {
+        if (preservesSpace()) {
+            closeStartTag();
+            text.add(new String[] {type, value});
+            writeText(0, 0, text.size() - 1, -1);
+            text.clear();
+            empty = false;
+        } else {
+            text.add(new String[] {type, value});
+        }
+    }
+
+    /**
+     * Writes the text not written yet on a line of its own, unless it is only whitespace.
+     */
+    private void indentText() throws IOException {
+        if (!isBlank(text)) {
+            newLine(depth);
+            writeText();
+            empty = false;
+        }
+        text.clear();
+    }
+
+    /**
+     * Writes the text not written yet without its leading and trailing whitespace, like JDOM does.
+     */
+    private void writeText() throws IOException {
+        int first = 0;
+        int start = 0;
+        for (; first < text.size(); first++) {
+            start = whitespace(text.get(first), true);
+            if (start >= 0) {
+                break;
+            }
+        }
+        int last = text.size() - 1;
+        int end = 0;
+        for (; last >= first; last--) {
+            end = whitespace(text.get(last), false);
+            if (end >= 0) {
+                break;
+            }
+        }
+        writeText(first, start, last, end);
+        text.clear();
+    }
+
+    /**
+     * Writes the text not written yet from a character of one piece to a character of another.
+     *
+     * @param end the end of the last piece, negative for its whole text
+     */
+    private void writeText(int first, int start, int last, int end) throws IOException {
+        for (int i = first; i <= last; i++) {
+            String[] piece = text.get(i);
+            String value = piece[1];
+            int from = i == first ? start : 0;
+            int to = i == last && end >= 0 ? end : value.length();
+            if ("ENTITY".equals(piece[0])) {
+                out.append('&');
+                out.append(value);
+                out.append(';');
+            } else if ("CDATA".equals(piece[0])) {
+                out.append("<![CDATA[");
+                out.append(value, from, to);
+                out.append("]]>");
+            } else {
+                escape(value.substring(from, to), false);
+            }
+        }
+    }
+
+    /**
+     * @param piece a piece of text
+     * @param leading whether to skip the leading or the trailing whitespace
+     * @return the index of the first non-whitespace character, or the index after the last one, of the piece, or
+     *     {@code -1} if the piece is only whitespace
+     */
+    private static int whitespace(String[] piece, boolean leading) {
+        if ("ENTITY".equals(piece[0])) {
+            return leading ? 0 : piece[1].length();
+        }
+        String value = piece[1];
+        if (leading) {
+            for (int i = 0; i < value.length(); i++) {
+                if (!isWhitespace(value.charAt(i))) {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = value.length(); i > 0; i--) {
+                if (!isWhitespace(value.charAt(i - 1))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(List<String[]> text) {
+        for (String[] piece : text) {
+            if (whitespace(piece, true) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private boolean preservesSpace() {
+        return elements.isEmpty() ? preserveSpace : elements.get(elements.size() - 1).preserveSpace;
+    }
+
+    private void markIndentedContent() {
+        if (!elements.isEmpty()) {
+            elements.get(elements.size() - 1).indentedContent = true;
+        }
+    }
+
+    /**
+     * Encodes the written characters to the stream.
+     */
+    private void drain() throws IOException {
+        if (chars.length < out.length()) {
+            chars = new char[out.length()];
+        }
+        out.getChars(0, out.length(), chars, 0);
+        encoder.write(chars, 0, out.length());
+        encoder.flush();
+        out.setLength(0);
+    }
+
+    private void closeStartTag() throws IOException {
+        if (startTagOpen) {
+            out.append('>');
+            startTagOpen = false;
+        }
+    }
+
+    private void newLine(int level) throws IOException {
+        out.append(lineSeparator);
+        for (int i = 0; i < level; i++) {
+            out.append(indent);
+        }
+    }
+
+    private void escape(String text, boolean attribute) throws IOException {
+        // characters not needing escaping are written in runs
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String escaped = escape(text.charAt(i), attribute);
+            if (escaped != null) {
+                out.append(text, run, i);
+                out.append(escaped);
+                run = i + 1;
+            }
+        }
+        out.append(text, run, text.length());
+    }
+
+    private String escape(char c, boolean attribute) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            case '\t':
+                return attribute ? characterReference(c) : null;
+            case '\n':
+                if (attribute) {
+                    return characterReference(c);
+                }
+                return style == Style.JDOM ? lineSeparator : null;
+            case '\r':
+                return attribute || style == Style.JDOM ? characterReference(c) : null;
+            default:
+                return null;
+        }
+    }
+
+    private String characterReference(char c) {
+        // hexadecimal with the JDOM style, e.g. &#xA; instead of &#10;
+        if (style == Style.JDOM) {
+            return "&#x" + Integer.toHexString(c).toUpperCase(Locale.ROOT) + ';';
+        }
+        return "&#" + (int) c + ';';
+    }
+
+    /**
+     * How the content is indented, like the XML library the documents used to be merged with.
+     */
+    enum Style {
+        /**
+         * Like the Xpp3Dom writer of Plexus Utils: the text of the elements is trimmed, CDATA sections are written as
+         * text and namespace declarations are copied as they are.
+         */
+        XPP3_DOM,
+
+        /**
+         * Like the pretty format of JDOM: elements with text only are written on a single line, the text of other
+         * elements is written on lines of its own, and text and CDATA sections are trimmed at the ends of these
+         * lines. The whitespace of elements with {@code xml:space="preserve"} is kept, and namespaces are declared
+         * where they are used unless they are bound already.
+         */
+        JDOM
+    }
+
+    private static final class OpenElement {
+        private final String name;
+
+        /** The number of namespaces declared before the element. */
+        private final int namespaces;
+
+        /** Whether the element has content on lines of its own, so that its end tag is too. */
+        private boolean indentedContent;
+
+        private boolean preserveSpace;
+
+        private OpenElement(String name, int namespaces, boolean preserveSpace) {
+            this.name = name;
+            this.namespaces = namespaces;
+            this.preserveSpace = preserveSpace;
+        }
+    }
+
+    /**
+     * Maps the values of copied elements, e.g. to relocate the class names they contain.
+     */
+    @FunctionalInterface
+    interface ValueMapper {
+        /**
+         * @param path the names of the elements from the copied element, excluded, to the element of the value, joined
+         *     with slashes, e.g. {@code requirements/requirement/role}, or the empty string for the copied element
+         * @param attribute the name of the attribute of the value, or {@code null} for the text of the element
+         * @param value the value, trimmed for the text of elements
+         * @return the mapped value
+         */
+        String map(String path, String attribute, String value);
+    }
+}
@@ -31,7 +31,8 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
 import org.apache.maven.plugins.shade.relocation.Relocator;
-import org.apache.maven.plugins.shade.resource.ReproducibleResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ParallelResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ResourceSelector;
 import org.apache.maven.plugins.shade.resource.properties.io.NoCloseOutputStream;
 import org.apache.maven.plugins.shade.resource.properties.io.SkipPropertiesDateLineWriter;
 
@@ -40,7 +41,7 @@ import org.apache.maven.plugins.shade.resource.properties.io.SkipPropertiesDateL
  *
  * @since 3.2.2
  */
-public class PropertiesTransformer implements ReproducibleResourceTransformer {
+public class PropertiesTransformer implements ParallelResourceTransformer<PropertiesTransformer.Accumulator> {
     private String resource;
     private String alreadyMergedKey;
     private String ordinalKey;
@@ -67,20 +68,42 @@ public class PropertiesTransformer implements ReproducibleResourceTransformer {
         return Objects.equals(resource, this.resource);
     }
 
+    @Override
+    public ResourceSelector getTransformedResources() {
+        return ResourceSelector.names(resource);
+    }
+
     @Override
     public final void processResource(String resource, InputStream is, List<Relocator> relocators) throws IOException {
         processResource(resource, is, relocators, 0);
     }
 
+    @Override
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
     @Override
     public void processResource(
-            final String resource, final InputStream is, final List<Relocator> relocators, long time)
+            final Accumulator accumulator,
+            final String resource,
+            final InputStream is,
+            final List<Relocator> relocators,
+            long time)
             throws IOException {
         final Properties p = new Properties();
         p.load(is);
-        properties.add(p);
-        if (time > this.time) {
-            this.time = time;
+        accumulator.properties.add(p);
+        if (time > accumulator.time) {
+            accumulator.time = time;
+        }
+    }
+
+    @Override
+    public void combine(final Accumulator accumulator) {
+        properties.addAll(accumulator.properties);
+        if (accumulator.time > this.time) {
+            this.time = accumulator.time;
         }
     }
 
@@ -183,4 +206,17 @@ public class PropertiesTransformer implements ReproducibleResourceTransformer {
         }
         return mergedProperties;
     }
+
+    /**
+     * The properties of some resources.
+     *
+     * @since 3.7.0
+     */
+    public static final class Accumulator {
+        private final List<Properties> properties = new ArrayList<>();
+
+        private long time = Long.MIN_VALUE;
+
+        private Accumulator() {}
+    }
 }
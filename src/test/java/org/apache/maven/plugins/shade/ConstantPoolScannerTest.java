@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link ConstantPoolScanner}.
+ */
+public class ConstantPoolScannerTest {
+
+    private static final String DOTTED_NAME = "some.dotted.Name";
+
+    @Test
+    public void testFindsReferencedPackages() throws IOException {
+        byte[] classFile = classFile();
+
+        assertTrue(ConstantPoolScanner.of(Collections.singleton("org/junit")).mayNeedRelocation(classFile));
+        assertTrue(ConstantPoolScanner.of(Arrays.asList("com/acme", "org/codehaus/plexus/util"))
+                .mayNeedRelocation(classFile));
+        // part of a descriptor
+        assertTrue(ConstantPoolScanner.of(Collections.singleton("java/io/IOException"))
+                .mayNeedRelocation(classFile));
+        // string constant
+        assertTrue(ConstantPoolScanner.of(Collections.singleton(DOTTED_NAME)).mayNeedRelocation(classFile));
+
+        // not folded into a constant of this class by the compiler
+        String path = String.join("/", "net", "example");
+        String packageName = String.join(".", "net", "example");
+        assertFalse(ConstantPoolScanner.of(Arrays.asList(path, packageName)).mayNeedRelocation(classFile));
+    }
+
+    @Test
+    public void testUnsupportedPatterns() {
+        assertNull(ConstantPoolScanner.of(null));
+        assertNull(ConstantPoolScanner.of(Collections.singleton("")));
+        assertNull(ConstantPoolScanner.of(Collections.singleton("org/café")));
+    }
+
+    private byte[] classFile() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(getClass().getSimpleName() + ".class")) {
+            return IOUtil.toByteArray(in);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.maven.plugins.shade;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -32,6 +33,7 @@ import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -40,7 +42,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -48,13 +52,18 @@ import java.util.jar.JarOutputStream;
 import java.util.stream.Collectors;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.shade.filter.Filter;
+import org.apache.maven.plugins.shade.filter.SimpleFilter;
+import org.apache.maven.plugins.shade.mojo.ArchiveFilter;
 import org.apache.maven.plugins.shade.relocation.Relocator;
 import org.apache.maven.plugins.shade.relocation.SimpleRelocator;
 import org.apache.maven.plugins.shade.resource.AppendingTransformer;
 import org.apache.maven.plugins.shade.resource.ComponentsXmlResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ResourceBundleAppendingTransformer;
 import org.apache.maven.plugins.shade.resource.ResourceTransformer;
 import org.apache.maven.plugins.shade.resource.ServicesResourceTransformer;
 import org.codehaus.plexus.util.IOUtil;
@@ -66,6 +75,9 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.slf4j.Logger;
 
@@ -80,7 +92,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -335,6 +350,61 @@ public class DefaultShaderTest {
         }
     }
 
+    @Test
+    public void testFilteredJars() throws Exception {
+        File plexusJar = new File("src/test/jars/plexus-utils-1.4.1.jar");
+        File missingJar = new File("target/missing-filtered.jar");
+        File shadedOutput = new File("target/foo-filtered-jars.jar");
+
+        Set<File> jars = new LinkedHashSet<>();
+        jars.add(new File("src/test/jars/test-project-1.0-SNAPSHOT.jar"));
+        jars.add(plexusJar);
+        jars.add(missingJar);
+
+        List<Filter> filters = new ArrayList<>();
+        // all the entries of the missing JAR are filtered, so that it is never opened
+        filters.add(new Filter() {
+            @Override
+            public boolean canFilter(File jar) {
+                return jar.equals(missingJar);
+            }
+
+            @Override
+            public Verdict getVerdict(File jar) {
+                return Verdict.DROP_ALL;
+            }
+
+            @Override
+            public boolean isFiltered(String classFile) {
+                throw new AssertionError(classFile);
+            }
+
+            @Override
+            public void finished() {}
+        });
+        ArchiveFilter archiveFilter = mock(ArchiveFilter.class);
+        when(archiveFilter.getIncludes()).thenReturn(singleton("org/codehaus/plexus/util/cli/**"));
+        when(archiveFilter.getExcludes()).thenReturn(singleton("**/Arg.class"));
+        when(archiveFilter.getExcludeDefaults()).thenReturn(true);
+        filters.add(new SimpleFilter(singleton(plexusJar), archiveFilter));
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars(jars);
+        shadeRequest.setRelocators(Collections.emptyList());
+        shadeRequest.setResourceTransformers(Collections.emptyList());
+        shadeRequest.setFilters(filters);
+        shadeRequest.setUberJar(shadedOutput);
+
+        newShader().shade(shadeRequest);
+
+        try (JarFile shadedJar = new JarFile(shadedOutput)) {
+            assertNotNull(shadedJar.getEntry("org/codehaus/plexus/util/cli/Commandline.class"));
+            assertNull(shadedJar.getEntry("org/codehaus/plexus/util/cli/Arg.class"));
+            assertNull(shadedJar.getEntry("org/codehaus/plexus/util/Expand.class"));
+            assertNotNull(shadedJar.getEntry("org/codehaus/mojo/shade/App.class"));
+        }
+    }
+
     @Test
     public void testShaderWithRelocatedClassname() throws Exception {
         DefaultShader s = newShader();
@@ -551,6 +621,633 @@ public class DefaultShaderTest {
         temporaryFolder.delete();
     }
 
+    @Test
+    public void testParallelShadingWritesSameJarAsSequential() throws Exception {
+        File sequential = new File("target/testParallelShading-sequential.jar");
+        File parallel = new File("target/testParallelShading-parallel.jar");
+
+        newShader().shade(relocatingShadeRequest(sequential, 1));
+        newShader().shade(relocatingShadeRequest(parallel, 4));
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+    }
+
+    @Test
+    public void testParallelTransformersCombineResourcesInJarOrder() throws Exception {
+        TemporaryFolder temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+
+        String serviceEntryName = "META-INF/services/my.foo.Service";
+        Set<File> jars = new LinkedHashSet<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            File jar = temporaryFolder.newFile("inner" + i + ".jar");
+            try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+                jos.putNextEntry(new JarEntry(serviceEntryName));
+                jos.write(("my.foo.impl.Service" + i + NEWLINE).getBytes(StandardCharsets.UTF_8));
+                jos.closeEntry();
+            }
+            jars.add(jar);
+            expected.add("my.foo.impl.Service" + i);
+        }
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars(jars);
+        shadeRequest.setFilters(Collections.emptyList());
+        shadeRequest.setRelocators(Collections.emptyList());
+        shadeRequest.setResourceTransformers(Collections.singletonList(new ServicesResourceTransformer()));
+        shadeRequest.setThreads(4);
+        File shadedFile = temporaryFolder.newFile("shaded.jar");
+        shadeRequest.setUberJar(shadedFile);
+
+        newShader().shade(shadeRequest);
+
+        try (JarFile shadedJarFile = new JarFile(shadedFile)) {
+            JarEntry entry = shadedJarFile.getJarEntry(serviceEntryName);
+            List<String> lines = new BufferedReader(
+                            new InputStreamReader(shadedJarFile.getInputStream(entry), StandardCharsets.UTF_8))
+                    .lines()
+                    .collect(Collectors.toList());
+            assertEquals(expected, lines);
+        }
+
+        temporaryFolder.delete();
+    }
+
+    @Test
+    public void testSubclassOfParallelTransformerProcessesResources() throws Exception {
+        TemporaryFolder temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+
+        String serviceEntryName = "META-INF/services/my.foo.Service";
+        File jar = temporaryFolder.newFile("inner.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            jos.putNextEntry(new JarEntry(serviceEntryName));
+            jos.write(("my.foo.impl.Service" + NEWLINE).getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+
+        List<String> processed = new ArrayList<>();
+        ServicesResourceTransformer transformer = new ServicesResourceTransformer() {
+            @Override
+            public void processResource(String resource, InputStream is, List<Relocator> relocators, long time)
+                    throws IOException {
+                processed.add(resource);
+                super.processResource(resource, is, relocators, time);
+            }
+        };
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars(singleton(jar));
+        shadeRequest.setFilters(Collections.emptyList());
+        shadeRequest.setRelocators(Collections.emptyList());
+        shadeRequest.setResourceTransformers(Collections.singletonList(transformer));
+        shadeRequest.setThreads(4);
+        File shadedFile = temporaryFolder.newFile("shaded.jar");
+        shadeRequest.setUberJar(shadedFile);
+
+        newShader().shade(shadeRequest);
+
+        assertEquals(Collections.singletonList(serviceEntryName), processed);
+        try (JarFile shadedJarFile = new JarFile(shadedFile)) {
+            assertNotNull(shadedJarFile.getJarEntry(serviceEntryName));
+        }
+
+        temporaryFolder.delete();
+    }
+
+    @Test
+    public void testTemporaryFilesOfTransformersAreDeletedWhenShadingFails() throws Exception {
+        TemporaryFolder temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+
+        File spillDirectory = temporaryFolder.newFolder("spill");
+        File jar = temporaryFolder.newFile("inner.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            jos.putNextEntry(new JarEntry("org/foo/Messages.properties"));
+            jos.write("greeting=hello\n".getBytes(StandardCharsets.UTF_8));
+            jos.putNextEntry(new JarEntry("broken.txt"));
+            jos.write("broken".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ResourceBundleAppendingTransformer bundles = new ResourceBundleAppendingTransformer();
+        bundles.setBasename("org/foo/Messages");
+        bundles.setMemoryThreshold(1);
+        bundles.setSpillDirectory(spillDirectory);
+        ResourceTransformer broken = new ResourceTransformer() {
+            @Override
+            public boolean canTransformResource(String resource) {
+                return "broken.txt".equals(resource);
+            }
+
+            @Override
+            public void processResource(String resource, InputStream is, List<Relocator> relocators)
+                    throws IOException {
+                assertEquals(1, spillDirectory.list().length);
+                throw new IOException("broken resource");
+            }
+
+            @Override
+            public boolean hasTransformedResource() {
+                return false;
+            }
+
+            @Override
+            public void modifyOutputStream(JarOutputStream os) {}
+        };
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars(singleton(jar));
+        shadeRequest.setFilters(Collections.emptyList());
+        shadeRequest.setRelocators(Collections.emptyList());
+        shadeRequest.setResourceTransformers(Arrays.asList(bundles, broken));
+        shadeRequest.setUberJar(temporaryFolder.newFile("shaded.jar"));
+
+        try {
+            newShader().shade(shadeRequest);
+            fail("shading should fail");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("broken resource"));
+        }
+        assertEquals(0, spillDirectory.list().length);
+
+        temporaryFolder.delete();
+    }
+
+    @Test
+    public void testDirectoryIsShadedInEntryNameOrder() throws Exception {
+        TemporaryFolder temporaryFolder = new TemporaryFolder();
+        temporaryFolder.create();
+        File dir = temporaryFolder.getRoot();
+        try (JarFile jar = new JarFile("src/test/jars/plexus-utils-1.4.1.jar")) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (!entry.isDirectory()) {
+                    File out = new File(dir, entry.getName());
+                    forceMkdir(out.getParentFile());
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        Files.copy(in, out.toPath());
+                    }
+                }
+            }
+        }
+
+        File sequential = new File("target/testDirectoryIsShadedInEntryNameOrder-sequential.jar");
+        ShadeRequest shadeRequest = relocatingShadeRequest(sequential, 1);
+        shadeRequest.setJars(singleton(dir));
+        newShader().shade(shadeRequest);
+
+        File parallel = new File("target/testDirectoryIsShadedInEntryNameOrder-parallel.jar");
+        shadeRequest = relocatingShadeRequest(parallel, 4);
+        shadeRequest.setJars(singleton(dir));
+        // falls back to worker threads before Java 21
+        shadeRequest.setVirtualThreads(true);
+        newShader().shade(shadeRequest);
+
+        assertTrue(Arrays.equals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath())));
+        try (JarFile jar = new JarFile(sequential)) {
+            List<String> files = new ArrayList<>();
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (!entry.isDirectory()) {
+                    files.add(entry.getName());
+                }
+            }
+            List<String> sorted = new ArrayList<>(files);
+            Collections.sort(sorted);
+            assertTrue(files.size() > 50);
+            assertEquals(sorted, files);
+        }
+        temporaryFolder.delete();
+    }
+
+    @Test
+    public void testRawCopyKeepsCompressedData() throws Exception {
+        File plexusJar = new File("src/test/jars/plexus-utils-1.4.1.jar");
+        File shadedOutput = new File("target/testRawCopyKeepsCompressedData.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setJars(singleton(plexusJar));
+        shadeRequest.setRelocators(Collections.singletonList(
+                new SimpleRelocator("org/codehaus/plexus/util/cli", "relocated/plexus/util/cli", null, null)));
+        shadeRequest.setRawCopy(true);
+        newShader().shade(shadeRequest);
+
+        try (JarFile originalJar = new JarFile(plexusJar);
+                JarFile shadedJar = new JarFile(shadedOutput)) {
+            // neither relocated nor referencing relocated classes: copied as is
+            JarEntry original = originalJar.getJarEntry("org/codehaus/plexus/util/Expand.class");
+            JarEntry copied = shadedJar.getJarEntry("org/codehaus/plexus/util/Expand.class");
+            assertEquals(original.getCompressedSize(), copied.getCompressedSize());
+            assertEquals(original.getCrc(), copied.getCrc());
+            assertTrue(areEqual(originalJar, shadedJar, "org/codehaus/plexus/util/Expand.class"));
+
+            // resources are copied as is as well
+            original = originalJar.getJarEntry("META-INF/maven/org.codehaus.plexus/plexus-utils/pom.xml");
+            copied = shadedJar.getJarEntry("META-INF/maven/org.codehaus.plexus/plexus-utils/pom.xml");
+            assertEquals(original.getCompressedSize(), copied.getCompressedSize());
+            assertTrue(areEqual(originalJar, shadedJar, "META-INF/maven/org.codehaus.plexus/plexus-utils/pom.xml"));
+
+            // relocated classes are still rewritten
+            assertFalse(areEqual(
+                    originalJar,
+                    shadedJar,
+                    "org/codehaus/plexus/util/cli/Arg.class",
+                    "relocated/plexus/util/cli/Arg.class"));
+        }
+    }
+
+    @Test
+    public void testEntryTimesIgnoreLocalExtendedTimestamps() throws Exception {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+        try {
+            // like in byte-buddy-agent, the extended timestamp (0x5455) is only in the local file header
+            File jar = new File("target/testEntryTimesIgnoreLocalExtendedTimestamps-input.jar");
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            try (ZipOutputStream zos = new ZipOutputStream(zip)) {
+                ZipEntry entry = new ZipEntry("data.txt");
+                entry.setTime(1590000000000L);
+                // a placeholder id, patched in the local file header only: flags, then the mtime of 2010-01-01
+                entry.setExtra(new byte[] {0x43, 0x65, 5, 0, 1, (byte) 0x80, 0x3b, 0x3d, 0x4b});
+                zos.putNextEntry(entry);
+                zos.write("hello".getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            byte[] bytes = zip.toByteArray();
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == 0x43 && bytes[i + 1] == 0x65 && bytes[i + 2] == 5) {
+                    bytes[i] = 0x55;
+                    bytes[i + 1] = 0x54;
+                    break;
+                }
+            }
+            Files.write(jar.toPath(), bytes);
+
+            long expected;
+            try (JarFile jarFile = new JarFile(jar)) {
+                expected = jarFile.getJarEntry("data.txt").getTime();
+            }
+            assertEquals(1590000000000L, expected);
+
+            for (boolean rawCopy : new boolean[] {false, true}) {
+                File shadedOutput = new File("target/testEntryTimesIgnoreLocalExtendedTimestamps-" + rawCopy + ".jar");
+                ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+                shadeRequest.setJars(singleton(jar));
+                shadeRequest.setRawCopy(rawCopy);
+                newShader().shade(shadeRequest);
+
+                try (JarFile shadedJar = new JarFile(shadedOutput)) {
+                    assertEquals("rawCopy=" + rawCopy, expected, shadedJar.getJarEntry("data.txt").getTime());
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test
+    public void testPackageMappingCacheIsReported() throws Exception {
+        File shadedOutput = new File("target/testPackageMappingCacheIsReported.jar");
+        newShader().shade(relocatingShadeRequest(shadedOutput, 4));
+
+        String report = debugMessages.getAllValues().stream()
+                .filter(msg -> msg.startsWith("Package mapping cache: "))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        // java/lang/Object & co. are mapped over and over again
+        assertFalse(report, report.startsWith("Package mapping cache: 0 hits"));
+    }
+
+    @Test
+    public void testDuplicateClassesAreNotRelocated() throws Exception {
+        File plexusJar = new File("src/test/jars/plexus-utils-1.4.1.jar");
+        File plexusCopy = new File("target/testDuplicateClassesAreNotRelocated-plexus-utils.jar");
+        Files.copy(plexusJar.toPath(), plexusCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        File shadedOutput = new File("target/testDuplicateClassesAreNotRelocated.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setJars(new LinkedHashSet<>(asList(plexusJar, plexusCopy)));
+        newShader().shade(shadeRequest);
+
+        // the class of the second JAR is a losing duplicate, decided before anything is read
+        List<String> messages = debugMessages.getAllValues();
+        assertEquals(
+                1,
+                messages.stream()
+                        .filter("Rewrote class bytecode: org/codehaus/plexus/util/cli/Arg.class"::equals)
+                        .count());
+        assertThat(messages, hasItem("We have a duplicate org/shaded/plexus/util/cli/Arg in " + plexusCopy));
+        assertThat(
+                messages,
+                hasItem("We have a duplicate META-INF/maven/org.codehaus.plexus/plexus-utils/pom.xml in "
+                        + plexusCopy));
+    }
+
+    @Test
+    public void testEntriesCompressedOnWorkersKeepStoredNestedJars() throws Exception {
+        File nestedJar = new File("target/testEntriesCompressedOnWorkers-nested.jar");
+        byte[] innerJar = Files.readAllBytes(Paths.get("src/test/jars/test-artifact-1.0-SNAPSHOT.jar"));
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(nestedJar.toPath()))) {
+            writeEntryWithoutCompression("lib/inner.jar", innerJar, jos);
+            jos.putNextEntry(new JarEntry("readme.txt"));
+            jos.write("hello".getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+        File shadedOutput = new File("target/testEntriesCompressedOnWorkers.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 4);
+        shadeRequest.setJars(new LinkedHashSet<>(asList(nestedJar, new File("src/test/jars/plexus-utils-1.4.1.jar"))));
+        newShader().shade(shadeRequest);
+
+        try (JarFile shadedJar = new JarFile(shadedOutput)) {
+            JarEntry inner = shadedJar.getJarEntry("lib/inner.jar");
+            assertEquals(ZipEntry.STORED, inner.getMethod());
+            try (InputStream in = shadedJar.getInputStream(inner)) {
+                assertTrue(Arrays.equals(innerJar, IOUtil.toByteArray(in)));
+            }
+
+            JarEntry readme = shadedJar.getJarEntry("readme.txt");
+            assertEquals(ZipEntry.DEFLATED, readme.getMethod());
+            try (InputStream in = shadedJar.getInputStream(readme)) {
+                assertEquals("hello", IOUtil.toString(in, "UTF-8"));
+            }
+
+            JarEntry relocated = shadedJar.getJarEntry("org/shaded/plexus/util/cli/Arg.class");
+            assertEquals(ZipEntry.DEFLATED, relocated.getMethod());
+        }
+    }
+
+    @Test
+    public void testConstantPoolRelocationIsEquivalentToAsm() throws Exception {
+        File asmOutput = new File("target/testConstantPoolRelocation-asm.jar");
+        File constantPoolOutput = new File("target/testConstantPoolRelocation-constant-pool.jar");
+
+        newShader().shade(relocatingShadeRequest(asmOutput, 1));
+        ShadeRequest shadeRequest = relocatingShadeRequest(constantPoolOutput, 1);
+        shadeRequest.setConstantPoolRelocation(true);
+        newShader().shade(shadeRequest);
+        // no class of these JARs needs ASM
+        assertFalse(debugMessages.getAllValues().stream().anyMatch(msg -> msg.contains(" with ASM")));
+
+        try (JarFile asmJar = new JarFile(asmOutput);
+                JarFile constantPoolJar = new JarFile(constantPoolOutput)) {
+            List<String> asmEntries =
+                    asmJar.stream().map(JarEntry::getName).sorted().collect(Collectors.toList());
+            List<String> constantPoolEntries =
+                    constantPoolJar.stream().map(JarEntry::getName).sorted().collect(Collectors.toList());
+            assertEquals(asmEntries, constantPoolEntries);
+
+            int classes = 0;
+            for (String name : asmEntries) {
+                if (name.endsWith(".class")) {
+                    // the constant pool order and the stack map frames may differ, but not the class itself
+                    assertTrue(
+                            name,
+                            Arrays.equals(
+                                    canonicalClass(asmJar, name), canonicalClass(constantPoolJar, name)));
+                    classes++;
+                }
+            }
+            assertTrue(classes > 50);
+        }
+    }
+
+    private static byte[] canonicalClass(JarFile jar, String name) throws IOException {
+        try (InputStream in = jar.getInputStream(jar.getEntry(name))) {
+            ClassWriter cw = new ClassWriter(0);
+            new ClassReader(in).accept(cw, ClassReader.EXPAND_FRAMES);
+            return cw.toByteArray();
+        }
+    }
+
+    @Test
+    public void testCompressedStackMapFramesAreRelocated() throws Exception {
+        String value = "org/codehaus/plexus/util/framed/Value";
+        File jar = new File("target/testCompressedStackMapFrames.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            jos.putNextEntry(new JarEntry(value + ".class"));
+            jos.write(valueClass(value));
+            jos.putNextEntry(new JarEntry("org/codehaus/plexus/util/framed/Frames.class"));
+            jos.write(framesClass("org/codehaus/plexus/util/framed/Frames", value));
+        }
+        File shadedOutput = new File("target/testCompressedStackMapFrames-shaded.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setJars(singleton(jar));
+        newShader().shade(shadeRequest);
+
+        String relocated = "org/shaded/plexus/util/framed/Value";
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {shadedOutput.toURI().toURL()})) {
+            List<String> frames = new ArrayList<>();
+            new ClassReader(cl.getResourceAsStream("org/shaded/plexus/util/framed/Frames.class"))
+                    .accept(
+                            new ClassVisitor(Opcodes.ASM9) {
+                                @Override
+                                public MethodVisitor visitMethod(
+                                        int access, String name, String desc, String signature, String[] exceptions) {
+                                    return new MethodVisitor(Opcodes.ASM9) {
+                                        @Override
+                                        public void visitFrame(
+                                                int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+                                            // chop frames only tell the number of locals removed
+                                            Object locals = type == Opcodes.F_CHOP
+                                                    ? numLocal
+                                                    : asList(local).subList(0, numLocal);
+                                            frames.add(type + " " + locals + " "
+                                                    + asList(stack).subList(0, numStack));
+                                        }
+                                    };
+                                }
+                            },
+                            0);
+            // the frames are still compressed, with the relocated types
+            assertEquals(
+                    asList(
+                            Opcodes.F_APPEND + " [" + relocated + "] []",
+                            Opcodes.F_CHOP + " 1 []",
+                            Opcodes.F_SAME1 + " [] [" + relocated + "]",
+                            Opcodes.F_SAME + " [] []"),
+                    frames);
+
+            // the JVM verifies the frames when loading the class
+            Class<?> c = Class.forName("org.shaded.plexus.util.framed.Frames", true, cl);
+            assertEquals(relocated.replace('/', '.'), c.getMethod("pick", boolean.class)
+                    .invoke(null, true)
+                    .getClass()
+                    .getName());
+            assertNotNull(c.getMethod("pick", boolean.class).invoke(null, false));
+        }
+    }
+
+    @Test
+    public void testUnusedConstantsAreRelocatedByConstantPoolRelocation() throws Exception {
+        ClassWriter cw = new ClassWriter(new ClassReader(valueClass("org/codehaus/plexus/util/unused/Holder")), 0);
+        cw.newUTF8("org/codehaus/plexus/util/unused/Unused");
+        cw.newUTF8("[Lorg/codehaus/plexus/util/unused/Element;");
+        cw.newUTF8("unrelated");
+        File jar = new File("target/testUnusedConstants.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            jos.putNextEntry(new JarEntry("org/codehaus/plexus/util/unused/Holder.class"));
+            jos.write(cw.toByteArray());
+        }
+        File shadedOutput = new File("target/testUnusedConstants-shaded.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setJars(singleton(jar));
+        shadeRequest.setConstantPoolRelocation(true);
+        newShader().shade(shadeRequest);
+
+        try (JarFile shadedJar = new JarFile(shadedOutput)) {
+            String constants;
+            try (InputStream in = shadedJar.getInputStream(
+                    shadedJar.getEntry("org/shaded/plexus/util/unused/Holder.class"))) {
+                constants = new String(IOUtil.toByteArray(in), StandardCharsets.ISO_8859_1);
+            }
+            assertTrue(constants.contains("org/shaded/plexus/util/unused/Unused"));
+            assertTrue(constants.contains("[Lorg/shaded/plexus/util/unused/Element;"));
+            assertTrue(constants.contains("unrelated"));
+            assertFalse(constants.contains("org/codehaus/plexus/util/unused/"));
+        }
+    }
+
+    private static byte[] valueClass(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * @return a class whose methods have append, chop, same-locals-1-stack-item and same frames, the first and third
+     *     referencing the given type
+     */
+    private static byte[] framesClass(String name, String value) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+
+        // static Object pick(boolean flag)
+        MethodVisitor mv =
+                cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label otherwise = new Label();
+        Label found = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, otherwise);
+        newValue(mv, value);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, found);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(found);
+        mv.visitFrame(Opcodes.F_APPEND, 1, new Object[] {value}, 0, null);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(otherwise);
+        mv.visitFrame(Opcodes.F_CHOP, 1, null, 0, null);
+        newValue(mv, value);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(end);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] {value});
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // static void touch(Value value)
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "touch", "(L" + value + ";)V", null, null);
+        mv.visitCode();
+        Label nonNull = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFNONNULL, nonNull);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLabel(nonNull);
+        mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void newValue(MethodVisitor mv, String value) {
+        mv.visitTypeInsn(Opcodes.NEW, value);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, value, "<init>", "()V", false);
+    }
+
+    @Test
+    public void testManifestIsTransformedAndWrittenFirst() throws Exception {
+        File shadedOutput = new File("target/testManifestIsTransformedAndWrittenFirst.jar");
+
+        ManifestResourceTransformer manifestTransformer = new ManifestResourceTransformer();
+        manifestTransformer.setMainClass("org.example.Main");
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setResourceTransformers(Collections.singletonList(manifestTransformer));
+        newShader().shade(shadeRequest);
+
+        try (JarInputStream jis = new JarInputStream(Files.newInputStream(shadedOutput.toPath()))) {
+            // JarInputStream only finds the manifest when it is one of the first entries
+            assertEquals("org.example.Main", jis.getManifest().getMainAttributes().getValue("Main-Class"));
+        }
+        assertThat(
+                debugMessages.getAllValues(),
+                hasItems(
+                        "We have a duplicate META-INF/MANIFEST.MF in src/test/jars/test-project-1.0-SNAPSHOT.jar",
+                        "We have a duplicate META-INF/MANIFEST.MF in src/test/jars/plexus-utils-1.4.1.jar"));
+    }
+
+    @Test
+    public void testLargeStoredNestedJarIsCopiedAsIs() throws Exception {
+        // larger than what is compressed ahead in memory
+        byte[] content = new byte[3 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        ByteArrayOutputStream innerJar = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(innerJar)) {
+            writeEntryWithoutCompression("data.bin", content, jos);
+        }
+        File outerJar = new File("target/testLargeStoredNestedJar-outer.jar");
+        try (JarOutputStream jos = new JarOutputStream(Files.newOutputStream(outerJar.toPath()))) {
+            writeEntryWithoutCompression("lib/inner.jar", innerJar.toByteArray(), jos);
+        }
+        File shadedOutput = new File("target/testLargeStoredNestedJar.jar");
+
+        ShadeRequest shadeRequest = relocatingShadeRequest(shadedOutput, 1);
+        shadeRequest.setJars(singleton(outerJar));
+        newShader().shade(shadeRequest);
+
+        try (JarFile shadedJar = new JarFile(shadedOutput)) {
+            JarEntry inner = shadedJar.getJarEntry("lib/inner.jar");
+            assertEquals(ZipEntry.STORED, inner.getMethod());
+            try (InputStream in = shadedJar.getInputStream(inner)) {
+                assertTrue(Arrays.equals(innerJar.toByteArray(), IOUtil.toByteArray(in)));
+            }
+        }
+    }
+
+    private ShadeRequest relocatingShadeRequest(File output, int threads) {
+        Set<File> set = new LinkedHashSet<>();
+        set.add(new File("src/test/jars/test-project-1.0-SNAPSHOT.jar"));
+        set.add(new File("src/test/jars/plexus-utils-1.4.1.jar"));
+
+        ShadeRequest shadeRequest = new ShadeRequest();
+        shadeRequest.setJars(set);
+        shadeRequest.setUberJar(output);
+        shadeRequest.setFilters(Collections.emptyList());
+        shadeRequest.setRelocators(Collections.singletonList(
+                new SimpleRelocator("org/codehaus/plexus/util", "org/shaded/plexus/util", null, null)));
+        shadeRequest.setResourceTransformers(Collections.singletonList(new ComponentsXmlResourceTransformer()));
+        shadeRequest.setThreads(threads);
+        return shadeRequest;
+    }
+
     private void writeEntryWithoutCompression(String entryName, byte[] entryBytes, JarOutputStream jos)
             throws IOException {
         final JarEntry entry = new JarEntry(entryName);
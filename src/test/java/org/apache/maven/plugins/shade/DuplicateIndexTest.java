@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link DuplicateIndex}.
+ */
+public class DuplicateIndexTest {
+
+    private final File a = new File("a.jar");
+
+    private final File b = new File("b.jar");
+
+    private final File c = new File("c.jar");
+
+    @Test
+    public void testGroupsNamesByInputs() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add("only/in/A.class", a);
+        index.add("x/X.class", a);
+        index.add("x/X.class", b);
+        index.add("x/x.properties", b);
+        index.add("x/x.properties", a);
+        index.add("x/x.properties", a);
+        index.add("y/Y.class", a);
+        index.add("y/Y.class", b);
+        index.add("y/Y.class", c);
+
+        Map<Set<File>, List<String>> overlaps = index.getOverlaps();
+
+        assertEquals(2, overlaps.size());
+        assertEquals(
+                new HashSet<>(Arrays.asList("x/X.class", "x/x.properties")),
+                new HashSet<>(overlaps.get(new HashSet<>(Arrays.asList(a, b)))));
+        assertEquals(Arrays.asList("y/Y.class"), overlaps.get(new HashSet<>(Arrays.asList(a, b, c))));
+    }
+
+    @Test
+    public void testRemovedInputsDoNotOverlap() {
+        DuplicateIndex index = new DuplicateIndex();
+        index.add("META-INF/services/x.Y", a);
+        index.remove("META-INF/services/x.Y", a);
+        index.add("META-INF/services/x.Y", b);
+        index.remove("META-INF/services/x.Y", b);
+        index.remove("unknown", c);
+
+        assertTrue(index.getOverlaps().isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for {@link EntryBuffers}.
+ */
+public class EntryBuffersTest {
+
+    private final EntryBuffers buffers = new EntryBuffers();
+
+    @After
+    public void tearDown() {
+        buffers.close();
+    }
+
+    @Test
+    public void testInflate() throws IOException {
+        for (int size : new int[] {0, 1, 1000, 100_000}) {
+            byte[] content = content(size);
+            byte[] deflated = deflate(content);
+            // twice, the second time with pooled inflaters and buffers
+            for (int i = 0; i < 2; i++) {
+                assertArrayEquals(content, buffers.inflate(new ByteArrayInputStream(deflated), deflated.length, size));
+            }
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testInflateLargerThanSize() throws IOException {
+        byte[] deflated = deflate(content(1000));
+        buffers.inflate(new ByteArrayInputStream(deflated), deflated.length, 999);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testInflateSmallerThanSize() throws IOException {
+        byte[] deflated = deflate(content(1000));
+        buffers.inflate(new ByteArrayInputStream(deflated), deflated.length, 1001);
+    }
+
+    @Test
+    public void testReadFullyWithWrongSize() throws IOException {
+        byte[] content = content(100_000);
+        for (long size : new long[] {-1, 0, 1000, 99_999, 100_000, 100_001}) {
+            assertArrayEquals(content, buffers.readFully(new ByteArrayInputStream(content), size));
+        }
+    }
+
+    @Test
+    public void testCloseEndsDeflaters() {
+        Deflater pooled = buffers.acquireDeflater();
+        Deflater inUse = buffers.acquireDeflater();
+        buffers.releaseDeflater(pooled);
+
+        buffers.close();
+        assertEnded(pooled);
+
+        // handed back once the pool is closed
+        buffers.releaseDeflater(inUse);
+        assertEnded(inUse);
+        Deflater created = buffers.acquireDeflater();
+        assertNotSame(pooled, created);
+        created.end();
+    }
+
+    private static void assertEnded(Deflater deflater) {
+        try {
+            deflater.getTotalIn();
+            fail("Deflater not ended");
+        } catch (NullPointerException expected) {
+            // the deflater is closed
+        }
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            // compressible
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return content;
+    }
+
+    private static byte[] deflate(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED, true))) {
+            deflater.write(content);
+        }
+        return out.toByteArray();
+    }
+}
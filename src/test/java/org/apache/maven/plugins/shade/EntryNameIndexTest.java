@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link EntryNameIndex}.
+ */
+public class EntryNameIndexTest {
+
+    @Test
+    public void testAddAndLookup() {
+        EntryNameIndex index = new EntryNameIndex();
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(index.add("org/example/p" + i % 100 + "/Class" + i + ".class"));
+        }
+        for (int i = 0; i < 10000; i++) {
+            String name = "org/example/p" + i % 100 + "/Class" + i + ".class";
+            assertFalse(index.add(name));
+            assertEquals(name, index.get(index.indexOf(name, name.length())));
+        }
+        assertEquals(10000, index.size());
+        assertFalse(index.contains("org/example/p1/Class2.class"));
+    }
+
+    @Test
+    public void testPrefixes() {
+        EntryNameIndex index = new EntryNameIndex();
+        String name = "META-INF/maven/org.example/pom.xml";
+        assertEquals(0, index.intern(name, "META-INF".length()));
+        assertEquals(1, index.intern(name, "META-INF/maven".length()));
+        assertEquals(0, index.indexOf("META-INF/", "META-INF".length()));
+        assertTrue(index.contains("META-INF/maven"));
+        assertFalse(index.contains("META-INF/"));
+        assertFalse(index.contains("META-INF/maven/org.example"));
+    }
+
+    @Test
+    public void testNonAsciiNames() {
+        EntryNameIndex index = new EntryNameIndex();
+        String[] names = {"", "\u0000", "café.txt", "日本/語", "😀", "\ud83d", "\ude00"};
+        for (String name : names) {
+            assertTrue(name, index.add(name));
+        }
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], index.get(i));
+            assertTrue(names[i], index.contains(names[i]));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.plugins.shade.relocation.Relocator;
+import org.apache.maven.plugins.shade.resource.ApacheLicenseResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ApacheNoticeResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ComponentsXmlResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ManifestResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ResourceSelector;
+import org.apache.maven.plugins.shade.resource.ResourceTransformer;
+import org.apache.maven.plugins.shade.resource.ServicesResourceTransformer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test for {@link ResourceTransformerIndex}.
+ */
+public class ResourceTransformerIndexTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "META-INF/MANIFEST.MF",
+            "meta-inf/manifest.mf",
+            "META-INF/LICENSE",
+            "META-INF/License.txt",
+            "META-INF/LICENSE.md",
+            "META-INF/NOTICE",
+            "meta-inf/notice.TXT",
+            "META-INF/NOTICE.md",
+            "META-INF/services/java.sql.Driver",
+            "META-INF/SERVICES/java.sql.Driver",
+            "META-INF/services/",
+            "META-INF/plexus/components.xml",
+            "readme.txt",
+            "docs/README.TXT",
+            "org/acme/Foo.class",
+            "",
+            "META-INF",
+            "META-INF/");
+
+    @Test
+    public void testFindsLikeLinearScan() {
+        ResourceTransformer undeclared = new ServicesResourceTransformer() {
+            @Override
+            public boolean canTransformResource(String resource) {
+                return resource.toLowerCase().endsWith(".txt");
+            }
+
+            @Override
+            public ResourceSelector getTransformedResources() {
+                return null;
+            }
+        };
+        ResourceTransformer suffix = new ServicesResourceTransformer() {
+            @Override
+            public boolean canTransformResource(String resource) {
+                return resource.endsWith(".class");
+            }
+
+            @Override
+            public ResourceSelector getTransformedResources() {
+                return ResourceSelector.suffixes(".CLASS");
+            }
+        };
+
+        List<ResourceTransformer> transformers = Arrays.asList(
+                new ManifestResourceTransformer(),
+                new ApacheLicenseResourceTransformer(),
+                undeclared,
+                new ApacheNoticeResourceTransformer(),
+                new ServicesResourceTransformer(),
+                new ComponentsXmlResourceTransformer(),
+                suffix);
+
+        assertFindsLikeLinearScan(transformers);
+        assertFindsLikeLinearScan(transformers.subList(3, transformers.size()));
+    }
+
+    @Test
+    public void testFindsAmongManyTransformers() {
+        ResourceTransformer[] transformers = new ResourceTransformer[130];
+        for (int i = 0; i < transformers.length; i++) {
+            transformers[i] = i % 2 == 0 ? new ManifestResourceTransformer() : new ServicesResourceTransformer();
+        }
+        transformers[128] = new ApacheNoticeResourceTransformer();
+
+        assertFindsLikeLinearScan(Arrays.asList(transformers));
+        assertFindsLikeLinearScan(Arrays.asList(transformers).subList(100, 130));
+    }
+
+    @Test
+    public void testSubclassesAreAskedAboutEveryResource() {
+        ResourceTransformer subclass = new ServicesResourceTransformer() {
+            @Override
+            public boolean canTransformResource(String resource) {
+                return super.canTransformResource(resource) || resource.endsWith(".txt");
+            }
+        };
+        assertNull(ResourceTransformerIndex.getTransformedResources(subclass));
+
+        List<ResourceTransformer> transformers =
+                Arrays.asList(new ManifestResourceTransformer(), subclass, new ApacheNoticeResourceTransformer());
+        ResourceTransformerIndex index = new ResourceTransformerIndex(transformers);
+        assertSame(subclass, index.find("readme.txt"));
+        assertSame(subclass, index.find("META-INF/services/java.sql.Driver"));
+        assertFindsLikeLinearScan(transformers);
+    }
+
+    @Test
+    public void testSubclassesKeepTheResourcesOfTheirParent() {
+        ResourceTransformer subclass = new ServicesResourceTransformer() {};
+        assertNotNull(ResourceTransformerIndex.getTransformedResources(subclass));
+
+        ResourceTransformer undeclared = new ResourceTransformer() {
+            @Override
+            public boolean canTransformResource(String resource) {
+                return true;
+            }
+
+            @Override
+            public void processResource(String resource, InputStream is, List<Relocator> relocators) {}
+
+            @Override
+            public boolean hasTransformedResource() {
+                return false;
+            }
+
+            @Override
+            public void modifyOutputStream(JarOutputStream os) {}
+        };
+        assertNull(ResourceTransformerIndex.getTransformedResources(undeclared));
+    }
+
+    private static void assertFindsLikeLinearScan(List<ResourceTransformer> transformers) {
+        ResourceTransformerIndex index = new ResourceTransformerIndex(transformers);
+        for (String name : NAMES) {
+            ResourceTransformer expected = null;
+            for (ResourceTransformer transformer : transformers) {
+                if (transformer.canTransformResource(name)) {
+                    expected = transformer;
+                    break;
+                }
+            }
+            assertSame(name, expected, index.find(name));
+        }
+    }
+}
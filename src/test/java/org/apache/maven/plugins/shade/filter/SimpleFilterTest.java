@@ -18,11 +18,17 @@
  */
 package org.apache.maven.plugins.shade.filter;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 import org.apache.maven.plugins.shade.mojo.ArchiveFilter;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -93,4 +99,56 @@ public class SimpleFilterTest {
         assertFalse(filter.isFiltered("specific include"));
         assertFalse(filter.isFiltered("some other file matched by default include"));
     }
+
+    @Test
+    public void testVerdict() {
+        File jar = new File("test.jar");
+        File directory = new File("target");
+
+        SimpleFilter filter = new SimpleFilter(null, null, null);
+        assertEquals(Filter.Verdict.KEEP_ALL, filter.getVerdict(jar));
+
+        filter = new SimpleFilter(null, Collections.singleton("org/**"), Collections.<String>emptySet());
+        assertEquals(Filter.Verdict.MIXED, filter.getVerdict(jar));
+
+        filter = new SimpleFilter(null, Collections.<String>emptySet(), Collections.singleton("**"));
+        assertEquals(Filter.Verdict.DROP_ALL, filter.getVerdict(directory));
+        // the names of the entries of a JAR may start with a separator, which only /** matches
+        assertEquals(Filter.Verdict.MIXED, filter.getVerdict(jar));
+        assertFalse(filter.isFiltered("/org/Test.class"));
+
+        filter = new SimpleFilter(
+                null, Collections.<String>emptySet(), new HashSet<>(Arrays.asList("**", "%ant[/**/**]")));
+        assertEquals(Filter.Verdict.DROP_ALL, filter.getVerdict(jar));
+
+        filter = new SimpleFilter(null, Collections.<String>emptySet(), Collections.singleton("**/*"));
+        assertEquals(Filter.Verdict.MIXED, filter.getVerdict(directory));
+    }
+
+    @Test
+    public void testGetKeptEntries() {
+        SimpleFilter filter =
+                new SimpleFilter(null, Collections.singleton("org/**"), Collections.singleton("**/*.txt"));
+        List<String> names = Arrays.asList("org/Test.class", "Test.class", "org/a.txt", "org/maven/Test.class");
+        BitSet kept = filter.getKeptEntries(names);
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.get(i), !filter.isFiltered(names.get(i)), kept.get(i));
+        }
+    }
+
+    @Test
+    public void testIsSpecificallyIncluded() {
+        SimpleFilter filter = new SimpleFilter(null, null, Collections.singleton("org/**"));
+        assertFalse(filter.isSpecificallyIncluded("org/Test.class"));
+
+        filter = new SimpleFilter(
+                null, new HashSet<>(Arrays.asList("org/", "com/?/*.class", "%regex[net/.*]")), Collections.emptySet());
+        assertTrue(filter.isSpecificallyIncluded("org/maven/Test.class"));
+        assertTrue(filter.isSpecificallyIncluded("org\\Test.class"));
+        assertTrue(filter.isSpecificallyIncluded("com/a/Test.class"));
+        assertFalse(filter.isSpecificallyIncluded("com/ab/Test.class"));
+        assertFalse(filter.isSpecificallyIncluded("com/a/b/Test.class"));
+        assertTrue(filter.isSpecificallyIncluded("net/Test.class"));
+        assertFalse(filter.isSpecificallyIncluded("Test.class"));
+    }
 }
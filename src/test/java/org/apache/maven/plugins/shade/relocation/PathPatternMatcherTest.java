@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for {@link PathPatternMatcher}.
+ */
+public class PathPatternMatcherTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "org/foo/**",
+            "org/foo/*/Bar",
+            "org/b?r/*Impl",
+            "/abs/*",
+            "a\\\\b",
+            "**/*.properties",
+            "x/**/y/**",
+            "%ant[ant/**]",
+            "%regex[re.*\\.txt]",
+            "%regex[]");
+
+    private static final List<String> PATHS = Arrays.asList(
+            "org/foo",
+            "org/foo/Bar",
+            "org/foo/sub/Bar",
+            "org/foo/sub/Baz",
+            "org/bar/FooImpl",
+            "org/baar/FooImpl",
+            "org/bar/Impl/x",
+            "/abs/x",
+            "abs/x",
+            "/abs/x/y",
+            "a/b",
+            "a//b/",
+            "\\a\\b",
+            "META-INF/x.properties",
+            "x.properties",
+            "x/y",
+            "x/a/y/b/c",
+            "x/a/b",
+            "ant/x",
+            "re/a.txt",
+            "%regex[]",
+            "");
+
+    @Test
+    public void testMatchLikeSelectorUtils() {
+        for (String pattern : PATTERNS) {
+            PathPatternMatcher matcher = PathPatternMatcher.compile(Collections.singletonList(pattern));
+            for (String path : PATHS) {
+                assertEquals(pattern + " " + path, SelectorUtils.matchPath(pattern, path, true), matcher.matches(path));
+            }
+        }
+        PathPatternMatcher matcher = PathPatternMatcher.compile(PATTERNS);
+        for (String path : PATHS) {
+            boolean expected = PATTERNS.stream().anyMatch(pattern -> SelectorUtils.matchPath(pattern, path, true));
+            assertEquals(path, expected, matcher.matches(path));
+        }
+    }
+
+    @Test
+    public void testMatchClassNames() {
+        PathPatternMatcher matcher = PathPatternMatcher.compile(PATTERNS);
+        for (String path : PATHS) {
+            String clazz = "<" + path + ">";
+            boolean expected = matcher.matches(path.replace('.', '/'));
+            assertEquals(path, expected, matcher.matches(clazz, 1, clazz.length() - 1, true));
+        }
+    }
+
+    @Test
+    public void testNoPatterns() {
+        assertNull(PathPatternMatcher.compile(Collections.emptyList()));
+        assertNull(PathPatternMatcher.compile(null));
+    }
+}
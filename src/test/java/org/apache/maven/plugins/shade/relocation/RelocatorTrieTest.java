@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for {@link RelocatorTrie}.
+ */
+public class RelocatorTrieTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+            "org/foo/Class",
+            "org/foo/Class.class",
+            "/org/foo/bar/Class.properties",
+            "org/foo/Excluded",
+            "org/foo/Excluded.class",
+            "org/foo/bar/Class",
+            "org/foobar/Class",
+            "org.foo.Class",
+            "org.foo.bar.Class",
+            ".org.foo.Class",
+            "org.foo",
+            "org/foo",
+            "org",
+            "foo",
+            "foo.Bar",
+            "com/acme/Foo",
+            "com.acme.Foo",
+            "META-INF/maven/org.foo/pom.xml",
+            "",
+            "x/org/foo/Class");
+
+    @Test
+    public void testFirstMatchLikeLinearScan() {
+        List<Relocator> relocators = Arrays.asList(
+                new SimpleRelocator("org.foo.bar", "first", null, null),
+                new SimpleRelocator("org.foo", "second", null, Collections.singletonList("org.foo.Excluded")),
+                new SimpleRelocator("org", "third", Collections.singletonList("org.foobar.*"), null),
+                new SimpleRelocator("foo", "fourth$0", null, null),
+                new SimpleRelocator("com.acme", "fifth", null, null, true),
+                new SimpleRelocator("META-INF/maven/org.foo", "META-INF/maven/sixth", null, null));
+        RelocatorTrie trie = RelocatorTrie.compile(relocators);
+
+        for (String name : NAMES) {
+            for (int flags = 1; flags < 4; flags++) {
+                boolean mapPaths = (flags & 1) != 0;
+                boolean mapPackages = (flags & 2) != 0;
+                assertEquals(
+                        name + " " + mapPaths + " " + mapPackages,
+                        linearScan(relocators, name, mapPaths, mapPackages),
+                        trie.relocate(name, mapPaths, mapPackages));
+            }
+        }
+    }
+
+    @Test
+    public void testNoRelocators() {
+        RelocatorTrie trie = RelocatorTrie.compile(Collections.emptyList());
+        for (String name : NAMES) {
+            assertNull(trie.relocate(name, true, true));
+        }
+    }
+
+    private static String linearScan(List<Relocator> relocators, String name, boolean mapPaths, boolean mapPackages) {
+        for (Relocator r : relocators) {
+            if (mapPackages && r.canRelocateClass(name)) {
+                return r.relocateClass(name);
+            } else if (mapPaths && r.canRelocatePath(name)) {
+                return r.relocatePath(name);
+            }
+        }
+        return null;
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.maven.plugins.shade.relocation;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -25,6 +26,8 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -202,6 +205,60 @@ public class SimpleRelocatorTest {
         assertTrue(relocator.canRelocatePath("META-INF/maven/com-foo-bar/artifactId/pom.xml"));
     }
 
+    @Test
+    public void testMatchLikeRelocate() {
+        SimpleRelocator relocator =
+                new SimpleRelocator("org.foo", "shaded.org.foo", null, Collections.singletonList("org.foo.Excluded"));
+        String[] paths = {"org/foo/Bar", "/org/foo/Bar.class", "org/foo/Excluded.class", "org/foobar", "x/org/foo", ""};
+        for (String path : paths) {
+            assertMatch(relocator.canRelocatePath(path) ? relocator.relocatePath(path) : null, path, false, relocator);
+        }
+        String[] classes = {"org.foo.Bar", ".org.foo.Bar", "org.foo.Excluded", "org/foo.Bar", "org.fo"};
+        for (String clazz : classes) {
+            String expected = relocator.canRelocateClass(clazz) ? relocator.relocateClass(clazz) : null;
+            assertMatch(expected, clazz, true, relocator);
+        }
+    }
+
+    @Test
+    public void testMatchWithReplacementSyntax() {
+        SimpleRelocator relocator = new SimpleRelocator("org.foo", "shaded.$0", null, null);
+        assertMatch("shaded/org/foo/Bar", "org/foo/Bar", false, relocator);
+        assertMatch("shaded.org.foo.Bar", "org.foo.Bar", true, relocator);
+    }
+
+    @Test
+    public void testMatchSerializedLambda() {
+        SerializedLambdaRelocator relocator =
+                new SerializedLambdaRelocator("org.foo", "shaded.org.foo", null, null, false);
+        String descriptor = "(Lorg/foo/Bar;[I)Lorg/foo/Baz;";
+        assertMatch("(Lshaded/org/foo/Bar;[I)Lshaded/org/foo/Baz;", descriptor, false, relocator);
+        assertMatch(null, "(Lorg/foo/Bar;)[V", false, relocator);
+        assertMatch(null, descriptor, true, relocator);
+    }
+
+    private static void assertMatch(String expected, String name, boolean clazz, Relocator relocator) {
+        String text = "<" + name + ">";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int end = text.length() - 1;
+        RelocatorMatch match = clazz ? relocator.matchClass(text, 1, end) : relocator.matchPath(text, 1, end);
+        int byteEnd = bytes.length - 1;
+        RelocatorMatch byteMatch =
+                clazz ? relocator.matchClass(bytes, 1, byteEnd) : relocator.matchPath(bytes, 1, byteEnd);
+        assertSame(match, byteMatch);
+        if (expected == null) {
+            assertNull(match);
+        } else if (match.isPrefix()) {
+            assertEquals(
+                    expected,
+                    name.substring(0, match.getOffset())
+                            + match.getReplacement()
+                            + name.substring(match.getOffset() + match.getPatternLength()));
+        } else {
+            assertEquals(expected, clazz ? relocator.relocateClass(name) : relocator.relocatePath(name));
+        }
+    }
+
     private static final String SOURCE_FILE = "package org.apache.maven.hello;\n" + "package org.objectweb.asm;\n"
             + "\n"
             + "import foo.bar.Bar;\n"
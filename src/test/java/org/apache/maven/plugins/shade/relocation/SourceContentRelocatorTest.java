@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.maven.plugins.shade.relocation;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link SourceContentRelocator}.
+ */
+public class SourceContentRelocatorTest {
+
+    private static final String SOURCE = "package org.foo.hello;\n"
+            + "\n"
+            + "import org.foo.Bar;\n"
+            + "import org.foo.excluded.Ex;\n"
+            + "import com.google.common.Lists;\n"
+            + "import java.io.IOException;\n"
+            + "\n"
+            + "/**\n"
+            + " * See {@link org.foo.Other} and {@link\n"
+            + " * org.foo.YetAnother}, or org/foo/bar.txt.\n"
+            + " */\n"
+            + "public class Hello {\n"
+            + "  private org.foo.excluded.X x;\n"
+            + "  private String io = \"org/foo/res.txt\";\n"
+            + "  private String noRelocation = \"xorg.foo.Bar\";\n"
+            + "  synchronized org.foo.Bar get( org.foo.Bar bar) {\n"
+            + "    return (org.foo.Bar) com.google.common.Lists.newArrayList(bar).get(0);\n"
+            + "  }\n"
+            + "}\n"
+            + "// org.foo";
+
+    @Test
+    public void testRelocateLikeRelocatorsInTurn() throws IOException {
+        assertRelocatedInTurn(Arrays.asList(
+                new SimpleRelocator("org.foo", "shaded.org.foo", null, Arrays.asList("org.foo.excluded.*")),
+                new SimpleRelocator("com.google", "shaded.com.google", null, null),
+                new SimpleRelocator("io", "shaded.io", null, null)));
+    }
+
+    @Test
+    public void testRelocateRelocatedPatternsInTurn() throws IOException {
+        // the second relocator relocates what the first one relocated
+        assertRelocatedInTurn(Arrays.asList(
+                new SimpleRelocator("org.foo", "com.google.foo", null, null),
+                new SimpleRelocator("com.google", "shaded", null, null)));
+        assertRelocatedInTurn(Arrays.asList(
+                new SimpleRelocator("org.foo", "org.foo", null, null),
+                new SimpleRelocator("org", "shaded", null, null)));
+    }
+
+    @Test
+    public void testRelocateWithRawRelocators() throws IOException {
+        assertRelocatedInTurn(Arrays.asList(
+                new SimpleRelocator("org.foo", "shaded.org.foo", null, null),
+                new SimpleRelocator("^org/foo/(.*)\\.txt$", "texts/$1.txt", null, null, true),
+                new SimpleRelocator("com.google", "shaded.com.google", null, null)));
+    }
+
+    @Test
+    public void testRelocateWithoutRelocators() throws IOException {
+        assertRelocatedInTurn(Collections.emptyList());
+    }
+
+    private static void assertRelocatedInTurn(List<Relocator> relocators) throws IOException {
+        String expected = SOURCE;
+        for (Relocator relocator : relocators) {
+            expected = relocator.applyToSourceContent(expected);
+        }
+        SourceContentRelocator sourceContentRelocator = SourceContentRelocator.compile(relocators);
+        assertEquals(expected, sourceContentRelocator.relocate(SOURCE));
+        StringWriter writer = new StringWriter();
+        sourceContentRelocator.relocate(SOURCE, writer);
+        assertEquals(expected, writer.toString());
+    }
+}
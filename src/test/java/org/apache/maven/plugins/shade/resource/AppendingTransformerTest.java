@@ -18,11 +18,24 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
 
+import org.codehaus.plexus.util.IOUtil;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -33,6 +46,9 @@ import static org.junit.Assert.assertTrue;
  */
 public class AppendingTransformerTest {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private AppendingTransformer transformer;
 
     static {
@@ -56,4 +72,51 @@ public class AppendingTransformerTest {
         assertTrue(transformer.canTransformResource("ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
         assertFalse(transformer.canTransformResource("META-INF/MANIFEST.MF"));
     }
+
+    @Test
+    public void testContentPastMemoryThresholdIsSpilledToDirectory() throws IOException {
+        File spillDirectory = temporaryFolder.newFolder("spill");
+        transformer.resource = "META-INF/spring.handlers";
+        transformer.memoryThreshold = 6;
+        transformer.setSpillDirectory(spillDirectory);
+
+        transformer.processResource("META-INF/spring.handlers", stream("a=b"), Collections.emptyList(), 0);
+        assertFalse(transformer.data.isSpilled());
+        AppendingTransformer.Accumulator accumulator = transformer.newAccumulator();
+        transformer.processResource(accumulator, "META-INF/spring.handlers", stream("c=d"), Collections.emptyList(), 0);
+        transformer.combine(accumulator);
+        assertTrue(transformer.data.isSpilled());
+        assertEquals(1, spillDirectory.list().length);
+
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(jar)) {
+            transformer.modifyOutputStream(jos);
+        }
+        assertEquals(0, spillDirectory.list().length);
+
+        try (JarInputStream jis = new JarInputStream(new ByteArrayInputStream(jar.toByteArray()))) {
+            JarEntry entry = jis.getNextJarEntry();
+            assertEquals("META-INF/spring.handlers", entry.getName());
+            assertEquals("a=b\nc=d\n", IOUtil.toString(jis, "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSpilledContent() throws IOException {
+        File spillDirectory = temporaryFolder.newFolder("spill");
+        transformer.resource = "META-INF/spring.handlers";
+        transformer.memoryThreshold = 2;
+        transformer.setSpillDirectory(spillDirectory);
+
+        transformer.processResource("META-INF/spring.handlers", stream("a=b"), Collections.emptyList(), 0);
+        assertEquals(1, spillDirectory.list().length);
+
+        transformer.close();
+        assertEquals(0, spillDirectory.list().length);
+        assertFalse(transformer.hasTransformedResource());
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -219,6 +219,33 @@ public class ServiceResourceTransformerTest {
         }
     }
 
+    @Test
+    public void lineTerminatorsAndDuplicates() throws Exception {
+        relocators.add(new SimpleRelocator("org.foo", "borg.foo", null, null));
+
+        String content = "org.foo.Service\r\norg.foobar.Service\rorg.foo.Service\n# comment\r\n\r\ncom.acme.Service";
+        String contentResource = "META-INF/services/org.something.another";
+
+        ServicesResourceTransformer xformer = new ServicesResourceTransformer();
+        try (InputStream contentStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))) {
+            xformer.processResource(contentResource, contentStream, relocators, 0);
+        }
+
+        File tempJar = File.createTempFile("shade.", ".jar");
+        tempJar.deleteOnExit();
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(tempJar))) {
+            xformer.modifyOutputStream(jos);
+        }
+        try (JarFile jarFile = new JarFile(tempJar);
+                InputStream entryStream = jarFile.getInputStream(jarFile.getJarEntry(contentResource))) {
+            assertEquals(
+                    "borg.foo.Service\norg.foobar.Service\n# comment\n\ncom.acme.Service\n",
+                    toString(entryStream, StandardCharsets.UTF_8));
+        } finally {
+            tempJar.delete();
+        }
+    }
+
     private static String toString(InputStream stream, Charset charset) throws IOException {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         byte[] data = new byte[8192];
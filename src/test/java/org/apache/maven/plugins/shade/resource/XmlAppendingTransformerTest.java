@@ -18,11 +18,20 @@
  */
 package org.apache.maven.plugins.shade.resource;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -57,4 +66,91 @@ public class XmlAppendingTransformerTest {
         assertTrue(transformer.canTransformResource("ABCDEFGHIJKLMNOPQRSTUVWXYZ"));
         assertFalse(transformer.canTransformResource("META-INF/MANIFEST.MF"));
     }
+
+    @Test
+    public void testMergeDocuments() throws Exception {
+        assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                        + "<root a=\"1\" b=\"3\">\r\n"
+                        + "  <x>one</x>\r\n"
+                        + "  <y />\r\n"
+                        + "</root>\r\n",
+                merge("<root a=\"1\"><x>one</x></root>", "<root a=\"2\" b=\"3\"><y/></root>"));
+    }
+
+    @Test
+    public void testMergeKeepsCdataSections() throws Exception {
+        assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                        + "<root>\r\n"
+                        + "  <script><![CDATA[if (a < b) { x(); }]]></script>\r\n"
+                        + "  <mix>before<![CDATA[<in>]]>after</mix>\r\n"
+                        + "</root>\r\n",
+                merge(
+                        "<root><script><![CDATA[if (a < b) { x(); }]]></script></root>",
+                        "<root><mix>before<![CDATA[<in>]]>after</mix></root>"));
+    }
+
+    @Test
+    public void testMergeKeepsMixedContent() throws Exception {
+        assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                        + "<root>\r\n"
+                        + "  <p>\r\n"
+                        + "    Some\r\n"
+                        + "    <b>bold</b>\r\n"
+                        + "    text.\r\n"
+                        + "  </p>\r\n"
+                        + "  raw &lt; text\r\n"
+                        + "  <![CDATA[cdata]]>\r\n"
+                        + "  <pre xml:space=\"preserve\">  keep\r\n"
+                        + "   this <b /> </pre>\r\n"
+                        + "</root>\r\n",
+                merge(
+                        "<root><p>Some <b>bold</b>   text.</p>\n  raw &lt; text\n  <![CDATA[cdata]]>\n</root>",
+                        "<root>tail<pre xml:space=\"preserve\">  keep\n   this <b/> </pre></root>"));
+    }
+
+    @Test
+    public void testMergeDeclaresNamespacesWhereUsed() throws Exception {
+        assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+                        + "<beans xmlns=\"urn:beans\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                        + " xsi:schemaLocation=\"urn:beans beans.xsd\">\r\n"
+                        + "  <bean id=\"a\" />\r\n"
+                        + "  <context:scan xmlns:context=\"urn:context\" base-package=\"b\" />\r\n"
+                        + "  <bean id=\"b\">\r\n"
+                        + "    <other xmlns=\"urn:other\" />\r\n"
+                        + "  </bean>\r\n"
+                        + "</beans>\r\n",
+                merge(
+                        "<beans xmlns=\"urn:beans\"><bean id=\"a\"/></beans>",
+                        "<beans xmlns=\"urn:beans\" xmlns:context=\"urn:context\""
+                                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                                + " xsi:schemaLocation=\"urn:beans beans.xsd\">"
+                                + "<context:scan base-package=\"b\"/>"
+                                + "<bean id=\"b\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                                + "<other xmlns=\"urn:other\"/></bean>"
+                                + "</beans>"));
+    }
+
+    private String merge(String... documents) throws Exception {
+        transformer.resource = "META-INF/doc.xml";
+        for (String document : documents) {
+            transformer.processResource(
+                    "META-INF/doc.xml",
+                    new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)),
+                    Collections.emptyList(),
+                    0);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(out)) {
+            transformer.modifyOutputStream(jos);
+        }
+        try (JarInputStream jis = new JarInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("META-INF/doc.xml", jis.getNextJarEntry().getName());
+            return IOUtil.toString(jis, "UTF-8");
+        }
+    }
 }